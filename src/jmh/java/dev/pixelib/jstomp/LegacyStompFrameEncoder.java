@@ -0,0 +1,49 @@
+package dev.pixelib.jstomp;
+
+import java.util.Map;
+
+/**
+ * Copy of the original {@code StompFrame.toString} encoder, kept as a baseline
+ * for the encoder benchmarks.
+ */
+final class LegacyStompFrameEncoder {
+
+    private LegacyStompFrameEncoder() {
+    }
+
+    static String encode(StompFrame frame) {
+        StringBuilder sb = new StringBuilder();
+
+        // Command
+        sb.append(frame.getCommand().name()).append("\n");
+
+        // Headers
+        for (Map.Entry<String, String> header : frame.getHeaders().entrySet()) {
+            sb.append(escapeHeaderValue(header.getKey()))
+              .append(":")
+              .append(escapeHeaderValue(header.getValue()))
+              .append("\n");
+        }
+
+        // Empty line to separate headers from body
+        sb.append("\n");
+
+        // Body
+        sb.append(frame.getBody());
+
+        // Null terminator
+        sb.append("\0");
+
+        return sb.toString();
+    }
+
+    private static String escapeHeaderValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\")
+                   .replace("\n", "\\n")
+                   .replace(":", "\\c")
+                   .replace("\r", "\\r");
+    }
+}
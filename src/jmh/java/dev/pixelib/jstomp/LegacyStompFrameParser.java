@@ -0,0 +1,79 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Copy of the original split-based {@code StompFrame.parse} implementation,
+ * kept as a baseline for the decoder benchmarks.
+ */
+final class LegacyStompFrameParser {
+
+    private LegacyStompFrameParser() {
+    }
+
+    static StompFrame parse(String frameString) {
+        if (frameString == null || frameString.isEmpty()) {
+            throw new IllegalArgumentException("Frame string cannot be null or empty");
+        }
+
+        // Remove null terminator if present
+        if (frameString.endsWith("\0")) {
+            frameString = frameString.substring(0, frameString.length() - 1);
+        }
+
+        String[] lines = frameString.split("\n", -1);
+        if (lines.length == 0) {
+            throw new IllegalArgumentException("Invalid frame: no command found");
+        }
+
+        // Parse command
+        String commandString = lines[0].trim();
+        StompCommand command;
+        try {
+            command = StompCommand.valueOf(commandString);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown STOMP command: " + commandString);
+        }
+
+        StompFrame frame = new StompFrame(command);
+
+        // Parse headers
+        int bodyStartIndex = 1;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.isEmpty()) {
+                bodyStartIndex = i + 1;
+                break;
+            }
+
+            int colonIndex = line.indexOf(':');
+            if (colonIndex > 0) {
+                String name = unescapeHeaderValue(line.substring(0, colonIndex));
+                String value = unescapeHeaderValue(line.substring(colonIndex + 1));
+                frame.addHeader(name, value);
+            }
+        }
+
+        // Parse body
+        if (bodyStartIndex < lines.length) {
+            StringBuilder bodyBuilder = new StringBuilder();
+            for (int i = bodyStartIndex; i < lines.length; i++) {
+                if (i > bodyStartIndex) {
+                    bodyBuilder.append("\n");
+                }
+                bodyBuilder.append(lines[i]);
+            }
+            frame.setBody(bodyBuilder.toString());
+        }
+
+        return frame;
+    }
+
+    private static String unescapeHeaderValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\r", "\r")
+                   .replace("\\c", ":")
+                   .replace("\\n", "\n")
+                   .replace("\\\\", "\\");
+    }
+}
@@ -0,0 +1,63 @@
+package dev.pixelib.jstomp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the body compression algorithms on a JSON payload of repeated records,
+ * the kind of body that compression targets.
+ *
+ * Run with {@code ./gradlew jmh}; divide the payload size by the time per operation
+ * for throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StompCompressionBenchmark {
+
+    @Param({"DEFLATE", "LZ4"})
+    public StompCompression compression;
+
+    @Param({"4096", "65536"})
+    public int size;
+
+    private byte[] body;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; json.length() < size; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"symbol\":\"ACME\",\"price\":").append(100 + i * 0.25)
+                    .append(",\"exchange\":\"NASDAQ\",\"sequence\":").append(i).append('}');
+        }
+        body = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        compressed = compression.compress(body, 0, body.length);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return compression.compress(body, 0, body.length);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        return compression.decompress(compressed, 0, compressed.length, body.length);
+    }
+}
@@ -0,0 +1,86 @@
+package dev.pixelib.jstomp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass decoder against the original split-based parser
+ * on a typical MESSAGE frame, binary decoding with and without the header
+ * value cache a connection uses, and lazy decoding for a consumer that only
+ * routes on the subscription and destination.
+ *
+ * Run with {@code ./gradlew jmh}; the gc profiler reports allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StompFrameDecodeBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private String frame;
+    private byte[] frameBytes;
+    private StompHeaderValueCache valueCache;
+
+    @Setup
+    public void setUp() {
+        StringBuilder body = new StringBuilder(bodySize);
+        for (int i = 0; i < bodySize; i++) {
+            body.append(i % 64 == 63 ? '\n' : (char) ('a' + i % 26));
+        }
+
+        frame = "MESSAGE\n" +
+                "subscription:sub-1\n" +
+                "message-id:ID\\cbroker-1-52343-1700000000000-1\\c1\\c1\\c1\\c42\n" +
+                "destination:/topic/prices\n" +
+                "content-type:application/json\n" +
+                "timestamp:1700000000000\n" +
+                "\n" +
+                body +
+                "\0";
+        frameBytes = frame.getBytes(StandardCharsets.UTF_8);
+        valueCache = new StompHeaderValueCache(64);
+    }
+
+    @Benchmark
+    public StompFrame legacyParse() {
+        return LegacyStompFrameParser.parse(frame);
+    }
+
+    @Benchmark
+    public StompFrame decode() {
+        return StompFrame.parse(frame);
+    }
+
+    @Benchmark
+    public StompFrame decodeBytes() {
+        return StompFrameDecoder.decode(frameBytes, 0, frameBytes.length, false, null);
+    }
+
+    @Benchmark
+    public StompFrame decodeBytesWithValueCache() {
+        return StompFrameDecoder.decode(frameBytes, 0, frameBytes.length, false, valueCache);
+    }
+
+    @Benchmark
+    public String decodeLazyAndRoute() {
+        StompFrame lazy = StompFrameDecoder.decodeLazy(frameBytes, 0, frameBytes.length, true, valueCache);
+        return lazy.getHeader("subscription") + lazy.getHeader("destination");
+    }
+}
@@ -0,0 +1,81 @@
+package dev.pixelib.jstomp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the header memory of a received message: the compact header array
+ * handed from frame to message against the former per-frame {@code HashMap}
+ * that was copied again for every message.
+ *
+ * Run with {@code ./gradlew jmh}; {@code gc.alloc.rate.norm} reports the bytes
+ * allocated per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StompHeadersBenchmark {
+
+    private byte[] frame;
+    private String[] names;
+    private String[] values;
+
+    @Setup
+    public void setUp() {
+        frame = ("MESSAGE\n" +
+                "subscription:sub-1\n" +
+                "message-id:ID-broker-1-42\n" +
+                "destination:/topic/prices\n" +
+                "content-type:application/json\n" +
+                "ack:ack-42\n" +
+                "timestamp:1700000000000\n" +
+                "\n" +
+                "{}\0").getBytes(StandardCharsets.UTF_8);
+
+        StompFrame decoded = StompFrame.parse(frame);
+        names = decoded.getHeaders().keySet().toArray(new String[0]);
+        values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = decoded.getHeader(names[i]);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> legacyHeaderMap() {
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            headers.put(names[i], values[i]);
+        }
+        return new HashMap<>(headers);
+    }
+
+    @Benchmark
+    public StompHeaders compactHeaders() {
+        StompHeaders headers = new StompHeaders(6);
+        for (int i = 0; i < names.length; i++) {
+            headers.set(names[i], values[i]);
+        }
+        return headers;
+    }
+
+    @Benchmark
+    public StompMessage decodeMessage() {
+        return StompMessage.fromFrame(StompFrame.parse(frame));
+    }
+}
@@ -0,0 +1,113 @@
+package dev.pixelib.jstomp;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building a JSON SEND frame the way {@code sendJson} used to, through
+ * {@code Gson.toJson} and a copied header map, against the cached-adapter encoder
+ * writing UTF-8 directly, and against the CBOR codec for the same payload.
+ *
+ * Run with {@code ./gradlew jmh}; the gc profiler reports allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StompJsonEncodeBenchmark {
+
+    private Gson gson;
+    private StompJsonEncoder encoder;
+    private StompCborCodec cborCodec;
+    private Quote quote;
+    private Map<String, String> headers;
+
+    @Setup
+    public void setUp() {
+        gson = new Gson();
+        encoder = new StompJsonEncoder(gson);
+        cborCodec = new StompCborCodec(gson);
+        List<Double> history = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            history.add(100 + i * 0.25);
+        }
+        quote = new Quote("ACME", 123.45, 1_700_000_000_000L, history);
+        headers = Map.of("priority", "5");
+    }
+
+    @Benchmark
+    public String legacySendJson() {
+        String json = gson.toJson(quote);
+        Map<String, String> jsonHeaders = new ConcurrentHashMap<>(headers);
+        jsonHeaders.putIfAbsent("content-type", "application/json");
+
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/topic/quotes");
+        jsonHeaders.forEach(frame::addHeader);
+        frame.setBody(json);
+        return frame.encode(false);
+    }
+
+    @Benchmark
+    public String sendJson() throws IOException {
+        byte[] json = encoder.encode(quote);
+
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/topic/quotes");
+        headers.forEach(frame::addHeader);
+        if (frame.getHeader("content-type") == null) {
+            frame.addHeader("content-type", "application/json");
+        }
+        frame.setTextBody(json, 0, json.length);
+        return frame.encode(false);
+    }
+
+    @Benchmark
+    public byte[] sendCbor() throws IOException {
+        byte[] cbor = cborCodec.encode(quote);
+
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/topic/quotes");
+        headers.forEach(frame::addHeader);
+        if (frame.getHeader("content-type") == null) {
+            frame.addHeader("content-type", StompCborCodec.CONTENT_TYPE);
+        }
+        frame.setBody(cbor);
+        return frame.toBytes();
+    }
+
+    /**
+     * A typical market data payload.
+     */
+    static final class Quote {
+        final String symbol;
+        final double price;
+        final long timestamp;
+        final List<Double> history;
+
+        Quote(String symbol, double price, long timestamp, List<Double> history) {
+            this.symbol = symbol;
+            this.price = price;
+            this.timestamp = timestamp;
+            this.history = history;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Acknowledgement mode of a subscription, sent as the {@code ack} header of the SUBSCRIBE frame.
+ */
+public enum StompAckMode {
+    
+    /**
+     * The server considers a message acknowledged as soon as it is sent.
+     */
+    AUTO("auto"),
+    
+    /**
+     * Messages must be acknowledged with {@link StompMessage#ack()}. An ACK is cumulative:
+     * it acknowledges the message and every earlier message of the subscription.
+     */
+    CLIENT("client"),
+    
+    /**
+     * Every message must be acknowledged individually with {@link StompMessage#ack()}.
+     */
+    CLIENT_INDIVIDUAL("client-individual");
+    
+    private final String headerValue;
+    
+    StompAckMode(String headerValue) {
+        this.headerValue = headerValue;
+    }
+    
+    /**
+     * Gets the value of the {@code ack} header for this mode.
+     * 
+     * @return the header value
+     */
+    public String getHeaderValue() {
+        return headerValue;
+    }
+}
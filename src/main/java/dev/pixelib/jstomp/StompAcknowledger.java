@@ -0,0 +1,336 @@
+package dev.pixelib.jstomp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+/**
+ * Sends the ACK and NACK frames of a single subscription.
+ * 
+ * In {@link StompAckMode#CLIENT} mode an ACK is cumulative, so acknowledgements
+ * are batched: only the most recent ack id is remembered, and one ACK is sent
+ * once the batch size is reached or the batch interval has elapsed, whichever
+ * comes first. In {@link StompAckMode#CLIENT_INDIVIDUAL} mode every message is
+ * acknowledged with its own frame.
+ * 
+ * The acknowledger also keeps track of the messages the server considers
+ * unacknowledged: delivered messages whose ACK or NACK has not been sent yet.
+ * Every tracked message is stamped with the connection generation it arrived on.
+ * Acknowledgements for messages that are no longer tracked, or that arrived on an
+ * earlier connection, are dropped: brokers reject unknown ack ids, and some close
+ * the session over them.
+ * 
+ * Messages acknowledged within a transaction stay settled only once the transaction
+ * commits: they are held per transaction until then, and an abort puts them back
+ * in delivery order, so they can be acknowledged again.
+ * 
+ * Messages rejected without reaching the message handler, for example because they were
+ * dropped from a full queue, are NACKed on their own. In {@link StompAckMode#CLIENT} mode a
+ * NACK is cumulative, so such a NACK is held back until every message delivered before it
+ * is settled, and a cumulative ACK is split so that it does not settle a rejected message.
+ */
+final class StompAcknowledger {
+    
+    private final StompAckMode ackMode;
+    private final int batchSize;
+    private final long batchIntervalMillis;
+    private final Consumer<StompFrame> frameSender;
+    private final Map<String, Long> unacked;
+    private final Map<String, Map<String, Long>> transactionAcks;
+    private final Set<String> rejected;
+    private long generation;
+    private long deliverySequence;
+    private String pendingAckId;
+    private int pendingCount;
+    private ScheduledFuture<?> flushTask;
+    
+    /**
+     * Creates a new acknowledger.
+     * 
+     * @param ackMode the ack mode of the subscription, not {@link StompAckMode#AUTO}
+     * @param batchSize the number of messages acknowledged per cumulative ACK
+     * @param batchIntervalMillis the maximum time a cumulative ACK is delayed, 0 for no limit
+     * @param frameSender sends the ACK and NACK frames
+     */
+    StompAcknowledger(StompAckMode ackMode, int batchSize, long batchIntervalMillis,
+                      Consumer<StompFrame> frameSender) {
+        this.ackMode = ackMode;
+        this.batchSize = batchSize;
+        this.batchIntervalMillis = batchIntervalMillis;
+        this.frameSender = frameSender;
+        this.unacked = new LinkedHashMap<>();
+        this.transactionAcks = new HashMap<>();
+        this.rejected = new HashSet<>();
+    }
+    
+    /**
+     * Records a delivered message that has to be acknowledged.
+     * Must be called before the message is handed to the message handler.
+     * 
+     * @return the connection generation to acknowledge the message with
+     */
+    synchronized long track(String ackId) {
+        if (ackId != null) {
+            unacked.putIfAbsent(ackId, deliverySequence++);
+        }
+        return generation;
+    }
+    
+    /**
+     * Acknowledges the message with the given ack id.
+     */
+    synchronized void ack(String ackId, long generation) {
+        if (!isTracked(ackId, generation)) {
+            return;
+        }
+        if (ackMode != StompAckMode.CLIENT) {
+            send(StompCommand.ACK, ackId, null);
+            return;
+        }
+        
+        // The cumulative ACK only moves forward: acking an earlier message again,
+        // or out of order, must not take back the later ones
+        if (pendingAckId == null || isDeliveredAfter(ackId, pendingAckId)) {
+            pendingAckId = ackId;
+        }
+        pendingCount++;
+        if (pendingCount >= batchSize) {
+            flush();
+        } else if (flushTask == null && batchIntervalMillis > 0) {
+            flushTask = StompScheduler.schedule(this::flush, batchIntervalMillis);
+        }
+    }
+    
+    /**
+     * Rejects the message with the given ack id.
+     * A pending cumulative ACK of an earlier message is sent first, so that message
+     * is not rejected along with it.
+     */
+    synchronized void nack(String ackId, long generation) {
+        nack(ackId, generation, null);
+    }
+    
+    /**
+     * Acknowledges the message with the given ack id within a transaction.
+     * Transactional acknowledgements are never batched; a pending cumulative ACK
+     * of an earlier message is sent first.
+     */
+    synchronized void ack(String ackId, long generation, String transactionId) {
+        if (!isTracked(ackId, generation) || !flushBefore(ackId)) {
+            return;
+        }
+        send(StompCommand.ACK, ackId, transactionId);
+    }
+    
+    /**
+     * Rejects the message with the given ack id, optionally within a transaction.
+     * A pending cumulative ACK of an earlier message is sent first.
+     */
+    synchronized void nack(String ackId, long generation, String transactionId) {
+        if (!isTracked(ackId, generation) || !flushBefore(ackId)) {
+            return;
+        }
+        send(StompCommand.NACK, ackId, transactionId);
+    }
+    
+    /**
+     * Rejects a message that never reached the message handler.
+     * In {@link StompAckMode#CLIENT} mode the NACK waits until every earlier message is settled,
+     * so messages still queued for or held by the handler are not rejected along with it.
+     */
+    synchronized void reject(String ackId, long generation) {
+        if (!isTracked(ackId, generation)) {
+            return;
+        }
+        if (ackMode != StompAckMode.CLIENT) {
+            send(StompCommand.NACK, ackId, null);
+            return;
+        }
+        rejected.add(ackId);
+        // Settle what the handler already acknowledged, so the NACK is not held back longer than needed
+        flush();
+        sendRejected();
+    }
+    
+    /**
+     * Sends the pending cumulative ACK, if any.
+     */
+    synchronized void flush() {
+        cancelFlushTask();
+        if (pendingAckId != null) {
+            String ackId = pendingAckId;
+            pendingAckId = null;
+            pendingCount = 0;
+            send(StompCommand.ACK, ackId, null);
+        }
+    }
+    
+    /**
+     * Releases the messages acknowledged within a committed transaction.
+     */
+    synchronized void commit(String transactionId) {
+        transactionAcks.remove(transactionId);
+    }
+    
+    /**
+     * Tracks the messages acknowledged within an aborted transaction again,
+     * as the server considers them unacknowledged.
+     */
+    synchronized void abort(String transactionId) {
+        Map<String, Long> settled = transactionAcks.remove(transactionId);
+        if (settled == null) {
+            return;
+        }
+        TreeMap<Long, String> ordered = new TreeMap<>();
+        unacked.forEach((ackId, sequence) -> ordered.put(sequence, ackId));
+        settled.forEach((ackId, sequence) -> ordered.put(sequence, ackId));
+        unacked.clear();
+        ordered.forEach((sequence, ackId) -> unacked.put(ackId, sequence));
+    }
+    
+    /**
+     * Forgets the pending cumulative ACK and all tracked messages, for example because
+     * the connection they belong to was lost and the server will redeliver the messages
+     * anyway. Later acknowledgements of these messages are dropped.
+     */
+    synchronized void discard() {
+        generation++;
+        cancelFlushTask();
+        pendingAckId = null;
+        pendingCount = 0;
+        unacked.clear();
+        transactionAcks.clear();
+        rejected.clear();
+    }
+    
+    /**
+     * Gets the number of acknowledged messages whose ACK has not been sent yet.
+     */
+    synchronized int getPendingCount() {
+        return pendingCount;
+    }
+    
+    /**
+     * Gets the number of delivered messages whose ACK or NACK has not been sent yet.
+     */
+    synchronized int getUnackedCount() {
+        return unacked.size();
+    }
+    
+    /**
+     * Sends the pending cumulative ACK ahead of a frame for the given message, unless the
+     * ACK is for a later message and would settle this one too; such an ACK stays pending.
+     * 
+     * @return false if the message was settled by the pending ACK after all
+     */
+    private boolean flushBefore(String ackId) {
+        if (pendingAckId == null || isDeliveredAfter(pendingAckId, ackId)) {
+            return true;
+        }
+        flush();
+        return unacked.containsKey(ackId);
+    }
+    
+    private boolean isTracked(String ackId, long generation) {
+        return generation == this.generation && unacked.containsKey(ackId);
+    }
+    
+    private boolean isDeliveredAfter(String ackId, String otherAckId) {
+        Long sequence = unacked.get(ackId);
+        Long otherSequence = unacked.get(otherAckId);
+        return otherSequence == null || (sequence != null && sequence > otherSequence);
+    }
+    
+    private void send(StompCommand command, String ackId, String transactionId) {
+        if (ackMode == StompAckMode.CLIENT && !rejected.isEmpty()) {
+            // A cumulative frame must not settle a rejected message: settle the messages
+            // before each rejected one first, then reject it on its own
+            List<String> before = new ArrayList<>();
+            for (String tracked : unacked.keySet()) {
+                if (tracked.equals(ackId)) {
+                    break;
+                }
+                before.add(tracked);
+            }
+            String previous = null;
+            for (String tracked : before) {
+                if (rejected.contains(tracked)) {
+                    if (previous != null) {
+                        settle(command, previous, transactionId);
+                        previous = null;
+                    }
+                    settle(StompCommand.NACK, tracked, null);
+                } else {
+                    previous = tracked;
+                }
+            }
+        }
+        settle(command, ackId, transactionId);
+        sendRejected();
+    }
+    
+    /**
+     * Sends the held back NACKs of rejected messages no longer preceded by an unsettled message.
+     */
+    private void sendRejected() {
+        while (!rejected.isEmpty() && !unacked.isEmpty()) {
+            String first = unacked.keySet().iterator().next();
+            if (!rejected.contains(first)) {
+                return;
+            }
+            settle(StompCommand.NACK, first, null);
+        }
+    }
+    
+    private void settle(StompCommand command, String ackId, String transactionId) {
+        Map<String, Long> settled = transactionId == null ? null
+                : transactionAcks.computeIfAbsent(transactionId, id -> new LinkedHashMap<>());
+        if (ackMode == StompAckMode.CLIENT) {
+            // Cumulative: settles the message and every message delivered before it
+            if (unacked.containsKey(ackId)) {
+                Iterator<Map.Entry<String, Long>> iterator = unacked.entrySet().iterator();
+                Map.Entry<String, Long> entry;
+                do {
+                    entry = iterator.next();
+                    rejected.remove(entry.getKey());
+                    if (settled != null) {
+                        settled.put(entry.getKey(), entry.getValue());
+                    }
+                    iterator.remove();
+                } while (!entry.getKey().equals(ackId));
+            }
+        } else {
+            Long sequence = unacked.remove(ackId);
+            rejected.remove(ackId);
+            if (settled != null && sequence != null) {
+                settled.put(ackId, sequence);
+            }
+        }
+        StompFrame frame = createFrame(command, ackId);
+        if (transactionId != null) {
+            frame.addHeader("transaction", transactionId);
+        }
+        frameSender.accept(frame);
+    }
+    
+    private void cancelFlushTask() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+    
+    private static StompFrame createFrame(StompCommand command, String ackId) {
+        StompFrame frame = new StompFrame(command);
+        frame.addHeader("id", ackId);
+        return frame;
+    }
+}
@@ -0,0 +1,451 @@
+package dev.pixelib.jstomp;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary codec writing objects as CBOR (RFC 8949).
+ *
+ * Objects are mapped with the Gson type adapters of the given Gson instance, so
+ * field naming, custom adapters and exclusions behave exactly as with JSON; only the
+ * wire format differs. CBOR bodies are typically smaller than the equivalent JSON,
+ * carry numbers in binary form and need no escaping or number parsing on receive.
+ *
+ * Integers are written in the smallest integer encoding, floating point numbers as
+ * single precision when that is exact, and integers beyond 64 bits and
+ * {@link BigDecimal} values as bignums and decimal fractions. Received bodies may use
+ * any CBOR encoding, including indefinite lengths and half precision floats; byte
+ * strings are read as arrays of bytes and unknown tags are ignored.
+ */
+public final class StompCborCodec implements StompCodec {
+
+    /**
+     * The CBOR content type.
+     */
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    private static final int MAX_DEPTH = 512;
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+    private static final int TAG_DECIMAL_FRACTION = 4;
+
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT32 = 0xfa;
+    private static final int FLOAT64 = 0xfb;
+    private static final int BREAK = 0xff;
+
+    private static final int INDEFINITE = 31;
+
+    private final Gson gson;
+    private final Map<Class<?>, TypeAdapter<?>> adapters;
+
+    /**
+     * Creates a new CBOR codec with a default Gson instance.
+     */
+    public StompCborCodec() {
+        this(new GsonBuilder().create());
+    }
+
+    /**
+     * Creates a new CBOR codec.
+     *
+     * @param gson the Gson instance providing the type adapters
+     */
+    public StompCborCodec(Gson gson) {
+        this.gson = gson;
+        this.adapters = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Object object) throws IOException {
+        JsonElement tree = object == null ? JsonNull.INSTANCE : adapter(object.getClass()).toJsonTree(object);
+        Buffer buffer = new Buffer();
+        write(buffer, tree);
+        return buffer.readByteArray();
+    }
+
+    @Override
+    public <T> Decoder<T> decoder(Type type) {
+        @SuppressWarnings("unchecked")
+        TypeAdapter<T> adapter = (TypeAdapter<T>) gson.getAdapter(TypeToken.get(type));
+        return message -> {
+            ByteBuffer body = message.getBodyBuffer();
+            if (!body.hasRemaining()) {
+                return null;
+            }
+            JsonElement tree = read(body);
+            if (body.hasRemaining()) {
+                throw new IOException("Unexpected data after CBOR item");
+            }
+            return adapter.fromJsonTree(tree);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<Object> adapter(Class<?> type) {
+        return (TypeAdapter<Object>) adapters.computeIfAbsent(type, gson::getAdapter);
+    }
+
+    /**
+     * Reads a single CBOR data item.
+     *
+     * @param input the encoded item; its position is advanced past the item
+     * @return the item as a JSON tree
+     * @throws IOException if the input is not well-formed CBOR
+     */
+    static JsonElement read(ByteBuffer input) throws IOException {
+        try {
+            return readItem(input, 0);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated CBOR item", e);
+        }
+    }
+
+    /**
+     * Writes a JSON tree as a CBOR data item.
+     */
+    static void write(Buffer output, JsonElement element) {
+        if (element.isJsonNull()) {
+            output.writeByte(NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            writeHead(output, MAJOR_MAP, object.size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeText(output, entry.getKey());
+                write(output, entry.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeHead(output, MAJOR_ARRAY, array.size());
+            for (JsonElement item : array) {
+                write(output, item);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                output.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(output, primitive.getAsNumber());
+            } else {
+                writeText(output, primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeNumber(Buffer output, Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            writeInteger(output, number.longValue());
+        } else if (number instanceof Double || number instanceof Float) {
+            writeFloat(output, number.doubleValue());
+        } else if (number instanceof BigInteger integer) {
+            writeInteger(output, integer);
+        } else {
+            // BigDecimal, or a number Gson parsed lazily from a string
+            BigDecimal decimal = number instanceof BigDecimal value ? value : new BigDecimal(number.toString());
+            if (decimal.scale() <= 0) {
+                writeInteger(output, decimal.toBigInteger());
+            } else if (number instanceof BigDecimal) {
+                writeHead(output, MAJOR_TAG, TAG_DECIMAL_FRACTION);
+                writeHead(output, MAJOR_ARRAY, 2);
+                writeInteger(output, -decimal.scale());
+                writeInteger(output, decimal.unscaledValue());
+            } else {
+                writeFloat(output, decimal.doubleValue());
+            }
+        }
+    }
+
+    private static void writeInteger(Buffer output, long value) {
+        if (value >= 0) {
+            writeHead(output, MAJOR_UNSIGNED, value);
+        } else {
+            writeHead(output, MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private static void writeInteger(Buffer output, BigInteger value) {
+        if (value.bitLength() < Long.SIZE) {
+            writeInteger(output, value.longValue());
+            return;
+        }
+        boolean negative = value.signum() < 0;
+        byte[] magnitude = (negative ? value.negate().subtract(BigInteger.ONE) : value).toByteArray();
+        int offset = magnitude[0] == 0 ? 1 : 0;
+        writeHead(output, MAJOR_TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+        writeHead(output, MAJOR_BYTES, magnitude.length - offset);
+        output.write(magnitude, offset, magnitude.length - offset);
+    }
+
+    private static void writeFloat(Buffer output, double value) {
+        float single = (float) value;
+        if (single == value || Double.isNaN(value)) {
+            output.writeByte(FLOAT32);
+            output.writeInt(Float.floatToIntBits(single));
+        } else {
+            output.writeByte(FLOAT64);
+            output.writeLong(Double.doubleToLongBits(value));
+        }
+    }
+
+    private static void writeText(Buffer output, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeHead(output, MAJOR_TEXT, bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Writes the initial byte of an item and its argument in the shortest form.
+     * The argument is treated as unsigned.
+     */
+    private static void writeHead(Buffer output, int major, long argument) {
+        int type = major << 5;
+        if (argument >= 0 && argument < 24) {
+            output.writeByte(type | (int) argument);
+        } else if (argument >= 0 && argument <= 0xff) {
+            output.writeByte(type | 24);
+            output.writeByte((int) argument);
+        } else if (argument >= 0 && argument <= 0xffff) {
+            output.writeByte(type | 25);
+            output.writeShort((int) argument);
+        } else if (argument >= 0 && argument <= 0xffffffffL) {
+            output.writeByte(type | 26);
+            output.writeInt((int) argument);
+        } else {
+            output.writeByte(type | 27);
+            output.writeLong(argument);
+        }
+    }
+
+    private static JsonElement readItem(ByteBuffer input, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("CBOR item nested too deeply");
+        }
+        int initial = input.get() & 0xff;
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+
+        switch (major) {
+            case MAJOR_UNSIGNED -> {
+                long value = readArgument(input, info);
+                return new JsonPrimitive(value >= 0 ? (Number) value : unsigned(value));
+            }
+            case MAJOR_NEGATIVE -> {
+                long value = readArgument(input, info);
+                return new JsonPrimitive(value >= 0 ? (Number) (-1 - value) : unsigned(value).not());
+            }
+            case MAJOR_BYTES -> {
+                byte[] bytes = readString(input, major, info);
+                JsonArray array = new JsonArray(bytes.length);
+                for (byte b : bytes) {
+                    array.add(b);
+                }
+                return array;
+            }
+            case MAJOR_TEXT -> {
+                return new JsonPrimitive(new String(readString(input, major, info), StandardCharsets.UTF_8));
+            }
+            case MAJOR_ARRAY -> {
+                JsonArray array = new JsonArray();
+                if (info == INDEFINITE) {
+                    while (!readBreak(input)) {
+                        array.add(readItem(input, depth + 1));
+                    }
+                } else {
+                    for (long i = readLength(input, info); i > 0; i--) {
+                        array.add(readItem(input, depth + 1));
+                    }
+                }
+                return array;
+            }
+            case MAJOR_MAP -> {
+                JsonObject object = new JsonObject();
+                if (info == INDEFINITE) {
+                    while (!readBreak(input)) {
+                        readEntry(input, depth, object);
+                    }
+                } else {
+                    for (long i = readLength(input, info); i > 0; i--) {
+                        readEntry(input, depth, object);
+                    }
+                }
+                return object;
+            }
+            case MAJOR_TAG -> {
+                return readTagged(input, readArgument(input, info), depth);
+            }
+            default -> {
+                return readSimple(input, info);
+            }
+        }
+    }
+
+    private static void readEntry(ByteBuffer input, int depth, JsonObject object) throws IOException {
+        JsonElement key = readItem(input, depth + 1);
+        if (!key.isJsonPrimitive()) {
+            throw new IOException("Unsupported CBOR map key");
+        }
+        object.add(key.getAsString(), readItem(input, depth + 1));
+    }
+
+    private static JsonElement readTagged(ByteBuffer input, long tag, int depth) throws IOException {
+        JsonElement content = readItem(input, depth + 1);
+        if (tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM) {
+            BigInteger magnitude = new BigInteger(1, bytes(content));
+            return new JsonPrimitive(tag == TAG_POSITIVE_BIGNUM ? magnitude : magnitude.not());
+        }
+        if (tag == TAG_DECIMAL_FRACTION) {
+            if (!content.isJsonArray() || content.getAsJsonArray().size() != 2) {
+                throw new IOException("Malformed CBOR decimal fraction");
+            }
+            int exponent = content.getAsJsonArray().get(0).getAsInt();
+            BigInteger mantissa = content.getAsJsonArray().get(1).getAsBigInteger();
+            return new JsonPrimitive(new BigDecimal(mantissa, -exponent));
+        }
+        return content;
+    }
+
+    private static JsonElement readSimple(ByteBuffer input, int info) throws IOException {
+        return switch (info) {
+            case FALSE & 0x1f -> new JsonPrimitive(false);
+            case TRUE & 0x1f -> new JsonPrimitive(true);
+            case NULL & 0x1f, 23 -> JsonNull.INSTANCE;
+            case 25 -> new JsonPrimitive(halfToFloat(input.getShort() & 0xffff));
+            case FLOAT32 & 0x1f -> new JsonPrimitive(input.getFloat());
+            case FLOAT64 & 0x1f -> new JsonPrimitive(input.getDouble());
+            case BREAK & 0x1f -> throw new IOException("Unexpected CBOR break");
+            default -> throw new IOException("Unsupported CBOR simple value " + info);
+        };
+    }
+
+    /**
+     * Reads a byte or text string, joining the chunks of an indefinite-length string.
+     */
+    private static byte[] readString(ByteBuffer input, int major, int info) throws IOException {
+        if (info != INDEFINITE) {
+            byte[] bytes = new byte[readLength(input, info)];
+            input.get(bytes);
+            return bytes;
+        }
+        Buffer chunks = new Buffer();
+        while (!readBreak(input)) {
+            int initial = input.get() & 0xff;
+            if (initial >>> 5 != major || (initial & 0x1f) == INDEFINITE) {
+                throw new IOException("Malformed CBOR string chunk");
+            }
+            chunks.write(readString(input, major, initial & 0x1f));
+        }
+        return chunks.readByteArray();
+    }
+
+    private static byte[] bytes(JsonElement content) throws IOException {
+        if (!content.isJsonArray()) {
+            throw new IOException("Malformed CBOR bignum");
+        }
+        JsonArray array = content.getAsJsonArray();
+        byte[] bytes = new byte[array.size()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = array.get(i).getAsByte();
+        }
+        return bytes;
+    }
+
+    private static boolean readBreak(ByteBuffer input) {
+        if (!input.hasRemaining()) {
+            // An absolute get would throw IndexOutOfBoundsException instead
+            throw new BufferUnderflowException();
+        }
+        if ((input.get(input.position()) & 0xff) == BREAK) {
+            input.get();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the length of a definite-length string, array or map.
+     * Every element takes at least one byte, so no valid length exceeds the remaining input.
+     */
+    private static int readLength(ByteBuffer input, int info) throws IOException {
+        long length = readArgument(input, info);
+        if (length < 0 || length > input.remaining()) {
+            throw new IOException("CBOR length " + Long.toUnsignedString(length) + " exceeds the body");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Reads the argument of an item as an unsigned 64-bit value.
+     */
+    private static long readArgument(ByteBuffer input, int info) throws IOException {
+        return switch (info) {
+            case 24 -> input.get() & 0xffL;
+            case 25 -> input.getShort() & 0xffffL;
+            case 26 -> input.getInt() & 0xffffffffL;
+            case 27 -> input.getLong();
+            default -> {
+                if (info >= 24) {
+                    throw new IOException("Malformed CBOR argument " + info);
+                }
+                yield info;
+            }
+        };
+    }
+
+    private static BigInteger unsigned(long value) {
+        return new BigInteger(Long.toUnsignedString(value));
+    }
+
+    private static float halfToFloat(int half) {
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        float value;
+        if (exponent == 0) {
+            value = mantissa * 0x1p-24f;
+        } else if (exponent == 0x1f) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = Math.scalb(mantissa + 1024f, exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+}
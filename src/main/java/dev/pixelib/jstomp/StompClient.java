@@ -3,16 +3,29 @@ package dev.pixelib.jstomp;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import okhttp3.*;
+import okio.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.SocketFactory;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A STOMP client implementation built on top of OkHTTP WebSocket.
@@ -24,16 +37,49 @@ public class StompClient {
     
     private static final Logger logger = LoggerFactory.getLogger(StompClient.class);
     
+    private static final String HEARTBEAT = "\n";
+    private static final ByteString HEARTBEAT_BYTES = ByteString.encodeUtf8(HEARTBEAT);
+    
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    
+    private static final Executor DEFAULT_DISPATCH_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jstomp-dispatch-", 0).factory());
+    
     private final OkHttpClient httpClient;
     private final URI serverUri;
     private final Map<String, String> headers;
     private final Map<String, StompSubscription> subscriptions;
     private final AtomicLong messageIdCounter;
     private final AtomicBoolean connected;
-    private final Gson gson;
+    private final AtomicInteger reconnectAttempts;
+    private final StompReceiptTracker receipts;
+    private final StompCodec jsonCodec;
+    private final Map<String, StompCodec> codecs;
+    private final StompWireStats wireStats;
     
-    private WebSocket webSocket;
+    private volatile WebSocket webSocket;
+    private volatile StompWebSocketListener currentListener;
+    private volatile StompHeartbeat heartbeat;
+    private volatile ScheduledFuture<?> reconnectTask;
+    private volatile boolean disconnectRequested;
     private StompConnectionListener connectionListener;
+    private volatile boolean binaryMode;
+    private volatile boolean contentLengthEnabled;
+    private volatile Executor dispatchExecutor = DEFAULT_DISPATCH_EXECUTOR;
+    private volatile long heartbeatSendInterval;
+    private volatile long heartbeatReceiveInterval;
+    private volatile StompReconnectPolicy reconnectPolicy;
+    private volatile StompSendBuffer sendBuffer;
+    private volatile long receiptTimeoutMillis = 30_000;
+    private volatile long writeCoalescingWindowMillis;
+    private volatile int writeCoalescingMaxBytes;
+    private volatile StompWriteCoalescer writeCoalescer;
+    private volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private volatile boolean lazyMessageDecoding;
+    private volatile StompCompression compression;
+    private volatile int compressionThreshold;
+    private volatile StompPerMessageDeflate perMessageDeflate = StompPerMessageDeflate.defaults();
+    private volatile String webSocketExtensions;
     
     /**
      * Creates a new STOMP client.
@@ -68,7 +114,12 @@ public class StompClient {
         this.subscriptions = new ConcurrentHashMap<>();
         this.messageIdCounter = new AtomicLong(0);
         this.connected = new AtomicBoolean(false);
-        this.gson = gson;
+        this.reconnectAttempts = new AtomicInteger(0);
+        this.receipts = new StompReceiptTracker();
+        this.jsonCodec = new StompGsonCodec(gson);
+        this.codecs = new ConcurrentHashMap<>();
+        this.codecs.put(StompGsonCodec.CONTENT_TYPE, jsonCodec);
+        this.wireStats = new StompWireStats();
     }
     
     /**
@@ -80,6 +131,238 @@ public class StompClient {
         this.connectionListener = listener;
     }
     
+    /**
+     * Sets the executor that delivers received messages to subscription handlers.
+     * Each subscription has its own serial queue, so messages of one subscription are
+     * handled in order while different subscriptions are handled in parallel. By default
+     * every queue is drained on a virtual thread. Pass {@code Runnable::run} to handle
+     * messages directly on the WebSocket reader thread.
+     * The executor applies to subscriptions created after this call.
+     * 
+     * @param dispatchExecutor the executor to deliver messages on
+     */
+    public void setDispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+    }
+    
+    /**
+     * Sets the heart-beat intervals offered in the CONNECT frame.
+     * The effective intervals are negotiated with the server's CONNECTED frame.
+     * When outgoing heart-beats are negotiated an EOL is sent whenever nothing else was
+     * written for the interval; when incoming heart-beats are negotiated and the server
+     * stays silent for twice the interval, the connection is considered dead and closed.
+     * All clients share a single timer thread for this. Applies to the next connection.
+     * 
+     * @param sendIntervalMillis the smallest interval the client can send heart-beats at, 0 for none
+     * @param receiveIntervalMillis the desired interval to receive heart-beats at, 0 for none
+     */
+    public void setHeartbeat(long sendIntervalMillis, long receiveIntervalMillis) {
+        if (sendIntervalMillis < 0 || receiveIntervalMillis < 0) {
+            throw new IllegalArgumentException("Heart-beat intervals cannot be negative");
+        }
+        this.heartbeatSendInterval = sendIntervalMillis;
+        this.heartbeatReceiveInterval = receiveIntervalMillis;
+    }
+    
+    /**
+     * Sets the policy for reconnecting automatically when the connection is lost.
+     * After reconnecting, every active subscription is subscribed again with its original
+     * ID and destination, and the connection listener's {@code onConnected} is called again.
+     * Reconnecting stops when {@link #disconnect()} is called or the policy's maximum number
+     * of attempts is reached. Disabled by default.
+     * 
+     * @param reconnectPolicy the reconnect policy, or null to disable reconnecting
+     */
+    public void setReconnectPolicy(StompReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
+    
+    /**
+     * Sets a buffer that holds sent messages while the client is not connected.
+     * Without a buffer, sending while disconnected throws an {@link IllegalStateException}.
+     * With a buffer, messages are buffered up to its limits and sent in order once the
+     * connection is (re-)established, before any newly sent message.
+     * Only SEND frames are buffered; subscribing still requires a connection.
+     * 
+     * @param sendBuffer the send buffer, or null to disable buffering
+     */
+    public void setSendBuffer(StompSendBuffer sendBuffer) {
+        this.sendBuffer = sendBuffer;
+    }
+    
+    /**
+     * Gets the send buffer, for example to inspect its statistics.
+     * 
+     * @return the send buffer, or null if buffering is disabled
+     */
+    public StompSendBuffer getSendBuffer() {
+        return sendBuffer;
+    }
+    
+    /**
+     * Sets how long {@code sendAsync} waits for the server's receipt, measured from when
+     * the frame is written; time spent in the send buffer does not count. Defaults to 30 seconds.
+     * 
+     * @param receiptTimeout the timeout, or {@link Duration#ZERO} to wait indefinitely
+     */
+    public void setReceiptTimeout(Duration receiptTimeout) {
+        if (receiptTimeout.isNegative()) {
+            throw new IllegalArgumentException("Receipt timeout cannot be negative");
+        }
+        this.receiptTimeoutMillis = receiptTimeout.toMillis();
+    }
+    
+    /**
+     * Enables coalescing of outgoing frames.
+     * SEND, ACK and NACK frames written within the window are concatenated into a single
+     * WebSocket message, which saves per-message framing and masking overhead when many
+     * small messages are sent. The message is sent once the window elapses or the pending
+     * frames reach {@code maxBytes}. Any other frame flushes pending frames before it is sent.
+     * Applies to the next connection.
+     * 
+     * @param window the maximum time a frame is held back, or {@link Duration#ZERO} to disable coalescing
+     * @param maxBytes the size at which pending frames are sent right away
+     */
+    public void setWriteCoalescing(Duration window, int maxBytes) {
+        if (window.isNegative() || maxBytes < 1) {
+            throw new IllegalArgumentException("Coalescing window cannot be negative and byte limit must be positive");
+        }
+        this.writeCoalescingWindowMillis = window.toMillis();
+        this.writeCoalescingMaxBytes = maxBytes;
+    }
+    
+    /**
+     * Sets the maximum size of a received frame.
+     * Frames may be split across several WebSocket messages; their parts are buffered
+     * until the frame is complete. A frame exceeding this size is reported to the connection
+     * listener as a {@link StompFrameTooLargeException} and the connection is closed.
+     * Defaults to 16 MiB. Applies to the next connection.
+     * 
+     * @param maxFrameSize the maximum frame size in bytes
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize < 1) {
+            throw new IllegalArgumentException("Maximum frame size must be positive");
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
+    
+    /**
+     * Enables or disables lazy decoding of received messages.
+     * When enabled, only the subscription header of a MESSAGE frame is decoded
+     * before dispatch; other headers are decoded when they are first looked up
+     * and the body when it is first read as text. This saves work for handlers
+     * that only inspect a few headers or ignore the body, at the cost of each
+     * message keeping the received bytes it was decoded from. Applies to the
+     * next connection.
+     * 
+     * @param lazyMessageDecoding true to decode messages lazily, false to decode them fully on receipt
+     */
+    public void setLazyMessageDecoding(boolean lazyMessageDecoding) {
+        this.lazyMessageDecoding = lazyMessageDecoding;
+    }
+    
+    /**
+     * Enables or disables the binary transport mode.
+     * In binary mode every frame is encoded to bytes and sent as a binary WebSocket message.
+     * In text mode frames are sent as text messages, except for frames with a binary body,
+     * which are always sent as binary messages. Incoming frames are accepted in both forms
+     * regardless of this setting.
+     * 
+     * @param binaryMode true to send all frames as binary WebSocket messages
+     */
+    public void setBinaryMode(boolean binaryMode) {
+        this.binaryMode = binaryMode;
+    }
+    
+    /**
+     * Checks if the binary transport mode is enabled.
+     * 
+     * @return true if frames are sent as binary WebSocket messages
+     */
+    public boolean isBinaryMode() {
+        return binaryMode;
+    }
+    
+    /**
+     * Enables compression of large message bodies.
+     * Bodies of at least {@code minBodySize} bytes are compressed when that makes them
+     * smaller, marked with a content-encoding header and sent as binary WebSocket messages,
+     * even when binary mode is off. While compression is enabled, received messages carrying
+     * a supported content-encoding are decompressed on the dispatch executor before they reach
+     * the handler; otherwise they are delivered as received. A compressed body only survives
+     * a server that relays it in binary WebSocket messages. Disabled by default.
+     * 
+     * @param compression the algorithm to compress with, or null to disable compression
+     * @param minBodySize the smallest body size in bytes to compress
+     */
+    public void setCompression(StompCompression compression, int minBodySize) {
+        if (minBodySize < 0) {
+            throw new IllegalArgumentException("Minimum body size cannot be negative");
+        }
+        this.compressionThreshold = minBodySize;
+        this.compression = compression;
+    }
+    
+    /**
+     * Sets how the WebSocket {@code permessage-deflate} extension is negotiated.
+     * By default OkHttp offers it with context takeover and compresses messages of
+     * 1024 bytes or more. Disabling it saves CPU on connections that mostly carry
+     * small frames; turning off context takeover bounds the memory each connection
+     * holds for compression. Use {@link #getWireStats()} to measure the effect.
+     * Applies to the next connection.
+     * 
+     * @param perMessageDeflate the permessage-deflate options
+     */
+    public void setPerMessageDeflate(StompPerMessageDeflate perMessageDeflate) {
+        if (perMessageDeflate == null) {
+            throw new IllegalArgumentException("Per-message deflate options cannot be null");
+        }
+        this.perMessageDeflate = perMessageDeflate;
+    }
+    
+    /**
+     * Gets the WebSocket extensions the server accepted for the current connection,
+     * for example {@code permessage-deflate} when WebSocket compression is in use.
+     * 
+     * @return the accepted extensions as sent by the server, or null if none were accepted
+     */
+    public String getWebSocketExtensions() {
+        return webSocketExtensions;
+    }
+    
+    /**
+     * Gets the counters of message and wire bytes exchanged with the server.
+     * 
+     * @return the counters, shared across connections
+     */
+    public StompWireStats getWireStats() {
+        return wireStats;
+    }
+    
+    /**
+     * Enables or disables writing a content-length header on outgoing frames.
+     * Frames with a binary body always carry a content-length header.
+     * 
+     * @param contentLengthEnabled true to write a content-length header on every frame
+     */
+    public void setContentLengthEnabled(boolean contentLengthEnabled) {
+        this.contentLengthEnabled = contentLengthEnabled;
+    }
+    
+    /**
+     * Registers a codec for serializing objects, replacing any codec registered
+     * for the same content type. A JSON codec using the client's Gson instance is
+     * registered by default.
+     * 
+     * @param codec the codec
+     * @see #sendObject(String, Object, String)
+     * @see #subscribeObject(String, Type, StompJsonMessageHandler)
+     */
+    public void registerCodec(StompCodec codec) {
+        codecs.put(normalizeContentType(codec.getContentType()), codec);
+    }
+    
     /**
      * Adds a header to be sent with the CONNECT frame.
      * 
@@ -98,25 +381,71 @@ public class StompClient {
     public CompletableFuture<Void> connect() {
         CompletableFuture<Void> future = new CompletableFuture<>();
         
+        disconnectRequested = false;
+        cancelReconnect();
+        openWebSocket(future, false);
+        
+        return future;
+    }
+    
+    private void openWebSocket(CompletableFuture<Void> future, boolean restoreSubscriptions) {
         Request request = new Request.Builder()
                 .url(serverUri.toString())
                 .build();
         
-        webSocket = httpClient.newWebSocket(request, new StompWebSocketListener(future));
-        
-        return future;
+        StompWebSocketListener listener = new StompWebSocketListener(future, restoreSubscriptions);
+        currentListener = listener;
+        webSocket = wireStats.count(webSocketClient().newWebSocket(request, listener));
+    }
+    
+    /**
+     * Derives the client for a connection from the configured one, applying the
+     * permessage-deflate options and counting the bytes passing through the socket.
+     */
+    private OkHttpClient webSocketClient() {
+        StompPerMessageDeflate deflate = perMessageDeflate;
+        String offer = deflate.extensionOffer();
+        OkHttpClient.Builder builder = httpClient.newBuilder()
+                .minWebSocketMessageToCompress(deflate.getMinMessageSize())
+                // OkHttp always offers permessage-deflate with context takeover, so rewrite the upgrade request
+                .addInterceptor(chain -> {
+                    Request.Builder upgrade = chain.request().newBuilder();
+                    if (offer == null) {
+                        upgrade.removeHeader(StompPerMessageDeflate.EXTENSIONS_HEADER);
+                    } else {
+                        upgrade.header(StompPerMessageDeflate.EXTENSIONS_HEADER, offer);
+                    }
+                    return chain.proceed(upgrade.build());
+                });
+        if (httpClient.socketFactory() == SocketFactory.getDefault()) {
+            builder.socketFactory(wireStats.socketFactory());
+        }
+        return builder.build();
     }
     
     /**
      * Disconnects from the STOMP server.
+     * This also stops any pending automatic reconnect and drops all subscriptions,
+     * they are not restored by a later {@link #connect()}.
      */
     public void disconnect() {
-        if (webSocket != null && connected.get()) {
+        disconnectRequested = true;
+        cancelReconnect();
+        
+        WebSocket socket = webSocket;
+        if (socket != null && connected.get()) {
+            flushPendingAcks();
             StompFrame disconnectFrame = new StompFrame(StompCommand.DISCONNECT);
             sendFrame(disconnectFrame);
-            webSocket.close(1000, "Normal closure");
+            stopHeartbeat();
+            socket.close(1000, "Normal closure");
             connected.set(false);
+        } else if (socket != null) {
+            // A reconnect attempt may still be opening its socket
+            socket.cancel();
         }
+        closeSubscriptions();
+        receipts.failAll(new StompException("Client disconnected before receipt was received"));
     }
     
     /**
@@ -137,16 +466,140 @@ public class StompClient {
      * @param headers additional headers
      */
     public void send(String destination, String message, Map<String, String> headers) {
-        if (!connected.get()) {
-            throw new IllegalStateException("Not connected to server");
-        }
+        ensureCanSend();
+        
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        frame.setBody(message);
         
+        sendOrBuffer(frame);
+    }
+    
+    /**
+     * Sends a binary message to the specified destination.
+     * 
+     * @param destination the destination to send to
+     * @param body the message body
+     */
+    public void send(String destination, byte[] body) {
+        send(destination, body, Map.of());
+    }
+    
+    /**
+     * Sends a binary message to the specified destination with custom headers.
+     * The body is sent as-is in a binary WebSocket message, without any String conversion.
+     * 
+     * @param destination the destination to send to
+     * @param body the message body
+     * @param headers additional headers
+     */
+    public void send(String destination, byte[] body, Map<String, String> headers) {
+        ensureCanSend();
+        
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        frame.setBody(body);
+        
+        sendOrBuffer(frame);
+    }
+    
+    /**
+     * Sends a message and requests a receipt from the server.
+     * 
+     * @param destination the destination to send to
+     * @param message the message body
+     * @return a future completed when the server confirms the message
+     * @see #sendAsync(String, String, Map)
+     */
+    public CompletableFuture<Void> sendAsync(String destination, String message) {
+        return sendAsync(destination, message, Map.of());
+    }
+    
+    /**
+     * Sends a message with custom headers and requests a receipt from the server.
+     * The returned future completes when the matching RECEIPT frame arrives. It fails with a
+     * {@link StompException} when the server reports an ERROR for the message or the connection
+     * is lost first, and with a {@link java.util.concurrent.TimeoutException} when no receipt
+     * arrives within the receipt timeout.
+     * 
+     * @param destination the destination to send to
+     * @param message the message body
+     * @param headers additional headers
+     * @return a future completed when the server confirms the message
+     */
+    public CompletableFuture<Void> sendAsync(String destination, String message, Map<String, String> headers) {
         StompFrame frame = new StompFrame(StompCommand.SEND);
         frame.addHeader("destination", destination);
         headers.forEach(frame::addHeader);
         frame.setBody(message);
         
+        return sendWithReceipt(frame);
+    }
+    
+    /**
+     * Sends a binary message with custom headers and requests a receipt from the server.
+     * 
+     * @param destination the destination to send to
+     * @param body the message body
+     * @param headers additional headers
+     * @return a future completed when the server confirms the message
+     * @see #sendAsync(String, String, Map)
+     */
+    public CompletableFuture<Void> sendAsync(String destination, byte[] body, Map<String, String> headers) {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        frame.setBody(body);
+        
+        return sendWithReceipt(frame);
+    }
+    
+    /**
+     * Creates a pipelined publisher that keeps at most {@code maxInFlight} messages unconfirmed.
+     * 
+     * @param maxInFlight the in-flight window size
+     * @return a new publisher sending through this client
+     * @see StompPublisher
+     */
+    public StompPublisher createPublisher(int maxInFlight) {
+        return new StompPublisher(this, maxInFlight);
+    }
+    
+    /**
+     * Prepares a SEND for repeated use with the same destination and headers.
+     * The destination and headers are escaped and encoded once; each message sent
+     * through the returned object only encodes its own headers and body.
+     * 
+     * @param destination the destination to send to
+     * @param headers the headers sent with every message
+     * @return the prepared send
+     * @see StompPreparedSend
+     */
+    public StompPreparedSend prepareSend(String destination, Map<String, String> headers) {
+        return new StompPreparedSend(this, destination, headers);
+    }
+    
+    /**
+     * Begins a transaction.
+     * SEND, ACK and NACK frames issued through the returned transaction are processed
+     * atomically by the server once it is committed.
+     * 
+     * @return the new transaction
+     * @throws IllegalStateException if not connected
+     */
+    public StompTransaction begin() {
+        if (!connected.get()) {
+            throw new IllegalStateException("Not connected to server");
+        }
+        
+        String transactionId = "tx-" + messageIdCounter.incrementAndGet();
+        StompFrame frame = new StompFrame(StompCommand.BEGIN);
+        frame.addHeader("transaction", transactionId);
         sendFrame(frame);
+        
+        return new StompTransaction(this, transactionId);
     }
     
     /**
@@ -172,21 +625,69 @@ public class StompClient {
      * @throws StompJsonException if JSON serialization fails
      */
     public void sendJson(String destination, Object object, Map<String, String> headers) throws StompJsonException {
-        if (!connected.get()) {
-            throw new IllegalStateException("Not connected to server");
+        sendEncoded(destination, object, jsonCodec, headers);
+    }
+    
+    /**
+     * Sends an object to the specified destination, serialized by the codec registered
+     * for the given content type. Binary codecs send the body as a binary frame.
+     * 
+     * @param destination the destination to send to
+     * @param object the object to serialize and send
+     * @param contentType the content type to serialize to, for example {@code application/cbor}
+     * @throws StompJsonException if serialization fails
+     * @throws IllegalArgumentException if no codec is registered for the content type
+     * @see #registerCodec(StompCodec)
+     */
+    public void sendObject(String destination, Object object, String contentType) throws StompJsonException {
+        sendObject(destination, object, contentType, Map.of());
+    }
+    
+    /**
+     * Sends an object to the specified destination with custom headers, serialized by the
+     * codec registered for the given content type.
+     * The content-type header will be automatically set to the content type if not provided.
+     * 
+     * @param destination the destination to send to
+     * @param object the object to serialize and send
+     * @param contentType the content type to serialize to, for example {@code application/cbor}
+     * @param headers additional headers
+     * @throws StompJsonException if serialization fails
+     * @throws IllegalArgumentException if no codec is registered for the content type
+     */
+    public void sendObject(String destination, Object object, String contentType,
+                           Map<String, String> headers) throws StompJsonException {
+        StompCodec codec = codecs.get(normalizeContentType(contentType));
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec registered for " + contentType);
         }
+        sendEncoded(destination, object, codec, headers);
+    }
+    
+    private void sendEncoded(String destination, Object object, StompCodec codec,
+                             Map<String, String> headers) throws StompJsonException {
+        ensureCanSend();
         
+        byte[] body;
         try {
-            String jsonString = gson.toJson(object);
-            
-            // Create a copy of headers and add content-type if not present
-            Map<String, String> jsonHeaders = new ConcurrentHashMap<>(headers);
-            jsonHeaders.putIfAbsent("content-type", "application/json");
-            
-            send(destination, jsonString, jsonHeaders);
+            body = codec.encode(object);
         } catch (Exception e) {
-            throw new StompJsonException("Failed to serialize object to JSON", e);
+            throw new StompJsonException("Failed to serialize object to " + codec.getContentType(), e);
         }
+        
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        if (frame.getHeader("content-type") == null) {
+            frame.addHeader("content-type", codec.getContentType());
+        }
+        if (codec.isBinary()) {
+            frame.setBody(body);
+        } else {
+            frame.setTextBody(body, 0, body.length);
+        }
+        
+        sendOrBuffer(frame);
     }
     
     /**
@@ -197,20 +698,31 @@ public class StompClient {
      * @return the subscription ID
      */
     public String subscribe(String destination, StompMessageHandler messageHandler) {
+        return subscribe(destination, messageHandler, StompSubscriptionOptions.defaults());
+    }
+    
+    /**
+     * Subscribes to a destination with custom options.
+     * The options bound the number of messages queued for the handler and decide
+     * what happens to messages arriving while the queue is full.
+     * 
+     * @param destination the destination to subscribe to
+     * @param messageHandler the message handler
+     * @param options the subscription options
+     * @return the subscription ID
+     */
+    public String subscribe(String destination, StompMessageHandler messageHandler, StompSubscriptionOptions options) {
         if (!connected.get()) {
             throw new IllegalStateException("Not connected to server");
         }
         
         String subscriptionId = "sub-" + messageIdCounter.incrementAndGet();
         
-        StompFrame frame = new StompFrame(StompCommand.SUBSCRIBE);
-        frame.addHeader("id", subscriptionId);
-        frame.addHeader("destination", destination);
-        
-        StompSubscription subscription = new StompSubscription(subscriptionId, destination, messageHandler);
+        StompSubscription subscription = new StompSubscription(subscriptionId, destination, messageHandler,
+                options, dispatchExecutor, this::handleDispatchError, this::sendAckFrame, this::decompress);
         subscriptions.put(subscriptionId, subscription);
         
-        sendFrame(frame);
+        sendFrame(createSubscribeFrame(subscription));
         
         return subscriptionId;
     }
@@ -241,10 +753,72 @@ public class StompClient {
      * @return the subscription ID
      */
     public <T> String subscribeJson(String destination, Type type, StompJsonMessageHandler<T> jsonMessageHandler) {
-        // Create a wrapper StompMessageHandler that handles JSON deserialization
+        return subscribeJson(destination, type, jsonMessageHandler, StompSubscriptionOptions.defaults());
+    }
+    
+    /**
+     * Subscribes to a destination with automatic JSON deserialization and custom options.
+     * 
+     * @param <T> the type to deserialize JSON messages to
+     * @param destination the destination to subscribe to
+     * @param type the Type to deserialize to (useful for generics)
+     * @param jsonMessageHandler the JSON message handler
+     * @param options the subscription options
+     * @return the subscription ID
+     */
+    public <T> String subscribeJson(String destination, Type type, StompJsonMessageHandler<T> jsonMessageHandler,
+                                    StompSubscriptionOptions options) {
+        StompCodec.Decoder<T> decoder = jsonCodec.decoder(type);
+        return subscribeDecoded(destination, message -> decoder, jsonMessageHandler, options);
+    }
+    
+    /**
+     * Subscribes to a destination with automatic deserialization by content type.
+     * Each message is decoded by the codec registered for its content-type header;
+     * messages without one are decoded as JSON.
+     * 
+     * @param <T> the type to deserialize messages to
+     * @param destination the destination to subscribe to
+     * @param type the Type to deserialize to (useful for generics)
+     * @param messageHandler the message handler
+     * @return the subscription ID
+     * @see #registerCodec(StompCodec)
+     */
+    public <T> String subscribeObject(String destination, Type type, StompJsonMessageHandler<T> messageHandler) {
+        return subscribeObject(destination, type, messageHandler, StompSubscriptionOptions.defaults());
+    }
+    
+    /**
+     * Subscribes to a destination with automatic deserialization by content type and custom options.
+     * 
+     * @param <T> the type to deserialize messages to
+     * @param destination the destination to subscribe to
+     * @param type the Type to deserialize to (useful for generics)
+     * @param messageHandler the message handler
+     * @param options the subscription options
+     * @return the subscription ID
+     */
+    public <T> String subscribeObject(String destination, Type type, StompJsonMessageHandler<T> messageHandler,
+                                      StompSubscriptionOptions options) {
+        // Decoders are created once per codec seen on this subscription
+        Map<StompCodec, StompCodec.Decoder<T>> decoders = new ConcurrentHashMap<>();
+        Function<StompMessage, StompCodec.Decoder<T>> decoderSelector = message -> {
+            String contentType = message.getHeader("content-type");
+            StompCodec codec = contentType != null ? codecs.get(normalizeContentType(contentType)) : jsonCodec;
+            if (codec == null) {
+                throw new IllegalArgumentException("No codec registered for " + contentType);
+            }
+            return decoders.computeIfAbsent(codec, c -> c.decoder(type));
+        };
+        return subscribeDecoded(destination, decoderSelector, messageHandler, options);
+    }
+    
+    private <T> String subscribeDecoded(String destination, Function<StompMessage, StompCodec.Decoder<T>> decoderSelector,
+                                        StompJsonMessageHandler<T> jsonMessageHandler, StompSubscriptionOptions options) {
+        // Create a wrapper StompMessageHandler that handles deserialization
         StompMessageHandler wrapper = message -> {
             try {
-                T jsonObject = gson.fromJson(message.getBody(), type);
+                T jsonObject = decoderSelector.apply(message).decode(message);
                 StompJsonMessage<T> jsonMessage = new StompJsonMessage<>(message, jsonObject);
                 jsonMessageHandler.onJsonMessage(destination, jsonObject, jsonMessage);
             } catch (Exception e) {
@@ -253,13 +827,21 @@ public class StompClient {
                 } catch (StompJsonException jsonEx) {
                     logger.error("Error in JSON message handler", jsonEx);
                     if (connectionListener != null) {
-                        connectionListener.onError(new StompJsonException("Failed to deserialize JSON message", e));
+                        connectionListener.onError(new StompJsonException("Failed to deserialize message", e));
                     }
                 }
             }
         };
         
-        return subscribe(destination, wrapper);
+        return subscribe(destination, wrapper, options);
+    }
+    
+    /**
+     * Strips parameters such as the charset from a content type and lower-cases it.
+     */
+    private static String normalizeContentType(String contentType) {
+        int end = contentType.indexOf(';');
+        return (end >= 0 ? contentType.substring(0, end) : contentType).trim().toLowerCase(Locale.ROOT);
     }
     
     /**
@@ -275,10 +857,27 @@ public class StompClient {
         StompFrame frame = new StompFrame(StompCommand.UNSUBSCRIBE);
         frame.addHeader("id", subscriptionId);
         
-        subscriptions.remove(subscriptionId);
+        StompSubscription subscription = subscriptions.remove(subscriptionId);
+        if (subscription != null) {
+            StompAcknowledger acknowledger = subscription.acknowledger();
+            if (acknowledger != null) {
+                acknowledger.flush();
+            }
+            subscription.close();
+        }
         sendFrame(frame);
     }
     
+    /**
+     * Gets an active subscription, for example to inspect its queue statistics.
+     * 
+     * @param subscriptionId the subscription ID
+     * @return the subscription, or null if there is no such subscription
+     */
+    public StompSubscription getSubscription(String subscriptionId) {
+        return subscriptions.get(subscriptionId);
+    }
+    
     /**
      * Checks if the client is connected.
      * 
@@ -288,28 +887,370 @@ public class StompClient {
         return connected.get();
     }
     
+    /**
+     * Sends a prepared SEND frame, buffering it while disconnected if a send buffer is set.
+     */
+    void send(StompFrame frame) {
+        ensureCanSend();
+        sendOrBuffer(frame);
+    }
+    
+    /**
+     * Sends a frame with a receipt header and tracks the receipt.
+     * Failures to send are reported through the returned future instead of being thrown.
+     */
+    CompletableFuture<Void> sendWithReceipt(StompFrame frame) {
+        return sendWithReceipt(frame, this::sendOrBuffer);
+    }
+    
+    /**
+     * Sends a frame with a receipt header through the given sender and tracks the receipt.
+     */
+    CompletableFuture<Void> sendWithReceipt(StompFrame frame, Consumer<StompFrame> sender) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        frame.requestReceipt(receipts.nextReceiptId(), future);
+        
+        try {
+            sender.accept(frame);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Sends a frame belonging to a transaction. Such frames are never buffered,
+     * since the server aborts the transaction when the connection is lost.
+     */
+    void sendTransactionFrame(StompFrame frame) {
+        if (!connected.get()) {
+            throw new IllegalStateException("Not connected to server");
+        }
+        compress(frame);
+        sendFrame(frame);
+    }
+    
+    private void ensureCanSend() {
+        if (!connected.get() && sendBuffer == null) {
+            throw new IllegalStateException("Not connected to server");
+        }
+    }
+    
+    private void sendOrBuffer(StompFrame frame) {
+        compress(frame);
+        if (!connected.get()) {
+            StompSendBuffer buffer = sendBuffer;
+            if (buffer == null) {
+                throw new IllegalStateException("Not connected to server");
+            }
+            synchronized (buffer) {
+                // Re-check under the lock, the buffer may have been flushed in the meantime
+                if (!connected.get()) {
+                    buffer.add(frame);
+                    CompletableFuture<Void> receipt = frame.receipt();
+                    if (receipt != null) {
+                        // A future completed or cancelled by the caller withdraws the buffered frame
+                        receipt.whenComplete((result, error) -> {
+                            synchronized (buffer) {
+                                buffer.remove(frame);
+                            }
+                        });
+                    }
+                    return;
+                }
+            }
+        }
+        sendFrame(frame);
+    }
+    
+    /**
+     * Compresses the body of a SEND frame if compression is enabled.
+     */
+    private void compress(StompFrame frame) {
+        StompCompression current = compression;
+        if (current != null && frame.getCommand() == StompCommand.SEND) {
+            frame.compressBody(current, compressionThreshold);
+        }
+    }
+    
+    /**
+     * Marks the client as connected, sending buffered messages first so they keep their order.
+     */
+    private void flushSendBufferAndMarkConnected() {
+        StompSendBuffer buffer = sendBuffer;
+        if (buffer == null) {
+            connected.set(true);
+            return;
+        }
+        synchronized (buffer) {
+            if (buffer.getBufferedCount() > 0) {
+                logger.debug("Sending {} buffered messages", buffer.getBufferedCount());
+            }
+            buffer.flush(this::sendFrame);
+            connected.set(true);
+        }
+    }
+    
+    private StompFrame createSubscribeFrame(StompSubscription subscription) {
+        StompFrame frame = new StompFrame(StompCommand.SUBSCRIBE);
+        frame.addHeader("id", subscription.getId());
+        frame.addHeader("destination", subscription.getDestination());
+        StompAckMode ackMode = subscription.getOptions().getAckMode();
+        if (ackMode != StompAckMode.AUTO) {
+            frame.addHeader("ack", ackMode.getHeaderValue());
+        }
+        int prefetch = subscription.getOptions().getPrefetch();
+        if (prefetch > 0) {
+            frame.addHeader("prefetch-count", String.valueOf(prefetch));
+            frame.addHeader("activemq.prefetchSize", String.valueOf(prefetch));
+        }
+        return frame;
+    }
+    
+    /**
+     * Sends an ACK or NACK frame. Acknowledgements made while disconnected are dropped,
+     * the server redelivers unacknowledged messages after reconnecting anyway.
+     */
+    private void sendAckFrame(StompFrame frame) {
+        if (connected.get()) {
+            sendFrame(frame);
+        }
+    }
+    
+    private void flushPendingAcks() {
+        for (StompSubscription subscription : subscriptions.values()) {
+            StompAcknowledger acknowledger = subscription.acknowledger();
+            if (acknowledger != null) {
+                acknowledger.flush();
+            }
+        }
+    }
+    
+    private void discardPendingDeliveries() {
+        for (StompSubscription subscription : subscriptions.values()) {
+            subscription.connectionLost();
+        }
+    }
+    
+    private void closeSubscriptions() {
+        for (StompSubscription subscription : subscriptions.values()) {
+            subscription.close();
+        }
+        subscriptions.clear();
+    }
+    
+    private void resubscribe() {
+        for (StompSubscription subscription : subscriptions.values()) {
+            logger.debug("Restoring subscription {} to {}", subscription.getId(), subscription.getDestination());
+            sendFrame(createSubscribeFrame(subscription));
+        }
+    }
+    
+    private void scheduleReconnect(StompWebSocketListener lostListener) {
+        StompReconnectPolicy policy = reconnectPolicy;
+        if (policy == null || disconnectRequested) {
+            return;
+        }
+        
+        int attempt = reconnectAttempts.incrementAndGet();
+        if (!policy.allowsAttempt(attempt)) {
+            logger.error("Giving up reconnecting after {} attempts", attempt - 1);
+            if (connectionListener != null) {
+                connectionListener.onError(new StompException("Reconnect failed after " + (attempt - 1) + " attempts"));
+            }
+            return;
+        }
+        
+        long delay = policy.delayMillis(attempt);
+        logger.warn("Connection lost, reconnecting in {} ms (attempt {})", delay, attempt);
+        reconnectTask = StompScheduler.schedule(() -> {
+            // A connection opened in the meantime must not be replaced
+            if (!disconnectRequested && currentListener == lostListener) {
+                openWebSocket(new CompletableFuture<>(), true);
+            }
+        }, delay);
+    }
+    
+    private void cancelReconnect() {
+        ScheduledFuture<?> task = reconnectTask;
+        if (task != null) {
+            task.cancel(false);
+            reconnectTask = null;
+        }
+    }
+    
+    private void failSubscription(StompSubscription subscription) {
+        if (subscriptions.remove(subscription.getId()) == null) {
+            return;
+        }
+        
+        logger.warn("Subscription {} overflowed its queue, unsubscribing", subscription.getId());
+        if (connected.get()) {
+            StompFrame frame = new StompFrame(StompCommand.UNSUBSCRIBE);
+            frame.addHeader("id", subscription.getId());
+            sendFrame(frame);
+        }
+        if (connectionListener != null) {
+            connectionListener.onError(new StompException("Subscription " + subscription.getId()
+                    + " to " + subscription.getDestination() + " exceeded its queue capacity of "
+                    + subscription.getOptions().getQueueCapacity() + " messages"));
+        }
+    }
+    
+    /**
+     * Decompresses a received message on the dispatch executor, if compression is enabled.
+     */
+    private StompMessage decompress(StompMessage message) throws IOException {
+        return compression != null ? message.decompress(maxFrameSize) : message;
+    }
+    
+    private void handleDispatchError(Throwable error) {
+        logger.error("Error in message handler", error);
+        if (connectionListener != null) {
+            connectionListener.onError(error);
+        }
+    }
+    
+    private void startHeartbeat(StompFrame connectedFrame) {
+        long[] intervals = StompHeartbeat.negotiate(heartbeatSendInterval, heartbeatReceiveInterval,
+                connectedFrame.getHeader("heart-beat"));
+        StompHeartbeat newHeartbeat = new StompHeartbeat(intervals[0], intervals[1],
+                this::sendHeartbeat, this::handleMissedHeartbeats);
+        
+        stopHeartbeat();
+        if (newHeartbeat.isActive()) {
+            logger.debug("Heart-beating negotiated: outgoing {} ms, incoming {} ms", intervals[0], intervals[1]);
+            heartbeat = newHeartbeat;
+            newHeartbeat.start();
+        }
+    }
+    
+    private void stopHeartbeat() {
+        StompHeartbeat current = heartbeat;
+        if (current != null) {
+            current.stop();
+            heartbeat = null;
+        }
+    }
+    
+    private void sendHeartbeat() {
+        WebSocket socket = webSocket;
+        if (socket != null && connected.get()) {
+            if (binaryMode) {
+                socket.send(HEARTBEAT_BYTES);
+            } else {
+                socket.send(HEARTBEAT);
+            }
+        }
+    }
+    
+    private void handleMissedHeartbeats() {
+        logger.warn("No heart-beat received from server, closing connection");
+        StompConnectionListener listener = connectionListener;
+        if (listener != null) {
+            // Runs on the shared scheduler thread, which must not wait for the listener
+            dispatchExecutor.execute(() -> listener.onError(new StompException("Server heart-beat timed out")));
+        }
+        WebSocket socket = webSocket;
+        if (socket != null) {
+            socket.cancel();
+        }
+    }
+    
+    private static boolean isHeartbeat(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isHeartbeat(ByteString bytes) {
+        for (int i = 0; i < bytes.size(); i++) {
+            byte b = bytes.getByte(i);
+            if (b != '\n' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     private void sendFrame(StompFrame frame) {
-        String frameString = frame.toString();
-        logger.debug("Sending frame: {}", frameString);
-        webSocket.send(frameString);
+        CompletableFuture<Void> receipt = frame.receipt();
+        if (receipt != null) {
+            if (receipt.isDone()) {
+                logger.debug("Dropping frame whose receipt future is already completed");
+                return;
+            }
+            // The receipt timeout starts once the frame is actually written
+            receipts.register(frame.getHeader("receipt"), receipt, receiptTimeoutMillis);
+        }
+        
+        StompHeartbeat current = heartbeat;
+        if (current != null) {
+            current.onWrite();
+        }
+        
+        StompWriteCoalescer coalescer = writeCoalescer;
+        boolean coalesce = coalescer != null && isCoalescable(frame.getCommand());
+        if (coalescer != null && !coalesce) {
+            coalescer.flush();
+        }
+        
+        boolean binary = binaryMode || frame.hasBinaryBody();
+        frame.markWritten();
+        if (coalesce) {
+            logger.debug("Coalescing frame: {}", frame.getCommand());
+            coalescer.write(frame, binary, contentLengthEnabled);
+        } else if (binary) {
+            ByteString frameBytes = frame.toByteString(contentLengthEnabled);
+            logger.debug("Sending binary frame: {} ({} bytes)", frame.getCommand(), frameBytes.size());
+            webSocket.send(frameBytes);
+        } else {
+            String frameString = frame.encode(contentLengthEnabled);
+            logger.debug("Sending frame: {}", frameString);
+            webSocket.send(frameString);
+        }
+    }
+    
+    private static boolean isCoalescable(StompCommand command) {
+        return command == StompCommand.SEND || command == StompCommand.ACK || command == StompCommand.NACK;
     }
     
     private class StompWebSocketListener extends WebSocketListener {
         
         private final CompletableFuture<Void> connectFuture;
+        private final boolean restoreSubscriptions;
+        private final AtomicBoolean lost = new AtomicBoolean(false);
+        private final StompStreamDecoder decoder;
         
-        public StompWebSocketListener(CompletableFuture<Void> connectFuture) {
+        public StompWebSocketListener(CompletableFuture<Void> connectFuture, boolean restoreSubscriptions) {
             this.connectFuture = connectFuture;
+            this.restoreSubscriptions = restoreSubscriptions;
+            this.decoder = new StompStreamDecoder(maxFrameSize, lazyMessageDecoding);
         }
         
         @Override
         public void onOpen(WebSocket webSocket, Response response) {
-            logger.debug("WebSocket opened");
+            webSocketExtensions = response.header(StompPerMessageDeflate.EXTENSIONS_HEADER);
+            logger.debug("WebSocket opened, extensions: {}", webSocketExtensions);
+            
+            // The upgrade can complete before openWebSocket has stored the new socket,
+            // so publish it here, or CONNECT would be written to the previous one
+            WebSocket socket = wireStats.count(webSocket);
+            StompClient.this.webSocket = socket;
+            long coalescingWindow = writeCoalescingWindowMillis;
+            writeCoalescer = coalescingWindow > 0
+                    ? new StompWriteCoalescer(coalescingWindow, writeCoalescingMaxBytes, socket::send, socket::send)
+                    : null;
             
             // Send CONNECT frame
             StompFrame connectFrame = new StompFrame(StompCommand.CONNECT);
             connectFrame.addHeader("accept-version", "1.2");
             connectFrame.addHeader("host", serverUri.getHost());
+            connectFrame.addHeader("heart-beat", heartbeatSendInterval + "," + heartbeatReceiveInterval);
             headers.forEach(connectFrame::addHeader);
             
             sendFrame(connectFrame);
@@ -318,41 +1259,134 @@ public class StompClient {
         @Override
         public void onMessage(WebSocket webSocket, String text) {
             logger.debug("Received message: {}", text);
+            wireStats.messageReceived(StompFrame.utf8Length(text));
+            onRead();
+            if (isHeartbeat(text) && !decoder.hasPartialFrame()) {
+                return;
+            }
             
+            handleFrames(webSocket, () -> decoder.decode(text));
+        }
+        
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            logger.debug("Received binary message: {} bytes", bytes.size());
+            wireStats.messageReceived(bytes.size());
+            onRead();
+            if (isHeartbeat(bytes) && !decoder.hasPartialFrame()) {
+                return;
+            }
+            
+            handleFrames(webSocket, () -> decoder.decode(bytes.toByteArray()));
+        }
+        
+        /**
+         * Decodes the frames completed by a received message and handles them in order.
+         * An oversized frame cannot be skipped reliably, so it closes the connection.
+         */
+        private void handleFrames(WebSocket webSocket, Supplier<List<StompFrame>> decode) {
+            List<StompFrame> frames;
             try {
-                StompFrame frame = StompFrame.parse(text);
-                handleFrame(frame);
+                frames = decode.get();
+            } catch (StompFrameTooLargeException e) {
+                logger.error("Received frame is too large, closing connection", e);
+                if (connectionListener != null) {
+                    connectionListener.onError(e);
+                }
+                webSocket.cancel();
+                return;
             } catch (Exception e) {
                 logger.error("Error parsing STOMP frame", e);
                 if (connectionListener != null) {
                     connectionListener.onError(e);
                 }
+                return;
+            }
+            
+            for (StompFrame frame : frames) {
+                try {
+                    handleFrame(webSocket, frame);
+                } catch (Exception e) {
+                    logger.error("Error handling STOMP frame", e);
+                    if (connectionListener != null) {
+                        connectionListener.onError(e);
+                    }
+                }
             }
         }
         
         @Override
         public void onClosing(WebSocket webSocket, int code, String reason) {
             logger.debug("WebSocket closing: {} - {}", code, reason);
-            connected.set(false);
-            if (connectionListener != null) {
-                connectionListener.onDisconnected();
+            if (isCurrent()) {
+                stopHeartbeat();
+                connected.set(false);
+                connectionLost();
+                if (connectionListener != null) {
+                    connectionListener.onDisconnected();
+                }
             }
+            // Complete the closing handshake, or the socket stays half-closed
+            webSocket.close(1000, null);
         }
         
         @Override
         public void onFailure(WebSocket webSocket, Throwable t, Response response) {
             logger.error("WebSocket failure", t);
-            connected.set(false);
             connectFuture.completeExceptionally(t);
+            if (!isCurrent()) {
+                return;
+            }
+            stopHeartbeat();
+            connected.set(false);
+            connectionLost();
             if (connectionListener != null) {
                 connectionListener.onError(t);
             }
         }
         
-        private void handleFrame(StompFrame frame) {
+        /**
+         * Checks whether this listener belongs to the current socket. Callbacks of a socket
+         * that has been replaced can arrive late and must not touch the new connection.
+         */
+        private boolean isCurrent() {
+            return currentListener == this;
+        }
+        
+        private void connectionLost() {
+            // onClosing and onFailure can both be reported for the same socket
+            if (lost.compareAndSet(false, true)) {
+                receipts.failAll(new StompException("Connection lost before receipt was received"));
+                discardPendingDeliveries();
+                StompWriteCoalescer coalescer = writeCoalescer;
+                if (coalescer != null) {
+                    coalescer.discard();
+                }
+                scheduleReconnect(this);
+            }
+        }
+        
+        private void onRead() {
+            StompHeartbeat current = heartbeat;
+            if (current != null) {
+                current.onRead();
+            }
+        }
+        
+        private void handleFrame(WebSocket webSocket, StompFrame frame) {
             switch (frame.getCommand()) {
                 case CONNECTED:
-                    connected.set(true);
+                    if (disconnectRequested) {
+                        logger.debug("Ignoring CONNECTED frame received after disconnect");
+                        webSocket.cancel();
+                        break;
+                    }
+                    startHeartbeat(frame);
+                    reconnectAttempts.set(0);
+                    if (restoreSubscriptions) {
+                        resubscribe();
+                    }
+                    flushSendBufferAndMarkConnected();
                     connectFuture.complete(null);
                     if (connectionListener != null) {
                         connectionListener.onConnected();
@@ -364,26 +1398,25 @@ public class StompClient {
                     if (subscriptionId != null) {
                         StompSubscription subscription = subscriptions.get(subscriptionId);
                         if (subscription != null) {
-                            StompMessage message = new StompMessage(
-                                    frame.getHeader("destination"),
-                                    frame.getBody(),
-                                    frame.getHeaders()
-                            );
-                            subscription.getMessageHandler().onMessage(message);
+                            StompMessage message = StompMessage.fromFrame(frame, subscription.acknowledger());
+                            if (!subscription.dispatch(message)) {
+                                failSubscription(subscription);
+                            }
                         }
                     }
                     break;
                     
                 case ERROR:
                     String errorMessage = frame.getBody();
-                    Exception error = new StompException("Server error: " + errorMessage);
+                    Exception error = new StompServerErrorException(errorMessage);
+                    receipts.fail(frame.getHeader("receipt-id"), error);
                     if (connectionListener != null) {
                         connectionListener.onError(error);
                     }
                     break;
                     
                 case RECEIPT:
-                    // Handle receipt if needed
+                    receipts.complete(frame.getHeader("receipt-id"));
                     break;
                     
                 default:
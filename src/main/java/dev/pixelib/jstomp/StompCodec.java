@@ -0,0 +1,70 @@
+package dev.pixelib.jstomp;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Serializes objects to message bodies and back for one content type.
+ * 
+ * Codecs are registered with {@link StompClient#registerCodec(StompCodec)}. Objects
+ * sent with {@link StompClient#sendObject(String, Object, String)} are encoded by the
+ * codec registered for the requested content type, and messages received on a
+ * subscription created with {@code subscribeObject} are decoded by the codec matching
+ * their {@code content-type} header. JSON through Gson is always available.
+ * 
+ * Implementations must be thread-safe.
+ */
+public interface StompCodec {
+    
+    /**
+     * Gets the content type this codec produces and accepts, without parameters.
+     * 
+     * @return the content type, for example {@code application/json}
+     */
+    String getContentType();
+    
+    /**
+     * Checks whether encoded bodies are binary rather than UTF-8 text.
+     * Binary bodies are always sent in binary WebSocket messages.
+     * 
+     * @return true if the encoding is binary
+     */
+    boolean isBinary();
+    
+    /**
+     * Serializes an object.
+     * 
+     * @param object the object, which may be null
+     * @return the encoded body
+     * @throws IOException if the object cannot be serialized
+     */
+    byte[] encode(Object object) throws IOException;
+    
+    /**
+     * Creates a decoder for the given type.
+     * Subscriptions create their decoder once, so expensive lookups belong here.
+     * 
+     * @param <T> the type to decode to
+     * @param type the type to decode to
+     * @return the decoder
+     */
+    <T> Decoder<T> decoder(Type type);
+    
+    /**
+     * Deserializes message bodies to one type.
+     * 
+     * @param <T> the type to decode to
+     */
+    @FunctionalInterface
+    interface Decoder<T> {
+        
+        /**
+         * Deserializes the body of a message.
+         * 
+         * @param message the message
+         * @return the decoded object, which may be null
+         * @throws IOException if the body cannot be deserialized
+         */
+        T decode(StompMessage message) throws IOException;
+    }
+}
@@ -0,0 +1,204 @@
+package dev.pixelib.jstomp;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Serial message queue for a single subscription.
+ *
+ * Messages are handed to the message handler one at a time, in the order they
+ * were enqueued, by tasks running on a (possibly shared) executor. At most one
+ * drain task per queue is scheduled at any time, so different queues can run in
+ * parallel while each individual queue stays ordered.
+ *
+ * The queue is bounded by a capacity; what happens to messages arriving while
+ * it is full is decided by its {@link StompOverflowPolicy}. Every message that is
+ * dropped is reported to the drop handler.
+ */
+final class StompDispatchQueue implements Runnable {
+
+    /**
+     * Maximum number of messages handled per drain task, so a busy subscription
+     * cannot monopolize a pooled executor thread.
+     */
+    private static final int MAX_BATCH = 64;
+
+    private final Executor executor;
+    private final StompMessageHandler messageHandler;
+    private final Consumer<Throwable> errorHandler;
+    private final Consumer<StompMessage> dropHandler;
+    private final StompOverflowPolicy overflowPolicy;
+    private final BlockingQueue<StompMessage> queue;
+    private final AtomicBoolean scheduled;
+    private final AtomicLong queuedCount;
+    private final AtomicLong droppedCount;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new unbounded dispatch queue.
+     *
+     * @param executor the executor running the drain tasks
+     * @param messageHandler the handler receiving the messages
+     * @param errorHandler receives exceptions thrown by the message handler
+     */
+    StompDispatchQueue(Executor executor, StompMessageHandler messageHandler, Consumer<Throwable> errorHandler) {
+        this(executor, messageHandler, errorHandler, StompSubscriptionOptions.defaults());
+    }
+
+    /**
+     * Creates a new dispatch queue.
+     *
+     * @param executor the executor running the drain tasks
+     * @param messageHandler the handler receiving the messages
+     * @param errorHandler receives exceptions thrown by the message handler
+     * @param options the queue capacity and overflow policy
+     */
+    StompDispatchQueue(Executor executor, StompMessageHandler messageHandler, Consumer<Throwable> errorHandler,
+                       StompSubscriptionOptions options) {
+        this(executor, messageHandler, errorHandler, message -> { }, options);
+    }
+
+    /**
+     * Creates a new dispatch queue that reports the messages it drops.
+     *
+     * @param executor the executor running the drain tasks
+     * @param messageHandler the handler receiving the messages
+     * @param errorHandler receives exceptions thrown by the message handler
+     * @param dropHandler receives the messages dropped or refused because the queue was full
+     * @param options the queue capacity and overflow policy
+     */
+    StompDispatchQueue(Executor executor, StompMessageHandler messageHandler, Consumer<Throwable> errorHandler,
+                       Consumer<StompMessage> dropHandler, StompSubscriptionOptions options) {
+        this.executor = executor;
+        this.messageHandler = messageHandler;
+        this.errorHandler = errorHandler;
+        this.dropHandler = dropHandler;
+        this.overflowPolicy = options.getOverflowPolicy();
+        this.queue = new LinkedBlockingQueue<>(options.getQueueCapacity());
+        this.scheduled = new AtomicBoolean(false);
+        this.queuedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+    }
+
+    /**
+     * Enqueues a message for delivery, applying the overflow policy when the queue is full.
+     *
+     * @param message the message
+     * @return false if the queue overflowed under {@link StompOverflowPolicy#FAIL_SUBSCRIPTION}
+     *         and was closed, true otherwise
+     */
+    boolean enqueue(StompMessage message) {
+        if (closed) {
+            return true;
+        }
+
+        if (!queue.offer(message)) {
+            switch (overflowPolicy) {
+                case BLOCK_READER:
+                    try {
+                        queue.put(message);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        droppedCount.incrementAndGet();
+                        dropHandler.accept(message);
+                        return true;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    do {
+                        StompMessage oldest = queue.poll();
+                        if (oldest != null) {
+                            droppedCount.incrementAndGet();
+                            dropHandler.accept(oldest);
+                        }
+                    } while (!queue.offer(message));
+                    break;
+                case DROP_NEWEST:
+                    droppedCount.incrementAndGet();
+                    dropHandler.accept(message);
+                    return true;
+                case FAIL_SUBSCRIPTION:
+                default:
+                    droppedCount.incrementAndGet();
+                    close();
+                    dropHandler.accept(message);
+                    return false;
+            }
+        }
+
+        queuedCount.incrementAndGet();
+        schedule();
+        return true;
+    }
+
+    /**
+     * Gets the number of messages accepted into the queue so far.
+     */
+    long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * Gets the number of messages discarded because the queue was full.
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Gets the number of messages currently waiting for the handler.
+     */
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Discards all queued messages, keeping the queue open.
+     */
+    void clear() {
+        queue.clear();
+    }
+
+    /**
+     * Stops delivery and discards all queued messages.
+     */
+    void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            StompMessage message;
+            for (int i = 0; i < MAX_BATCH && !closed && (message = queue.poll()) != null; i++) {
+                try {
+                    messageHandler.onMessage(message);
+                } catch (Exception e) {
+                    errorHandler.accept(e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+
+        if (!closed && !queue.isEmpty()) {
+            schedule();
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package dev.pixelib.jstomp;
 
-import java.util.HashMap;
+import okio.Buffer;
+import okio.ByteString;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents a STOMP frame.
@@ -11,9 +18,19 @@ public class StompFrame {
     private static final String NULL_BYTE = "\0";
     private static final String LINE_FEED = "\n";
     
+    static final String CONTENT_LENGTH = "content-length";
+    static final String CONTENT_ENCODING = "content-encoding";
+    
     private final StompCommand command;
-    private final Map<String, String> headers;
+    private final StompHeaders headers;
+    private final StompFrameTemplate template;
     private String body;
+    private byte[] bodyBytes;
+    private int bodyOffset;
+    private int bodyLength;
+    private boolean textBytes;
+    private CompletableFuture<Void> receipt;
+    private volatile long writtenNanos;
     
     /**
      * Creates a new STOMP frame with the specified command.
@@ -21,8 +38,31 @@ public class StompFrame {
      * @param command the STOMP command
      */
     public StompFrame(StompCommand command) {
+        this(command, new StompHeaders(6));
+    }
+    
+    /**
+     * Creates a new frame holding the given headers.
+     * 
+     * @param command the STOMP command
+     * @param headers the headers, which the frame takes over
+     */
+    StompFrame(StompCommand command, StompHeaders headers) {
         this.command = command;
-        this.headers = new HashMap<>();
+        this.headers = headers;
+        this.template = null;
+        this.body = "";
+    }
+    
+    /**
+     * Creates a new frame that also carries the pre-encoded headers of a template.
+     * 
+     * @param template the template
+     */
+    StompFrame(StompFrameTemplate template) {
+        this.command = template.command();
+        this.headers = new StompHeaders(2);
+        this.template = template;
         this.body = "";
     }
     
@@ -42,7 +82,7 @@ public class StompFrame {
      * @param value the header value
      */
     public void addHeader(String name, String value) {
-        headers.put(name, value);
+        headers.set(name, value);
     }
     
     /**
@@ -52,16 +92,37 @@ public class StompFrame {
      * @return the header value, or null if not found
      */
     public String getHeader(String name) {
-        return headers.get(name);
+        String value = headers.get(name);
+        if (value == null && template != null) {
+            value = template.headers().get(name);
+        }
+        return value;
     }
     
     /**
      * Gets all headers.
      * 
-     * @return a map of all headers
+     * @return a read-only snapshot of all headers
      */
     public Map<String, String> getHeaders() {
-        return new HashMap<>(headers);
+        if (template == null) {
+            return headers.copy(0);
+        }
+        StompHeaders all = headers.copy(template.headers().size());
+        template.headers().forEach((name, value) -> {
+            if (!all.containsKey(name)) {
+                all.set(name, value);
+            }
+        });
+        return all;
+    }
+    
+    /**
+     * Hands the headers of a received frame over without copying them.
+     * The frame must not be used afterwards.
+     */
+    StompHeaders takeHeaders() {
+        return template == null ? headers : (StompHeaders) getHeaders();
     }
     
     /**
@@ -71,17 +132,164 @@ public class StompFrame {
      */
     public void setBody(String body) {
         this.body = body != null ? body : "";
+        this.bodyBytes = null;
+        this.textBytes = false;
+    }
+    
+    /**
+     * Sets a binary body for this frame.
+     * The array is not copied, so it should not be modified afterwards.
+     * 
+     * @param body the body content
+     */
+    public void setBody(byte[] body) {
+        if (body == null) {
+            setBody((String) null);
+        } else {
+            setBody(body, 0, body.length);
+        }
+    }
+    
+    void setBody(byte[] body, int offset, int length) {
+        this.body = null;
+        this.bodyBytes = body;
+        this.bodyOffset = offset;
+        this.bodyLength = length;
+        this.textBytes = false;
+    }
+    
+    /**
+     * Sets a text body that is kept as UTF-8 bytes until it is first read.
+     */
+    void setTextBody(byte[] body, int offset, int length) {
+        setBody(body, offset, length);
+        this.textBytes = true;
     }
     
     /**
      * Gets the body of this frame.
+     * A binary body is decoded as UTF-8.
      * 
      * @return the body content
      */
     public String getBody() {
+        if (body == null) {
+            body = new String(bodyBytes, bodyOffset, bodyLength, StandardCharsets.UTF_8);
+        }
         return body;
     }
     
+    /**
+     * Gets a copy of the body of this frame as bytes.
+     * A text body is encoded as UTF-8.
+     * 
+     * @return the body content
+     */
+    public byte[] getBodyBytes() {
+        if (bodyBytes == null) {
+            return body.getBytes(StandardCharsets.UTF_8);
+        }
+        return Arrays.copyOfRange(bodyBytes, bodyOffset, bodyOffset + bodyLength);
+    }
+    
+    /**
+     * Gets a read-only view of the body of this frame.
+     * For a binary body no copy is made.
+     * 
+     * @return the body content
+     */
+    public ByteBuffer getBodyBuffer() {
+        if (bodyBytes == null) {
+            return ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(bodyBytes, bodyOffset, bodyLength).slice().asReadOnlyBuffer();
+    }
+    
+    /**
+     * Checks whether the body of this frame was supplied or received as bytes.
+     * 
+     * @return true if the body is binary, false if it is text
+     */
+    public boolean hasBinaryBody() {
+        return bodyBytes != null && !textBytes;
+    }
+    
+    /**
+     * Requests a receipt for this frame. The future is only tracked once the frame is written,
+     * so a frame waiting in the send buffer is not affected by the receipt timeout or a lost connection.
+     * 
+     * @param receiptId the receipt id
+     * @param future the future completed when the receipt arrives
+     */
+    void requestReceipt(String receiptId, CompletableFuture<Void> future) {
+        headers.set("receipt", receiptId);
+        this.receipt = future;
+    }
+    
+    /**
+     * Gets the future completed by the receipt for this frame.
+     * 
+     * @return the future, or null if no receipt was requested
+     */
+    CompletableFuture<Void> receipt() {
+        return receipt;
+    }
+    
+    /**
+     * Records that this frame is being handed to the socket.
+     */
+    void markWritten() {
+        writtenNanos = System.nanoTime();
+    }
+    
+    /**
+     * Gets the {@link System#nanoTime()} at which this frame was handed to the socket.
+     * 
+     * @return the write time, or 0 if the frame was not written yet
+     */
+    long writtenNanos() {
+        return writtenNanos;
+    }
+    
+    /**
+     * Compresses the body if it is at least the given size and compressing makes it smaller.
+     * The compressed body is binary and marked with a content-encoding header.
+     * Bodies already carrying a content-encoding are left alone.
+     * 
+     * @return true if the body was compressed
+     */
+    boolean compressBody(StompCompression compression, int minLength) {
+        // A UTF-8 character takes at most three bytes, so short strings need not be encoded
+        if (getHeader(CONTENT_ENCODING) != null || (bodyBytes == null && body.length() * 3L < minLength)) {
+            return false;
+        }
+        byte[] input = bodyBytes != null ? bodyBytes : body.getBytes(StandardCharsets.UTF_8);
+        int offset = bodyBytes != null ? bodyOffset : 0;
+        int length = bodyBytes != null ? bodyLength : input.length;
+        if (length < minLength) {
+            return false;
+        }
+        byte[] compressed = compression.compress(input, offset, length);
+        if (compressed == null) {
+            return false;
+        }
+        headers.set(CONTENT_ENCODING, compression.getContentEncoding());
+        setBody(compressed);
+        return true;
+    }
+    
+    byte[] bodyArray() {
+        return bodyBytes;
+    }
+    
+    int bodyOffset() {
+        return bodyOffset;
+    }
+    
+    int bodyLength() {
+        return bodyLength;
+    }
+    
     /**
      * Converts this frame to its string representation.
      * 
@@ -89,24 +297,69 @@ public class StompFrame {
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
+        return encode(false);
+    }
+    
+    /**
+     * Encodes this frame as text.
+     * The builder is sized up front and header values without special characters
+     * are appended as-is, so encoding a typical frame allocates only the builder and the result.
+     * 
+     * @param includeContentLength whether to write a content-length header for the body
+     * @return the encoded frame
+     */
+    String encode(boolean includeContentLength) {
+        if (textBytes) {
+            // Decode the UTF-8 body once, as part of the whole frame
+            Buffer buffer = new Buffer();
+            writeTo(buffer, includeContentLength);
+            return buffer.readUtf8();
+        }
+        String bodyString = getBody();
+        
+        int capacity = command.name().length() + bodyString.length() + 32
+                + (template != null ? template.text().length() : 0);
+        for (int i = 0; i < headers.size(); i++) {
+            String value = headers.value(i);
+            capacity += headers.name(i).length() + (value != null ? value.length() : 0) + 2;
+        }
+        StringBuilder sb = new StringBuilder(capacity);
         
         // Command
         sb.append(command.name()).append(LINE_FEED);
         
         // Headers
-        for (Map.Entry<String, String> header : headers.entrySet()) {
-            sb.append(escapeHeaderValue(header.getKey()))
-              .append(":")
-              .append(escapeHeaderValue(header.getValue()))
-              .append(LINE_FEED);
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            if (includeContentLength && CONTENT_LENGTH.equals(name)) {
+                continue;
+            }
+            appendEscaped(sb, name);
+            sb.append(':');
+            appendEscaped(sb, headers.value(i));
+            sb.append(LINE_FEED);
+        }
+        if (template != null && overridesTemplate()) {
+            template.headers().forEach((name, value) -> {
+                if (!headers.containsKey(name)) {
+                    appendEscaped(sb, name);
+                    sb.append(':');
+                    appendEscaped(sb, value);
+                    sb.append(LINE_FEED);
+                }
+            });
+        } else if (template != null) {
+            sb.append(template.text());
+        }
+        if (includeContentLength) {
+            sb.append(CONTENT_LENGTH).append(':').append(utf8Length(bodyString)).append(LINE_FEED);
         }
         
         // Empty line to separate headers from body
         sb.append(LINE_FEED);
         
         // Body
-        sb.append(body);
+        sb.append(bodyString);
         
         // Null terminator
         sb.append(NULL_BYTE);
@@ -114,6 +367,92 @@ public class StompFrame {
         return sb.toString();
     }
     
+    /**
+     * Converts this frame to its binary representation.
+     * A binary body is written as-is, everything else is encoded as UTF-8.
+     * Frames with a binary body always carry a content-length header,
+     * as the body may contain NUL bytes.
+     * 
+     * @return the encoded frame
+     */
+    public byte[] toBytes() {
+        return toByteString(false).toByteArray();
+    }
+    
+    /**
+     * Encodes this frame as bytes.
+     * 
+     * @param includeContentLength whether to write a content-length header for a text body
+     * @return the encoded frame
+     */
+    ByteString toByteString(boolean includeContentLength) {
+        Buffer buffer = new Buffer();
+        writeTo(buffer, includeContentLength);
+        return buffer.readByteString();
+    }
+    
+    /**
+     * Encodes this frame as bytes directly into the given buffer.
+     * Text is encoded to UTF-8 exactly once, straight into the buffer's segments,
+     * which okio recycles through its segment pool; writing into a reused buffer
+     * therefore allocates next to nothing.
+     * 
+     * @param sink the buffer to write to
+     * @param includeContentLength whether to write a content-length header for a text body
+     */
+    void writeTo(Buffer sink, boolean includeContentLength) {
+        boolean contentLength = includeContentLength || hasBinaryBody();
+        
+        sink.writeUtf8(command.name()).writeByte('\n');
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            if (contentLength && CONTENT_LENGTH.equals(name)) {
+                continue;
+            }
+            writeEscaped(sink, name);
+            sink.writeByte(':');
+            writeEscaped(sink, headers.value(i));
+            sink.writeByte('\n');
+        }
+        if (template != null && overridesTemplate()) {
+            template.headers().forEach((name, value) -> {
+                if (!headers.containsKey(name)) {
+                    writeEscaped(sink, name);
+                    sink.writeByte(':');
+                    writeEscaped(sink, value);
+                    sink.writeByte('\n');
+                }
+            });
+        } else if (template != null) {
+            sink.write(template.bytes());
+        }
+        if (contentLength) {
+            int length = bodyBytes != null ? bodyLength : utf8Length(body);
+            sink.writeUtf8(CONTENT_LENGTH).writeByte(':').writeDecimalLong(length).writeByte('\n');
+        }
+        sink.writeByte('\n');
+        
+        if (bodyBytes != null) {
+            sink.write(bodyBytes, bodyOffset, bodyLength);
+        } else {
+            sink.writeUtf8(body);
+        }
+        sink.writeByte(0);
+    }
+    
+    /**
+     * Checks whether this frame sets a header its template also has. The template's
+     * pre-encoded block then cannot be written as-is, as it would repeat the header.
+     */
+    private boolean overridesTemplate() {
+        for (int i = 0; i < headers.size(); i++) {
+            if (template.headers().containsKey(headers.name(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Parses a STOMP frame from its string representation.
      * 
@@ -126,76 +465,161 @@ public class StompFrame {
             throw new IllegalArgumentException("Frame string cannot be null or empty");
         }
         
-        // Remove null terminator if present
-        if (frameString.endsWith(NULL_BYTE)) {
-            frameString = frameString.substring(0, frameString.length() - 1);
+        return StompFrameDecoder.decode(frameString);
+    }
+    
+    /**
+     * Parses a STOMP frame from its binary representation.
+     * The body of the returned frame refers to the given array without copying it.
+     * 
+     * @param frameBytes the binary representation
+     * @return the parsed frame
+     * @throws IllegalArgumentException if the frame is invalid
+     */
+    public static StompFrame parse(byte[] frameBytes) {
+        if (frameBytes == null || frameBytes.length == 0) {
+            throw new IllegalArgumentException("Frame bytes cannot be null or empty");
         }
         
-        String[] lines = frameString.split(LINE_FEED, -1);
-        if (lines.length == 0) {
-            throw new IllegalArgumentException("Invalid frame: no command found");
+        return StompFrameDecoder.decode(frameBytes, 0, frameBytes.length);
+    }
+    
+    /**
+     * Parses every STOMP frame in a string holding several NUL-terminated frames,
+     * as received when frames are coalesced into one transport message.
+     * 
+     * @param framesString the string holding the frames
+     * @return the parsed frames, in order, empty if the string only holds heart-beats
+     * @throws IllegalArgumentException if a frame is invalid
+     */
+    public static List<StompFrame> parseAll(String framesString) {
+        if (framesString == null) {
+            throw new IllegalArgumentException("Frame string cannot be null");
         }
         
-        // Parse command
-        String commandString = lines[0].trim();
-        StompCommand command;
-        try {
-            command = StompCommand.valueOf(commandString);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Unknown STOMP command: " + commandString);
+        return StompFrameDecoder.decodeAll(framesString);
+    }
+    
+    /**
+     * Parses every STOMP frame in a byte array holding several NUL-terminated frames.
+     * The bodies of the returned frames refer to the given array without copying it.
+     * 
+     * @param framesBytes the bytes holding the frames
+     * @return the parsed frames, in order, empty if the array only holds heart-beats
+     * @throws IllegalArgumentException if a frame is invalid
+     */
+    public static List<StompFrame> parseAll(byte[] framesBytes) {
+        if (framesBytes == null) {
+            throw new IllegalArgumentException("Frame bytes cannot be null");
         }
         
-        StompFrame frame = new StompFrame(command);
-        
-        // Parse headers
-        int bodyStartIndex = 1;
-        for (int i = 1; i < lines.length; i++) {
-            String line = lines[i];
-            if (line.isEmpty()) {
-                bodyStartIndex = i + 1;
-                break;
-            }
-            
-            int colonIndex = line.indexOf(':');
-            if (colonIndex > 0) {
-                String name = unescapeHeaderValue(line.substring(0, colonIndex));
-                String value = unescapeHeaderValue(line.substring(colonIndex + 1));
-                frame.addHeader(name, value);
+        return StompFrameDecoder.decodeAll(framesBytes, 0, framesBytes.length);
+    }
+    
+    /**
+     * Computes the number of bytes the given text occupies when encoded as UTF-8.
+     */
+    static int utf8Length(CharSequence text) {
+        return utf8Length(text, 0, text.length());
+    }
+    
+    /**
+     * Computes the number of bytes a region of the given text occupies when encoded as UTF-8.
+     */
+    static int utf8Length(CharSequence text, int start, int end) {
+        int bytes = end - start;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else {
+                    bytes += 2;
+                }
             }
         }
-        
-        // Parse body
-        if (bodyStartIndex < lines.length) {
-            StringBuilder bodyBuilder = new StringBuilder();
-            for (int i = bodyStartIndex; i < lines.length; i++) {
-                if (i > bodyStartIndex) {
-                    bodyBuilder.append(LINE_FEED);
-                }
-                bodyBuilder.append(lines[i]);
+        return bytes;
+    }
+    
+    /**
+     * Finds the first character of a header name or value that must be escaped.
+     * 
+     * @return the index of the character, or -1 if the value can be written as-is
+     */
+    static int indexOfEscape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '\n' || c == '\r' || c == ':') {
+                return i;
             }
-            frame.setBody(bodyBuilder.toString());
         }
-        
-        return frame;
+        return -1;
     }
     
-    private static String escapeHeaderValue(String value) {
+    private static String escapeSequence(char c) {
+        switch (c) {
+            case '\\':
+                return "\\\\";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case ':':
+                return "\\c";
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Appends a header name or value with the STOMP 1.2 escape sequences applied.
+     */
+    static void appendEscaped(StringBuilder sb, String value) {
         if (value == null) {
-            return "";
+            return;
+        }
+        int escape = indexOfEscape(value);
+        if (escape < 0) {
+            sb.append(value);
+            return;
+        }
+        
+        int start = 0;
+        for (int i = escape; i < value.length(); i++) {
+            String sequence = escapeSequence(value.charAt(i));
+            if (sequence != null) {
+                sb.append(value, start, i).append(sequence);
+                start = i + 1;
+            }
         }
-        return value.replace("\\", "\\\\")
-                   .replace("\n", "\\n")
-                   .replace(":", "\\c")
-                   .replace("\r", "\\r");
+        sb.append(value, start, value.length());
     }
     
-    private static String unescapeHeaderValue(String value) {
+    /**
+     * Writes a header name or value as UTF-8 with the STOMP 1.2 escape sequences applied.
+     */
+    static void writeEscaped(Buffer sink, String value) {
         if (value == null) {
-            return "";
+            return;
+        }
+        int escape = indexOfEscape(value);
+        if (escape < 0) {
+            sink.writeUtf8(value);
+            return;
+        }
+        
+        int start = 0;
+        for (int i = escape; i < value.length(); i++) {
+            String sequence = escapeSequence(value.charAt(i));
+            if (sequence != null) {
+                sink.writeUtf8(value, start, i).writeUtf8(sequence);
+                start = i + 1;
+            }
         }
-        return value.replace("\\r", "\r")
-                   .replace("\\c", ":")
-                   .replace("\\n", "\n")
-                   .replace("\\\\", "\\");
+        sink.writeUtf8(value, start, value.length());
     }
 }
@@ -0,0 +1,671 @@
+package dev.pixelib.jstomp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass STOMP frame decoder.
+ *
+ * The decoder walks the input once with a cursor: header lines are sliced
+ * directly out of the input, header names and values are only unescaped when
+ * they actually contain a backslash, and the body is taken as one substring
+ * instead of being split into lines and joined back together. Binary input
+ * is decoded the same way, with the body referring to the input array.
+ *
+ * When a frame declares a {@code content-length}, the body is sliced by that
+ * length instead of being scanned for the NUL terminator, so bodies may contain
+ * NUL. For binary input this is O(1); for text input the octet count is mapped
+ * onto characters. A declared length that does not match the frame is rejected.
+ *
+ * Several NUL-terminated frames may follow each other in one input; they are
+ * returned one by one by {@code decodeAll}.
+ *
+ * Header names defined by the specification are resolved to shared constants
+ * through {@link StompHeaderNames}. When decoding with a
+ * {@link StompHeaderValueCache}, values of headers that tend to repeat, such as
+ * destinations, are taken from the cache as well.
+ */
+final class StompFrameDecoder {
+
+    private static final StompCommand[] COMMANDS = StompCommand.values();
+
+    private StompFrameDecoder() {
+    }
+
+    /**
+     * Decodes a single STOMP frame.
+     *
+     * @param input the frame text, optionally terminated by a NUL character
+     * @return the decoded frame
+     * @throws IllegalArgumentException if the frame is invalid
+     */
+    static StompFrame decode(String input) {
+        return decode(input, 0, input.length(), null);
+    }
+
+    /**
+     * Decodes a single STOMP frame from a region of text, reusing cached header values.
+     *
+     * @param input the text holding the frame
+     * @param offset the index of the first character of the frame
+     * @param end the index after the frame, optionally including a NUL terminator
+     * @param valueCache the cache for repeated header values, or null to decode every value
+     * @return the decoded frame
+     * @throws IllegalArgumentException if the frame is invalid
+     */
+    static StompFrame decode(String input, int offset, int end, StompHeaderValueCache valueCache) {
+        List<StompFrame> frames = new ArrayList<>(1);
+        decodeFrame(input, skipEols(input, offset, end), end, valueCache, frames);
+        return frames.get(0);
+    }
+
+    /**
+     * Decodes every STOMP frame in the input.
+     * Frames are NUL-terminated; EOLs between frames (heart-beats) are skipped.
+     *
+     * @param input text holding zero or more frames
+     * @return the decoded frames, in order
+     * @throws IllegalArgumentException if a frame is invalid
+     */
+    static List<StompFrame> decodeAll(String input) {
+        List<StompFrame> frames = new ArrayList<>(1);
+        int length = input.length();
+        int pos = skipEols(input, 0, length);
+        while (pos < length) {
+            pos = skipEols(input, decodeFrame(input, pos, length, null, frames), length);
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes the frame starting at {@code pos} and adds it to {@code frames}.
+     *
+     * @return the index after the NUL terminating the frame, or {@code length} if the frame is not terminated
+     */
+    private static int decodeFrame(String input, int pos, int length, StompHeaderValueCache valueCache,
+            List<StompFrame> frames) {
+        // Command line
+        int lineEnd = findLineEnd(input, pos, length);
+        StompHeaders headers = new StompHeaders(6);
+        StompFrame frame = new StompFrame(parseCommand(input, pos, lineEnd), headers);
+        frames.add(frame);
+        if (lineEnd == length || input.charAt(lineEnd) == '\0') {
+            return next(lineEnd, length);
+        }
+        pos = lineEnd + 1;
+
+        // Header lines, up to the empty line that separates them from the body
+        while (pos < length) {
+            lineEnd = findLineEnd(input, pos, length);
+            int contentEnd = lineEnd > pos && input.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+
+            if (contentEnd == pos) {
+                if (lineEnd == length || input.charAt(lineEnd) == '\0') {
+                    return next(lineEnd, length);
+                }
+                pos = lineEnd + 1;
+                int contentLength = contentLength(frame);
+                int bodyEnd;
+                if (contentLength >= 0) {
+                    bodyEnd = charIndexOfOctet(input, pos, length, contentLength);
+                    if (bodyEnd < length && input.charAt(bodyEnd) != '\0') {
+                        throw contentLengthMismatch(contentLength);
+                    }
+                } else {
+                    bodyEnd = input.indexOf('\0', pos);
+                    if (bodyEnd < 0) {
+                        bodyEnd = length;
+                    }
+                }
+                frame.setBody(input.substring(pos, bodyEnd));
+                return next(bodyEnd, length);
+            }
+
+            parseHeader(headers, input, pos, contentEnd, valueCache);
+
+            if (lineEnd == length || input.charAt(lineEnd) == '\0') {
+                return next(lineEnd, length);
+            }
+            pos = lineEnd + 1;
+        }
+
+        return length;
+    }
+
+    /**
+     * Decodes a single STOMP frame from its binary representation.
+     * The body of the returned frame refers to {@code input} without copying it.
+     *
+     * @param input the buffer holding the frame
+     * @param offset the index of the first byte of the frame
+     * @param length the number of bytes available, optionally including a NUL terminator
+     * @return the decoded frame
+     * @throws IllegalArgumentException if the frame is invalid
+     */
+    static StompFrame decode(byte[] input, int offset, int length) {
+        return decode(input, offset, length, false);
+    }
+
+    /**
+     * Decodes a single STOMP frame from its binary representation.
+     *
+     * @param input the buffer holding the frame
+     * @param offset the index of the first byte of the frame
+     * @param length the number of bytes available, optionally including a NUL terminator
+     * @param textBody whether to decode the body as UTF-8 text instead of referring to {@code input}
+     * @return the decoded frame
+     * @throws IllegalArgumentException if the frame is invalid
+     */
+    static StompFrame decode(byte[] input, int offset, int length, boolean textBody) {
+        return decode(input, offset, length, textBody, null);
+    }
+
+    /**
+     * Decodes a single STOMP frame from its binary representation, reusing cached header values.
+     *
+     * @param input the buffer holding the frame
+     * @param offset the index of the first byte of the frame
+     * @param length the number of bytes available, optionally including a NUL terminator
+     * @param textBody whether to decode the body as UTF-8 text instead of referring to {@code input}
+     * @param valueCache the cache for repeated header values, or null to decode every value
+     * @return the decoded frame
+     * @throws IllegalArgumentException if the frame is invalid
+     */
+    static StompFrame decode(byte[] input, int offset, int length, boolean textBody, StompHeaderValueCache valueCache) {
+        List<StompFrame> frames = new ArrayList<>(1);
+        int limit = offset + length;
+        decodeFrame(input, skipEols(input, offset, limit), limit, textBody, valueCache, frames);
+        return frames.get(0);
+    }
+
+    /**
+     * Decodes every STOMP frame in the given binary input.
+     * Frames are NUL-terminated; EOLs between frames (heart-beats) are skipped.
+     * The bodies of the returned frames refer to {@code input} without copying it.
+     *
+     * @param input the buffer holding the frames
+     * @param offset the index of the first byte
+     * @param length the number of bytes available
+     * @return the decoded frames, in order
+     * @throws IllegalArgumentException if a frame is invalid
+     */
+    static List<StompFrame> decodeAll(byte[] input, int offset, int length) {
+        List<StompFrame> frames = new ArrayList<>(1);
+        int limit = offset + length;
+        int pos = skipEols(input, offset, limit);
+        while (pos < limit) {
+            pos = skipEols(input, decodeFrame(input, pos, limit, false, null, frames), limit);
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes a single STOMP frame, deferring the work for MESSAGE frames.
+     *
+     * Of a MESSAGE frame only the {@code subscription} header, needed to route
+     * the message, and the {@code content-length} header, needed to find the
+     * body, are decoded. The other headers are decoded from {@code input} when
+     * they are first looked up, and the body when it is first read as text.
+     * Other frames are decoded eagerly.
+     *
+     * The frame refers to {@code input}, which must not be modified afterwards.
+     *
+     * @param input the buffer holding the frame
+     * @param offset the index of the first byte of the frame
+     * @param length the number of bytes available, optionally including a NUL terminator
+     * @param textBody whether the body is text rather than binary
+     * @param valueCache the cache for repeated header values, or null to decode every value
+     * @return the decoded frame
+     * @throws IllegalArgumentException if the frame is invalid
+     */
+    static StompFrame decodeLazy(byte[] input, int offset, int length, boolean textBody,
+            StompHeaderValueCache valueCache) {
+        int limit = offset + length;
+        int pos = skipEols(input, offset, limit);
+        int lineEnd = findLineEnd(input, pos, limit);
+        if (parseCommand(input, pos, lineEnd) != StompCommand.MESSAGE) {
+            return decode(input, offset, length, textBody, valueCache);
+        }
+
+        StompHeaders headers = new StompHeaders(2);
+        int headersStart = lineEnd + 1;
+        pos = headersStart;
+        while (true) {
+            if (lineEnd == limit || input[lineEnd] == 0) {
+                // Frames without a body are not worth deferring
+                return decode(input, offset, length, textBody, valueCache);
+            }
+            lineEnd = findLineEnd(input, pos, limit);
+            int contentEnd = lineEnd > pos && input[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd == pos) {
+                break;
+            }
+
+            int colon = indexOf(input, ':', pos, contentEnd);
+            StompHeaderNames.Entry known = colon > pos ? StompHeaderNames.lookup(input, pos, colon) : null;
+            if (known != null && ("subscription".equals(known.name())
+                    || StompFrame.CONTENT_LENGTH.equals(known.name()))) {
+                headers.add(known.name(), decodeValue(input, colon + 1, contentEnd,
+                        known.repeatedValues() ? valueCache : null));
+            }
+            pos = lineEnd + 1;
+        }
+        if (lineEnd == limit || input[lineEnd] == 0) {
+            return decode(input, offset, length, textBody, valueCache);
+        }
+
+        int bodyStart = lineEnd + 1;
+        int contentLength = contentLength(headers.get(StompFrame.CONTENT_LENGTH));
+        headers.defer(input, headersStart, pos);
+        int bodyEnd;
+        if (contentLength >= 0) {
+            bodyEnd = bodyStart + contentLength;
+            if (bodyEnd > limit || (bodyEnd < limit && input[bodyEnd] != 0)) {
+                throw contentLengthMismatch(contentLength);
+            }
+        } else {
+            bodyEnd = indexOfNul(input, bodyStart, limit);
+        }
+
+        StompFrame frame = new StompFrame(StompCommand.MESSAGE, headers);
+        if (textBody) {
+            frame.setTextBody(input, bodyStart, bodyEnd - bodyStart);
+        } else {
+            frame.setBody(input, bodyStart, bodyEnd - bodyStart);
+        }
+        return frame;
+    }
+
+    /**
+     * Decodes every header line in a block of header lines.
+     *
+     * @param input the buffer holding the header lines
+     * @param start the index of the first header line
+     * @param end the index after the last header line
+     * @param headers the headers to add the decoded headers to
+     */
+    static void decodeHeaders(byte[] input, int start, int end, StompHeaders headers) {
+        int pos = start;
+        while (pos < end) {
+            int lineEnd = findLineEnd(input, pos, end);
+            int contentEnd = lineEnd > pos && input[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            parseHeader(headers, input, pos, contentEnd, null);
+            pos = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Finds and decodes a single header in a block of header lines.
+     * Like the eager decoder, the first occurrence of a repeated header is used.
+     *
+     * @param input the buffer holding the header lines
+     * @param start the index of the first header line
+     * @param end the index after the last header line
+     * @param name the name of the header
+     * @return the decoded value, or null if the header is not present
+     */
+    static String findHeader(byte[] input, int start, int end, String name) {
+        int pos = start;
+        while (pos < end) {
+            int lineEnd = findLineEnd(input, pos, end);
+            int contentEnd = lineEnd > pos && input[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            int colon = indexOf(input, ':', pos, contentEnd);
+            if (colon > pos && nameMatches(input, pos, colon, name)) {
+                return decodeValue(input, colon + 1, contentEnd, null);
+            }
+            pos = lineEnd + 1;
+        }
+        return null;
+    }
+
+    private static boolean nameMatches(byte[] input, int start, int end, String name) {
+        int length = end - start;
+        for (int i = 0; i < length; i++) {
+            byte b = input[start + i];
+            if (b < 0 || b == '\\') {
+                // The rest of the name is escaped or not ASCII; the prefix before it matched literally
+                String decoded = new String(input, start, length, StandardCharsets.UTF_8);
+                return name.equals(decoded.indexOf('\\') >= 0 ? unescape(decoded, 0, decoded.length()) : decoded);
+            }
+            if (i == name.length() || b != name.charAt(i)) {
+                return false;
+            }
+        }
+        return length == name.length();
+    }
+
+    private static int indexOf(byte[] input, char c, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (input[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String decodeValue(byte[] input, int start, int end, StompHeaderValueCache valueCache) {
+        if (indexOf(input, '\\', start, end) >= 0) {
+            String value = new String(input, start, end - start, StandardCharsets.UTF_8);
+            return unescape(value, 0, value.length());
+        }
+        return valueCache != null ? valueCache.get(input, start, end)
+                : new String(input, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static int decodeFrame(byte[] input, int pos, int limit, boolean textBody,
+            StompHeaderValueCache valueCache, List<StompFrame> frames) {
+        // Command line
+        int lineEnd = findLineEnd(input, pos, limit);
+        StompHeaders headers = new StompHeaders(6);
+        StompFrame frame = new StompFrame(parseCommand(input, pos, lineEnd), headers);
+        frames.add(frame);
+        if (lineEnd == limit || input[lineEnd] == 0) {
+            return next(lineEnd, limit);
+        }
+        pos = lineEnd + 1;
+
+        // Header lines, up to the empty line that separates them from the body
+        while (pos < limit) {
+            lineEnd = findLineEnd(input, pos, limit);
+            int contentEnd = lineEnd > pos && input[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+
+            if (contentEnd == pos) {
+                if (lineEnd == limit || input[lineEnd] == 0) {
+                    return next(lineEnd, limit);
+                }
+                pos = lineEnd + 1;
+                int contentLength = contentLength(frame);
+                int bodyEnd;
+                if (contentLength >= 0) {
+                    bodyEnd = pos + contentLength;
+                    if (bodyEnd > limit || (bodyEnd < limit && input[bodyEnd] != 0)) {
+                        throw contentLengthMismatch(contentLength);
+                    }
+                } else {
+                    bodyEnd = indexOfNul(input, pos, limit);
+                }
+                if (textBody) {
+                    frame.setBody(new String(input, pos, bodyEnd - pos, StandardCharsets.UTF_8));
+                } else {
+                    frame.setBody(input, pos, bodyEnd - pos);
+                }
+                return next(bodyEnd, limit);
+            }
+
+            parseHeader(headers, input, pos, contentEnd, valueCache);
+
+            if (lineEnd == limit || input[lineEnd] == 0) {
+                return next(lineEnd, limit);
+            }
+            pos = lineEnd + 1;
+        }
+
+        return limit;
+    }
+
+    /**
+     * Gets the index following the NUL terminator at {@code end}, or {@code limit} if the input ended there.
+     */
+    private static int next(int end, int limit) {
+        return end < limit ? end + 1 : limit;
+    }
+
+    /**
+     * Skips EOLs, which are sent as heart-beats before and between frames.
+     */
+    static int skipEols(String input, int pos, int limit) {
+        while (pos < limit && (input.charAt(pos) == '\n' || input.charAt(pos) == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    static int skipEols(byte[] input, int pos, int limit) {
+        while (pos < limit && (input[pos] == '\n' || input[pos] == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Finds the end of the line starting at {@code from}: the index of the next
+     * LF or NUL character, or {@code limit} when neither occurs.
+     */
+    private static int findLineEnd(String input, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            char c = input.charAt(i);
+            if (c == '\n' || c == '\0') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static int findLineEnd(byte[] input, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            byte b = input[i];
+            if (b == '\n' || b == 0) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static int indexOfNul(byte[] input, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (input[i] == 0) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static StompCommand parseCommand(String input, int start, int end) {
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int length = end - start;
+        for (StompCommand command : COMMANDS) {
+            String name = command.name();
+            if (name.length() == length && input.regionMatches(start, name, 0, length)) {
+                return command;
+            }
+        }
+        throw new IllegalArgumentException("Unknown STOMP command: " + input.substring(start, end));
+    }
+
+    private static StompCommand parseCommand(byte[] input, int start, int end) {
+        while (start < end && (input[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (input[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+
+        int length = end - start;
+        for (StompCommand command : COMMANDS) {
+            String name = command.name();
+            if (name.length() == length && regionMatches(input, start, name)) {
+                return command;
+            }
+        }
+        throw new IllegalArgumentException("Unknown STOMP command: "
+                + new String(input, start, length, StandardCharsets.UTF_8));
+    }
+
+    private static boolean regionMatches(byte[] input, int start, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (input[start + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void parseHeader(StompHeaders headers, String input, int start, int end,
+            StompHeaderValueCache valueCache) {
+        int colon = -1;
+        boolean nameEscaped = false;
+        boolean valueEscaped = false;
+
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == ':' && colon < 0) {
+                colon = i;
+            } else if (c == '\\') {
+                if (colon < 0) {
+                    nameEscaped = true;
+                } else {
+                    valueEscaped = true;
+                }
+            }
+        }
+
+        // Lines without a header name are ignored
+        if (colon <= start) {
+            return;
+        }
+
+        StompHeaderNames.Entry known = nameEscaped ? null : StompHeaderNames.lookup(input, start, colon);
+        String name = nameEscaped ? unescape(input, start, colon)
+                : known != null ? known.name() : input.substring(start, colon);
+        String value;
+        if (valueEscaped) {
+            value = unescape(input, colon + 1, end);
+        } else if (known != null && known.repeatedValues() && valueCache != null) {
+            value = valueCache.get(input, colon + 1, end);
+        } else {
+            value = input.substring(colon + 1, end);
+        }
+        headers.add(name, value);
+    }
+
+    private static void parseHeader(StompHeaders headers, byte[] input, int start, int end,
+            StompHeaderValueCache valueCache) {
+        int colon = -1;
+        boolean nameEscaped = false;
+        boolean valueEscaped = false;
+
+        for (int i = start; i < end; i++) {
+            byte b = input[i];
+            if (b == ':' && colon < 0) {
+                colon = i;
+            } else if (b == '\\') {
+                if (colon < 0) {
+                    nameEscaped = true;
+                } else {
+                    valueEscaped = true;
+                }
+            }
+        }
+
+        // Lines without a header name are ignored
+        if (colon <= start) {
+            return;
+        }
+
+        StompHeaderNames.Entry known = nameEscaped ? null : StompHeaderNames.lookup(input, start, colon);
+        String name = known != null ? known.name() : new String(input, start, colon - start, StandardCharsets.UTF_8);
+        String value;
+        if (!valueEscaped && known != null && known.repeatedValues() && valueCache != null) {
+            value = valueCache.get(input, colon + 1, end);
+        } else {
+            value = new String(input, colon + 1, end - colon - 1, StandardCharsets.UTF_8);
+        }
+
+        // A backslash byte never occurs inside a multi-byte UTF-8 sequence,
+        // so escapes can be resolved after decoding
+        headers.add(nameEscaped ? unescape(name, 0, name.length()) : name,
+                valueEscaped ? unescape(value, 0, value.length()) : value);
+    }
+
+    /**
+     * Gets the declared content-length of the frame, or -1 if none was declared.
+     */
+    private static int contentLength(StompFrame frame) {
+        return contentLength(frame.getHeader(StompFrame.CONTENT_LENGTH));
+    }
+
+    private static int contentLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            int length = Integer.parseInt(value.trim());
+            if (length < 0) {
+                throw new IllegalArgumentException("Invalid content-length: " + value);
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid content-length: " + value);
+        }
+    }
+
+    /**
+     * Finds the index of the character that starts after {@code octets} UTF-8 bytes.
+     */
+    private static int charIndexOfOctet(String input, int from, int limit, int octets) {
+        int i = from;
+        int count = 0;
+        while (count < octets && i < limit) {
+            char c = input.charAt(i++);
+            if (c < 0x80) {
+                count++;
+            } else if (c < 0x800) {
+                count += 2;
+            } else if (Character.isHighSurrogate(c) && i < limit && Character.isLowSurrogate(input.charAt(i))) {
+                count += 4;
+                i++;
+            } else {
+                count += 3;
+            }
+        }
+        if (count != octets) {
+            throw contentLengthMismatch(octets);
+        }
+        return i;
+    }
+
+    private static IllegalArgumentException contentLengthMismatch(int contentLength) {
+        return new IllegalArgumentException("Frame body does not match content-length: " + contentLength);
+    }
+
+    /**
+     * Decodes the STOMP 1.2 header escape sequences in the given region.
+     * Unknown escape sequences are kept as-is.
+     */
+    static String unescape(CharSequence input, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c != '\\' || i + 1 == end) {
+                sb.append(c);
+                continue;
+            }
+
+            char next = input.charAt(++i);
+            switch (next) {
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'c':
+                    sb.append(':');
+                    break;
+                case '\\':
+                    sb.append('\\');
+                    break;
+                default:
+                    sb.append(c).append(next);
+            }
+        }
+        return sb.toString();
+    }
+}
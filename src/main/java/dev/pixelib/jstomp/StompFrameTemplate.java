@@ -0,0 +1,69 @@
+package dev.pixelib.jstomp;
+
+import okio.ByteString;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Headers shared by many frames, escaped and encoded once.
+ * 
+ * Frames created from a template write the pre-encoded header block after their
+ * own headers instead of escaping and encoding the shared headers again. A frame's
+ * own headers take priority over the template's; a frame that overrides a template
+ * header writes the remaining template headers one by one, so no header is repeated.
+ */
+final class StompFrameTemplate {
+    
+    private final StompCommand command;
+    private final Map<String, String> headers;
+    private final String text;
+    private final ByteString bytes;
+    
+    /**
+     * Creates a new template.
+     * 
+     * @param command the command of the frames
+     * @param headers the shared headers, in the order they are written
+     */
+    StompFrameTemplate(StompCommand command, Map<String, String> headers) {
+        if (headers.containsKey(StompFrame.CONTENT_LENGTH)) {
+            throw new IllegalArgumentException("Template headers cannot contain a content-length");
+        }
+        this.command = command;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        
+        StringBuilder sb = new StringBuilder();
+        headers.forEach((name, value) -> {
+            StompFrame.appendEscaped(sb, name);
+            sb.append(':');
+            StompFrame.appendEscaped(sb, value);
+            sb.append('\n');
+        });
+        this.text = sb.toString();
+        this.bytes = ByteString.encodeUtf8(text);
+    }
+    
+    StompCommand command() {
+        return command;
+    }
+    
+    Map<String, String> headers() {
+        return headers;
+    }
+    
+    /**
+     * Gets the encoded header lines, each terminated by a line feed.
+     */
+    String text() {
+        return text;
+    }
+    
+    /**
+     * Gets the encoded header lines as UTF-8.
+     */
+    ByteString bytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,17 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Exception thrown when a received frame exceeds the maximum frame size.
+ * The rest of the stream cannot be read reliably after this, so the connection is closed.
+ */
+public class StompFrameTooLargeException extends StompException {
+    
+    /**
+     * Creates a new exception for a frame larger than the given maximum size.
+     * 
+     * @param maxFrameSize the maximum frame size in bytes
+     */
+    public StompFrameTooLargeException(int maxFrameSize) {
+        super("Frame exceeds the maximum size of " + maxFrameSize + " bytes");
+    }
+}
@@ -0,0 +1,54 @@
+package dev.pixelib.jstomp;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * JSON codec backed by Gson. This is the codec used by {@code sendJson} and
+ * {@code subscribeJson}, and the default for messages without a content type.
+ * 
+ * Type adapters are resolved once per class or subscription, and bodies are
+ * written and read as UTF-8 without intermediate strings.
+ */
+public final class StompGsonCodec implements StompCodec {
+    
+    /**
+     * The JSON content type.
+     */
+    public static final String CONTENT_TYPE = "application/json";
+    
+    private final Gson gson;
+    private final StompJsonEncoder encoder;
+    
+    /**
+     * Creates a new JSON codec.
+     * 
+     * @param gson the Gson instance to use
+     */
+    public StompGsonCodec(Gson gson) {
+        this.gson = gson;
+        this.encoder = new StompJsonEncoder(gson);
+    }
+    
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+    
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+    
+    @Override
+    public byte[] encode(Object object) throws IOException {
+        return encoder.encode(object);
+    }
+    
+    @Override
+    public <T> Decoder<T> decoder(Type type) {
+        return new StompJsonDecoder<T>(gson, type)::decode;
+    }
+}
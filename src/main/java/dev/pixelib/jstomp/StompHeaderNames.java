@@ -0,0 +1,116 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Table of the header names defined by the STOMP 1.2 specification.
+ *
+ * The decoder looks header names up in this table so every received frame
+ * refers to the same constant strings instead of allocating a new string for
+ * each header. The table is a perfect hash: every known name has its own slot,
+ * so a lookup hashes the length and three characters of the name and compares
+ * it with at most one entry.
+ *
+ * The entries also mark the headers whose values tend to repeat from frame to
+ * frame, such as destinations and subscription ids, which the decoder keeps in
+ * a {@link StompHeaderValueCache}.
+ */
+final class StompHeaderNames {
+
+    private static final int TABLE_SIZE = 32;
+
+    private static final Entry[] TABLE = new Entry[TABLE_SIZE];
+
+    static {
+        add("accept-version", false);
+        add("host", false);
+        add("login", false);
+        add("passcode", false);
+        add("heart-beat", false);
+        add("version", false);
+        add("session", false);
+        add("server", false);
+        add("destination", true);
+        add("content-type", true);
+        add(StompFrame.CONTENT_LENGTH, false);
+        add("receipt", false);
+        add("receipt-id", false);
+        add("id", false);
+        add("ack", false);
+        add("subscription", true);
+        add("message-id", false);
+        add("transaction", false);
+        add("message", false);
+    }
+
+    private StompHeaderNames() {
+    }
+
+    private static void add(String name, boolean repeatedValues) {
+        int slot = hash(name.length(), name.charAt(0), name.charAt(name.length() / 2), name.charAt(name.length() - 1));
+        if (TABLE[slot] != null) {
+            throw new IllegalStateException("Header names " + TABLE[slot].name() + " and " + name + " collide");
+        }
+        TABLE[slot] = new Entry(name, repeatedValues);
+    }
+
+    /**
+     * Hashes a header name by its length and its first, middle and last character.
+     * The multipliers were chosen so the known names do not collide.
+     */
+    private static int hash(int length, int first, int middle, int last) {
+        return (length * 3 + first * 25 + middle + last * 23) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * Looks up the known header name held by an ASCII region of the input.
+     *
+     * @param input the buffer holding the name
+     * @param start the index of the first byte of the name
+     * @param end the index after the last byte of the name
+     * @return the entry for the name, or null if it is not a known name
+     */
+    static Entry lookup(byte[] input, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return null;
+        }
+        Entry entry = TABLE[hash(length, input[start], input[start + length / 2], input[end - 1])];
+        if (entry == null || entry.name().length() != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (input[start + i] != entry.name().charAt(i)) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Looks up the known header name held by a region of the input.
+     *
+     * @param input the text holding the name
+     * @param start the index of the first character of the name
+     * @param end the index after the last character of the name
+     * @return the entry for the name, or null if it is not a known name
+     */
+    static Entry lookup(String input, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return null;
+        }
+        Entry entry = TABLE[hash(length, input.charAt(start), input.charAt(start + length / 2), input.charAt(end - 1))];
+        if (entry == null || entry.name().length() != length || !input.regionMatches(start, entry.name(), 0, length)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * A known header name.
+     *
+     * @param name the header name
+     * @param repeatedValues whether values of this header tend to repeat across frames
+     */
+    record Entry(String name, boolean repeatedValues) {
+    }
+}
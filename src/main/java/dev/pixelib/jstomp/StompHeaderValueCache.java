@@ -0,0 +1,105 @@
+package dev.pixelib.jstomp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Small bounded cache of decoded header values.
+ *
+ * Headers such as {@code destination} and {@code subscription} usually carry
+ * the same few values on every frame of a connection. The cache maps the
+ * encoded bytes of such a value to the string decoded earlier, so steady-state
+ * consumption reuses one string per value instead of allocating a new one for
+ * every frame.
+ *
+ * The cache is direct-mapped: each value hashes to a single slot and replaces
+ * whatever that slot held before, so its size never exceeds its capacity and a
+ * miss costs no more than decoding the value. Long values are not cached.
+ *
+ * Instances are not thread-safe; use one cache per connection.
+ */
+final class StompHeaderValueCache {
+
+    private static final int MAX_VALUE_LENGTH = 256;
+
+    private final byte[][] keys;
+    private final String[] values;
+    private final int mask;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    StompHeaderValueCache(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Gets the string for a UTF-8 encoded value, decoding and caching it on a miss.
+     *
+     * @param input the buffer holding the value
+     * @param start the index of the first byte of the value
+     * @param end the index after the last byte of the value
+     * @return the decoded value
+     */
+    String get(byte[] input, int start, int end) {
+        int length = end - start;
+        if (length > MAX_VALUE_LENGTH) {
+            return new String(input, start, length, StandardCharsets.UTF_8);
+        }
+
+        int hash = length;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + input[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        byte[] key = keys[slot];
+        if (key != null && Arrays.equals(key, 0, key.length, input, start, end)) {
+            return values[slot];
+        }
+
+        String value = new String(input, start, length, StandardCharsets.UTF_8);
+        keys[slot] = Arrays.copyOfRange(input, start, end);
+        values[slot] = value;
+        return value;
+    }
+
+    /**
+     * Gets the string for a value received as text, taking it from the text and caching it on a miss.
+     *
+     * @param input the text holding the value
+     * @param start the index of the first character of the value
+     * @param end the index after the last character of the value
+     * @return the value
+     */
+    String get(String input, int start, int end) {
+        int length = end - start;
+        if (length > MAX_VALUE_LENGTH) {
+            return input.substring(start, end);
+        }
+
+        // Hashes like the byte variant for ASCII values, so both find the same slot
+        int hash = length;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + (byte) input.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        String cached = values[slot];
+        if (cached != null && cached.length() == length && input.regionMatches(start, cached, 0, length)) {
+            return cached;
+        }
+
+        String value = input.substring(start, end);
+        keys[slot] = value.getBytes(StandardCharsets.UTF_8);
+        values[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,276 @@
+package dev.pixelib.jstomp;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Compact, read-only map of STOMP headers.
+ *
+ * Frames usually carry only a handful of headers, so they are kept in a single
+ * array of interleaved name and value slots instead of a hash table. Lookups scan
+ * the names linearly, which for a few entries is at least as fast as hashing and
+ * takes a fraction of the memory: one array instead of a table plus one node per
+ * header. Headers keep the order in which they were added.
+ *
+ * Instances handed out by frames and messages cannot be modified; all mutating
+ * map operations throw {@link UnsupportedOperationException}.
+ *
+ * Headers of lazily decoded messages are kept encoded until they are needed: a
+ * lookup decodes just the requested header, and iterating decodes them all.
+ * Decoding happens under a lock, so such a map may be read from several threads.
+ */
+public final class StompHeaders extends AbstractMap<String, String> {
+
+    private static final String[] EMPTY = new String[0];
+
+    private String[] slots;
+    private int size;
+
+    /**
+     * The encoded header lines not decoded yet, or null once all headers are decoded.
+     */
+    private volatile byte[] deferred;
+    private int deferredStart;
+    private int deferredEnd;
+
+    /**
+     * Creates an empty header map with room for the given number of headers.
+     *
+     * @param capacity the expected number of headers
+     */
+    StompHeaders(int capacity) {
+        this.slots = capacity == 0 ? EMPTY : new String[capacity * 2];
+    }
+
+    private StompHeaders(String[] slots, int size) {
+        this.slots = slots;
+        this.size = size;
+    }
+
+    /**
+     * Creates a header map holding the given headers.
+     *
+     * @param headers the headers
+     * @return the header map; {@code headers} itself if it already is one
+     */
+    public static StompHeaders of(Map<String, String> headers) {
+        if (headers instanceof StompHeaders stompHeaders) {
+            return stompHeaders;
+        }
+        StompHeaders result = new StompHeaders(headers.size());
+        headers.forEach(result::set);
+        return result;
+    }
+
+    /**
+     * Sets a header, replacing the value of an existing header with the same name.
+     */
+    void set(String name, String value) {
+        decodeDeferred();
+        store(name, value);
+    }
+
+    /**
+     * Adds a decoded header unless a header with the same name is already present.
+     * STOMP 1.2 requires the first occurrence of a repeated header to be used.
+     */
+    void add(String name, String value) {
+        if (indexOf(name) < 0) {
+            store(name, value);
+        }
+    }
+
+    /**
+     * Removes a header.
+     */
+    void unset(String name) {
+        decodeDeferred();
+        int index = indexOf(name);
+        if (index >= 0) {
+            System.arraycopy(slots, index + 2, slots, index, size * 2 - index - 2);
+            size--;
+            slots[size * 2] = null;
+            slots[size * 2 + 1] = null;
+        }
+    }
+
+    /**
+     * Defers decoding the given header lines until they are looked up.
+     * Headers already set must have been decoded from the same lines.
+     * The array is not copied, so it must not be modified afterwards.
+     * 
+     * @param input the buffer holding the header lines
+     * @param start the index of the first header line
+     * @param end the index after the last header line
+     */
+    void defer(byte[] input, int start, int end) {
+        this.deferredStart = start;
+        this.deferredEnd = end;
+        this.deferred = input;
+    }
+
+    private void store(String name, String value) {
+        int index = indexOf(name);
+        if (index >= 0) {
+            slots[index + 1] = value;
+            return;
+        }
+        if (size * 2 == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(8, slots.length * 2));
+        }
+        slots[size * 2] = name;
+        slots[size * 2 + 1] = value;
+        size++;
+    }
+
+    /**
+     * Creates a copy with room for the given number of additional headers.
+     */
+    StompHeaders copy(int extra) {
+        decodeDeferred();
+        return new StompHeaders(Arrays.copyOf(slots, (size + extra) * 2), size);
+    }
+
+    /**
+     * Gets the name of the header at the given position.
+     * Only valid after {@link #size()} was called.
+     */
+    String name(int index) {
+        return slots[index * 2];
+    }
+
+    /**
+     * Gets the value of the header at the given position.
+     * Only valid after {@link #size()} was called.
+     */
+    String value(int index) {
+        return slots[index * 2 + 1];
+    }
+
+    private int indexOf(Object name) {
+        // Names of known headers are shared constants, so try identity first
+        for (int i = 0; i < size * 2; i += 2) {
+            if (slots[i] == name) {
+                return i;
+            }
+        }
+        if (name != null) {
+            for (int i = 0; i < size * 2; i += 2) {
+                if (name.equals(slots[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes all deferred header lines, if any.
+     */
+    private void decodeDeferred() {
+        if (deferred != null) {
+            decodeAllDeferred();
+        }
+    }
+
+    private synchronized void decodeAllDeferred() {
+        byte[] input = deferred;
+        if (input == null) {
+            return;
+        }
+        StompHeaders decoded = new StompHeaders(size + 4);
+        StompFrameDecoder.decodeHeaders(input, deferredStart, deferredEnd, decoded);
+        slots = decoded.slots;
+        size = decoded.size;
+        deferred = null;
+    }
+
+    private synchronized String getDeferred(Object name) {
+        int index = indexOf(name);
+        if (index >= 0) {
+            return slots[index + 1];
+        }
+        byte[] input = deferred;
+        if (input == null || !(name instanceof String key)) {
+            return null;
+        }
+        String value = StompFrameDecoder.findHeader(input, deferredStart, deferredEnd, key);
+        if (value != null) {
+            store(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public String get(Object name) {
+        if (deferred != null) {
+            return getDeferred(name);
+        }
+        int index = indexOf(name);
+        return index >= 0 ? slots[index + 1] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        decodeDeferred();
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        decodeDeferred();
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        decodeDeferred();
+        for (int i = 0; i < size * 2; i += 2) {
+            action.accept(slots[i], slots[i + 1]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        decodeDeferred();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (index >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, String> entry = new SimpleImmutableEntry<>(name(index), value(index));
+                        index++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package dev.pixelib.jstomp;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP 1.2 heart-beating for a single connection.
+ *
+ * Sends a keep-alive EOL when nothing has been written for the negotiated
+ * outgoing interval, and reports the connection as dead when nothing has been
+ * read for a multiple of the negotiated incoming interval. The checks run on
+ * the shared {@link StompScheduler}.
+ */
+final class StompHeartbeat implements Runnable {
+
+    /**
+     * How many incoming intervals may pass without data before the server is considered gone.
+     */
+    private static final long RECEIVE_TOLERANCE = 2;
+
+    private final long sendIntervalNanos;
+    private final long receiveIntervalNanos;
+    private final long tickNanos;
+    private final Runnable sendBeat;
+    private final Runnable onMissedBeats;
+    private volatile long lastRead;
+    private volatile long lastWrite;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Creates a new heart-beat for negotiated intervals.
+     *
+     * @param sendIntervalMillis the interval at which the client must send, 0 for none
+     * @param receiveIntervalMillis the interval at which the server will send, 0 for none
+     * @param sendBeat sends a single heart-beat to the server
+     * @param onMissedBeats called once when the server stopped sending
+     */
+    StompHeartbeat(long sendIntervalMillis, long receiveIntervalMillis, Runnable sendBeat, Runnable onMissedBeats) {
+        this.sendIntervalNanos = TimeUnit.MILLISECONDS.toNanos(sendIntervalMillis);
+        this.receiveIntervalNanos = TimeUnit.MILLISECONDS.toNanos(receiveIntervalMillis);
+        this.tickNanos = tickNanos(sendIntervalNanos, receiveIntervalNanos);
+        this.sendBeat = sendBeat;
+        this.onMissedBeats = onMissedBeats;
+        long now = System.nanoTime();
+        this.lastRead = now;
+        this.lastWrite = now;
+    }
+
+    /**
+     * Negotiates the heart-beat intervals from the client settings and the
+     * {@code heart-beat} header of the CONNECTED frame.
+     *
+     * @param clientSend the interval the client can send at, 0 for none
+     * @param clientReceive the interval the client wants to receive at, 0 for none
+     * @param serverHeader the server's heart-beat header, may be null
+     * @return the outgoing and incoming intervals in milliseconds, 0 meaning none
+     */
+    static long[] negotiate(long clientSend, long clientReceive, String serverHeader) {
+        long serverSend = 0;
+        long serverReceive = 0;
+        if (serverHeader != null) {
+            int comma = serverHeader.indexOf(',');
+            if (comma > 0) {
+                try {
+                    serverSend = Long.parseLong(serverHeader.substring(0, comma).trim());
+                    serverReceive = Long.parseLong(serverHeader.substring(comma + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid heart-beat header: " + serverHeader);
+                }
+            }
+        }
+
+        long outgoing = clientSend > 0 && serverReceive > 0 ? Math.max(clientSend, serverReceive) : 0;
+        long incoming = clientReceive > 0 && serverSend > 0 ? Math.max(clientReceive, serverSend) : 0;
+        return new long[] {outgoing, incoming};
+    }
+
+    /**
+     * Checks if any heart-beating was negotiated.
+     */
+    boolean isActive() {
+        return tickNanos > 0;
+    }
+
+    /**
+     * Starts the periodic checks on the shared scheduler.
+     */
+    synchronized void start() {
+        if (isActive() && task == null) {
+            task = StompScheduler.scheduleAtFixedRate(this, Math.max(1, TimeUnit.NANOSECONDS.toMillis(tickNanos)));
+        }
+    }
+
+    /**
+     * Stops the periodic checks.
+     */
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Records that data was received from the server.
+     */
+    void onRead() {
+        lastRead = System.nanoTime();
+    }
+
+    /**
+     * Records that data was sent to the server.
+     */
+    void onWrite() {
+        lastWrite = System.nanoTime();
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+
+        if (receiveIntervalNanos > 0 && now - lastRead > receiveIntervalNanos * RECEIVE_TOLERANCE) {
+            stop();
+            onMissedBeats.run();
+            return;
+        }
+
+        // Send a little early so the gap seen by the server never exceeds the interval
+        if (sendIntervalNanos > 0 && now - lastWrite >= sendIntervalNanos - tickNanos) {
+            lastWrite = now;
+            sendBeat.run();
+        }
+    }
+
+    /**
+     * Checks run four times per interval, so beats go out between 3/4 and
+     * the whole of the outgoing interval after the last write.
+     */
+    private static long tickNanos(long sendIntervalNanos, long receiveIntervalNanos) {
+        if (sendIntervalNanos == 0) {
+            return receiveIntervalNanos / 4;
+        }
+        if (receiveIntervalNanos == 0) {
+            return sendIntervalNanos / 4;
+        }
+        return Math.min(sendIntervalNanos, receiveIntervalNanos) / 4;
+    }
+}
@@ -0,0 +1,70 @@
+package dev.pixelib.jstomp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+
+/**
+ * Deserializes the JSON bodies of one subscription's messages.
+ * 
+ * The type adapter is resolved once when the subscription is created instead of
+ * being looked up for every message, and bodies are parsed with a streaming reader
+ * straight from the received bytes, so a large payload is never held as one body
+ * string. Parsing follows {@link Gson#fromJson(String, Type)}: it is lenient, an
+ * empty body yields null and trailing data is rejected.
+ * 
+ * @param <T> the type to deserialize to
+ */
+final class StompJsonDecoder<T> {
+    
+    private final Gson gson;
+    private final TypeAdapter<T> adapter;
+    
+    /**
+     * Creates a new decoder.
+     * 
+     * @param gson the Gson instance providing the type adapter and reader settings
+     * @param type the type to deserialize to
+     */
+    @SuppressWarnings("unchecked")
+    StompJsonDecoder(Gson gson, Type type) {
+        this.gson = gson;
+        this.adapter = (TypeAdapter<T>) gson.getAdapter(TypeToken.get(type));
+    }
+    
+    /**
+     * Deserializes the body of a message.
+     * 
+     * @param message the message
+     * @return the deserialized object, or null if the body is empty or JSON null
+     * @throws IOException if the body is not valid JSON for the type
+     */
+    T decode(StompMessage message) throws IOException {
+        Reader body = message.bodyReader();
+        if (body == null) {
+            return null;
+        }
+        
+        JsonReader reader = gson.newJsonReader(body);
+        reader.setLenient(true);
+        try {
+            reader.peek();
+        } catch (EOFException e) {
+            return null;
+        }
+        
+        T value = adapter.read(reader);
+        if (value != null && reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonSyntaxException("JSON document was not fully consumed.");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,99 @@
+package dev.pixelib.jstomp;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes objects to JSON message bodies.
+ * 
+ * Type adapters are resolved once per class and cached, and objects are written
+ * through a {@link JsonWriter} straight into a UTF-8 buffer whose segments okio
+ * recycles, so no intermediate JSON string is built. The output matches
+ * {@link Gson#toJson(Object)} for the same Gson configuration.
+ */
+final class StompJsonEncoder {
+    
+    private final Gson gson;
+    private final Map<Class<?>, TypeAdapter<?>> adapters;
+    
+    /**
+     * Creates a new encoder.
+     * 
+     * @param gson the Gson instance providing the type adapters and writer settings
+     */
+    StompJsonEncoder(Gson gson) {
+        this.gson = gson;
+        this.adapters = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Serializes an object to JSON.
+     * 
+     * @param value the object, which may be null
+     * @return the JSON, encoded as UTF-8
+     * @throws IOException if the object cannot be serialized
+     */
+    byte[] encode(Object value) throws IOException {
+        Buffer buffer = new Buffer();
+        JsonWriter writer = gson.newJsonWriter(new Utf8Writer(buffer));
+        writer.setLenient(true);
+        if (value == null) {
+            writer.nullValue();
+        } else {
+            adapter(value.getClass()).write(writer, value);
+        }
+        writer.flush();
+        return buffer.readByteArray();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<Object> adapter(Class<?> type) {
+        return (TypeAdapter<Object>) adapters.computeIfAbsent(type, gson::getAdapter);
+    }
+    
+    /**
+     * Unsynchronized writer that encodes characters as UTF-8 into a buffer.
+     */
+    private static final class Utf8Writer extends Writer {
+        
+        private final Buffer sink;
+        
+        Utf8Writer(Buffer sink) {
+            this.sink = sink;
+        }
+        
+        @Override
+        public void write(int c) {
+            if (c < 0x80) {
+                sink.writeByte(c);
+            } else {
+                sink.writeUtf8CodePoint(c);
+            }
+        }
+        
+        @Override
+        public void write(String str, int off, int len) {
+            sink.writeUtf8(str, off, off + len);
+        }
+        
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            sink.writeUtf8(new String(cbuf, off, len));
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
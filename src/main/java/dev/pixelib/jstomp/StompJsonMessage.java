@@ -63,7 +63,7 @@ public class StompJsonMessage<T> {
     /**
      * Gets all message headers.
      * 
-     * @return the headers
+     * @return the headers, as a read-only {@link StompHeaders} map
      */
     public Map<String, String> getHeaders() {
         return originalMessage.getHeaders();
@@ -79,6 +79,24 @@ public class StompJsonMessage<T> {
         return originalMessage.getHeader(name);
     }
     
+    /**
+     * Acknowledges the original message.
+     * 
+     * @see StompMessage#ack()
+     */
+    public void ack() {
+        originalMessage.ack();
+    }
+    
+    /**
+     * Rejects the original message.
+     * 
+     * @see StompMessage#nack()
+     */
+    public void nack() {
+        originalMessage.nack();
+    }
+    
     @Override
     public String toString() {
         return "StompJsonMessage{" +
@@ -0,0 +1,233 @@
+package dev.pixelib.jstomp;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the LZ4 block format.
+ *
+ * Compressed bodies start with the uncompressed size as a 4-byte little-endian
+ * integer, followed by a single LZ4 block, which is the layout produced by common
+ * LZ4 bindings when asked to store the size. The compressor is the greedy single-pass
+ * algorithm of the reference "fast" mode: it hashes every 4-byte sequence into a
+ * table of recent positions and skips ahead faster through data that does not match.
+ */
+final class StompLz4 {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 12;
+    private static final int MAX_OFFSET = 65535;
+    /**
+     * The last literals of a block, which no match may cover.
+     */
+    private static final int LAST_LITERALS = 5;
+    /**
+     * The distance from the end of the block within which no match may start.
+     */
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int SIZE_PREFIX = 4;
+
+    private StompLz4() {
+    }
+
+    /**
+     * Compresses a body.
+     *
+     * @param input the buffer holding the body
+     * @param offset the index of the first byte of the body
+     * @param length the length of the body
+     * @return the compressed body, or null if compressing does not make it smaller
+     */
+    static byte[] compress(byte[] input, int offset, int length) {
+        byte[] output = new byte[SIZE_PREFIX + length + length / 255 + 16];
+        writeIntLE(output, 0, length);
+        int op = SIZE_PREFIX;
+
+        int end = offset + length;
+        int anchor = offset;
+        if (length > MATCH_FIND_LIMIT) {
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = end - LAST_LITERALS;
+            int findLimit = end - MATCH_FIND_LIMIT;
+            int ip = offset + 1;
+
+            while (ip < findLimit) {
+                int sequence = readIntLE(input, ip);
+                int slot = hash(sequence);
+                // Table entries are positions relative to the offset plus one, zero meaning empty
+                int ref = table[slot] - 1 + offset;
+                table[slot] = ip - offset + 1;
+
+                if (ref < offset || ip - ref > MAX_OFFSET || readIntLE(input, ref) != sequence) {
+                    ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+                    continue;
+                }
+
+                while (ip > anchor && ref > offset && input[ip - 1] == input[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && input[ip + matchLength] == input[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(output, op, input, anchor, ip - anchor, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+                if (ip < findLimit) {
+                    table[hash(readIntLE(input, ip - 2))] = ip - 2 - offset + 1;
+                }
+            }
+        }
+        op = writeLiterals(output, op, input, anchor, end - anchor);
+
+        return op < length ? Arrays.copyOf(output, op) : null;
+    }
+
+    /**
+     * Decompresses a body.
+     *
+     * @param input the buffer holding the compressed body
+     * @param offset the index of the first byte of the compressed body
+     * @param length the length of the compressed body
+     * @param maxLength the largest decompressed size accepted
+     * @return the decompressed body
+     * @throws IOException if the body is malformed or decompresses to more than {@code maxLength} bytes
+     */
+    static byte[] decompress(byte[] input, int offset, int length, int maxLength) throws IOException {
+        if (length < SIZE_PREFIX + 1) {
+            throw new IOException("Truncated LZ4 body");
+        }
+        int size = readIntLE(input, offset);
+        if (size < 0 || size > maxLength) {
+            throw new IOException("Decompressed body of " + Integer.toUnsignedString(size)
+                    + " bytes exceeds " + maxLength + " bytes");
+        }
+
+        byte[] output = new byte[size];
+        int ip = offset + SIZE_PREFIX;
+        int end = offset + length;
+        int op = 0;
+        while (true) {
+            int token = input[ip++] & 0xff;
+
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                literalLength += readLength(input, ip, end);
+                ip += (literalLength - 15) / 255 + 1;
+            }
+            if (literalLength > end - ip || literalLength > size - op) {
+                throw new IOException("Malformed LZ4 body");
+            }
+            System.arraycopy(input, ip, output, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip == end) {
+                break;
+            }
+
+            if (end - ip < 3) {
+                throw new IOException("Malformed LZ4 body");
+            }
+            int matchOffset = (input[ip] & 0xff) | (input[ip + 1] & 0xff) << 8;
+            ip += 2;
+            int matchLength = token & 0x0f;
+            if (matchLength == 15) {
+                matchLength += readLength(input, ip, end);
+                ip += (matchLength - 15) / 255 + 1;
+            }
+            matchLength += MIN_MATCH;
+            if (matchOffset == 0 || matchOffset > op || matchLength > size - op || ip >= end) {
+                throw new IOException("Malformed LZ4 body");
+            }
+
+            int match = op - matchOffset;
+            if (matchOffset >= matchLength) {
+                System.arraycopy(output, match, output, op, matchLength);
+                op += matchLength;
+            } else {
+                // Overlapping match, repeating the last matchOffset bytes
+                for (int i = 0; i < matchLength; i++) {
+                    output[op++] = output[match + i];
+                }
+            }
+        }
+        if (op != size) {
+            throw new IOException("LZ4 body decompressed to " + op + " bytes instead of " + size);
+        }
+        return output;
+    }
+
+    /**
+     * Reads the extra bytes of a length field whose 4-bit part is 15.
+     */
+    private static int readLength(byte[] input, int ip, int end) throws IOException {
+        int length = 0;
+        int b;
+        do {
+            if (ip >= end) {
+                throw new IOException("Truncated LZ4 body");
+            }
+            b = input[ip++] & 0xff;
+            length += b;
+            if (length > Integer.MAX_VALUE / 2) {
+                throw new IOException("Malformed LZ4 body");
+            }
+        } while (b == 255);
+        return length;
+    }
+
+    private static int writeSequence(byte[] output, int op, byte[] input, int literalStart, int literalLength,
+                                     int matchOffset, int matchLength) {
+        int tokenIndex = op++;
+        int extraMatch = matchLength - MIN_MATCH;
+        output[tokenIndex] = (byte) (Math.min(literalLength, 15) << 4 | Math.min(extraMatch, 15));
+        if (literalLength >= 15) {
+            op = writeLength(output, op, literalLength - 15);
+        }
+        System.arraycopy(input, literalStart, output, op, literalLength);
+        op += literalLength;
+        output[op++] = (byte) matchOffset;
+        output[op++] = (byte) (matchOffset >>> 8);
+        if (extraMatch >= 15) {
+            op = writeLength(output, op, extraMatch - 15);
+        }
+        return op;
+    }
+
+    private static int writeLiterals(byte[] output, int op, byte[] input, int literalStart, int literalLength) {
+        output[op++] = (byte) (Math.min(literalLength, 15) << 4);
+        if (literalLength >= 15) {
+            op = writeLength(output, op, literalLength - 15);
+        }
+        System.arraycopy(input, literalStart, output, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(byte[] output, int op, int length) {
+        while (length >= 255) {
+            output[op++] = (byte) 255;
+            length -= 255;
+        }
+        output[op++] = (byte) length;
+        return op;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readIntLE(byte[] input, int index) {
+        return (input[index] & 0xff) | (input[index + 1] & 0xff) << 8
+                | (input[index + 2] & 0xff) << 16 | (input[index + 3] & 0xff) << 24;
+    }
+
+    private static void writeIntLE(byte[] output, int index, int value) {
+        output[index] = (byte) value;
+        output[index + 1] = (byte) (value >>> 8);
+        output[index + 2] = (byte) (value >>> 16);
+        output[index + 3] = (byte) (value >>> 24);
+    }
+}
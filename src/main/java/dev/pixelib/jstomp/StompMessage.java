@@ -1,5 +1,13 @@
 package dev.pixelib.jstomp;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -7,9 +15,21 @@ import java.util.Map;
  */
 public class StompMessage {
     
+    /**
+     * Bodies smaller than this are decoded to a string before being read as
+     * characters, which is cheaper than setting up a streaming decoder.
+     */
+    private static final int STREAMING_BODY_THRESHOLD = 8192;
+    
     private final String destination;
-    private final String body;
-    private final Map<String, String> headers;
+    private final StompHeaders headers;
+    private final byte[] bodyBytes;
+    private final int bodyOffset;
+    private final int bodyLength;
+    private final boolean textBytes;
+    private String body;
+    private StompAcknowledger acknowledger;
+    private long ackGeneration;
     
     /**
      * Creates a new STOMP message.
@@ -21,7 +41,87 @@ public class StompMessage {
     public StompMessage(String destination, String body, Map<String, String> headers) {
         this.destination = destination;
         this.body = body;
+        this.headers = StompHeaders.of(headers);
+        this.bodyBytes = null;
+        this.bodyOffset = 0;
+        this.bodyLength = 0;
+        this.textBytes = false;
+    }
+    
+    /**
+     * Creates a new STOMP message with a binary body.
+     * The array is not copied, so it should not be modified afterwards.
+     * 
+     * @param destination the destination this message was received from
+     * @param body the message body
+     * @param headers the message headers
+     */
+    public StompMessage(String destination, byte[] body, Map<String, String> headers) {
+        this(destination, body, 0, body.length, StompHeaders.of(headers), false);
+    }
+    
+    private StompMessage(String destination, byte[] body, int offset, int length, StompHeaders headers,
+            boolean textBytes) {
+        this.destination = destination;
         this.headers = headers;
+        this.bodyBytes = body;
+        this.bodyOffset = offset;
+        this.bodyLength = length;
+        this.textBytes = textBytes;
+    }
+    
+    /**
+     * Creates a message from a received MESSAGE frame, keeping a binary body binary.
+     * The message takes over the headers and body of the frame, which must not be used afterwards.
+     * Headers and bodies the frame has not decoded yet are decoded when the message is read.
+     */
+    static StompMessage fromFrame(StompFrame frame) {
+        if (frame.bodyArray() != null) {
+            return new StompMessage(null, frame.bodyArray(), frame.bodyOffset(), frame.bodyLength(),
+                    frame.takeHeaders(), !frame.hasBinaryBody());
+        }
+        return new StompMessage(null, frame.getBody(), frame.takeHeaders());
+    }
+    
+    /**
+     * Creates a message from a received MESSAGE frame that is acknowledged through the given acknowledger.
+     */
+    static StompMessage fromFrame(StompFrame frame, StompAcknowledger acknowledger) {
+        StompMessage message = fromFrame(frame);
+        message.acknowledger = acknowledger;
+        return message;
+    }
+    
+    /**
+     * Decompresses a body marked with a supported content-encoding.
+     * The returned message has a binary body and no content-encoding header, and is
+     * acknowledged like this one. Messages without a content-encoding, or with an
+     * unsupported one, are returned as they are.
+     * 
+     * @param maxLength the largest decompressed size accepted
+     * @return the decompressed message
+     * @throws IOException if the body is malformed or decompresses to more than {@code maxLength} bytes
+     */
+    StompMessage decompress(int maxLength) throws IOException {
+        String contentEncoding = headers.get(StompFrame.CONTENT_ENCODING);
+        StompCompression compression = contentEncoding != null ? StompCompression.forContentEncoding(contentEncoding) : null;
+        if (compression == null) {
+            return this;
+        }
+        byte[] input = bodyBytes != null ? bodyBytes : getBodyBytes();
+        int offset = bodyBytes != null ? bodyOffset : 0;
+        int length = bodyBytes != null ? bodyLength : input.length;
+        byte[] decompressed = compression.decompress(input, offset, length, maxLength);
+        
+        // The headers belong to this message, which is replaced before anyone reads it
+        headers.unset(StompFrame.CONTENT_ENCODING);
+        if (headers.get(StompFrame.CONTENT_LENGTH) != null) {
+            headers.set(StompFrame.CONTENT_LENGTH, Integer.toString(decompressed.length));
+        }
+        StompMessage message = new StompMessage(destination, decompressed, 0, decompressed.length, headers, false);
+        message.acknowledger = acknowledger;
+        message.ackGeneration = ackGeneration;
+        return message;
     }
     
     /**
@@ -30,22 +130,77 @@ public class StompMessage {
      * @return the destination
      */
     public String getDestination() {
-        return destination;
+        return destination != null ? destination : headers.get("destination");
     }
     
     /**
      * Gets the message body.
+     * A binary body is decoded as UTF-8 on first access.
      * 
      * @return the body
      */
     public String getBody() {
+        if (body == null && bodyBytes != null) {
+            body = new String(bodyBytes, bodyOffset, bodyLength, StandardCharsets.UTF_8);
+        }
         return body;
     }
     
+    /**
+     * Gets a copy of the message body as bytes.
+     * A text body is encoded as UTF-8.
+     * 
+     * @return the body
+     */
+    public byte[] getBodyBytes() {
+        if (bodyBytes == null) {
+            return body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        }
+        return Arrays.copyOfRange(bodyBytes, bodyOffset, bodyOffset + bodyLength);
+    }
+    
+    /**
+     * Gets a read-only view of the message body.
+     * For a binary body no copy is made.
+     * 
+     * @return the body
+     */
+    public ByteBuffer getBodyBuffer() {
+        if (bodyBytes == null) {
+            return ByteBuffer.wrap(getBodyBytes()).asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(bodyBytes, bodyOffset, bodyLength).slice().asReadOnlyBuffer();
+    }
+    
+    /**
+     * Opens a character reader over the body.
+     * A large body still held as bytes is decoded while it is read, without
+     * building the body string.
+     * 
+     * @return a reader over the body, or null if the message has no body
+     */
+    Reader bodyReader() {
+        if (body == null && bodyBytes != null && bodyLength >= STREAMING_BODY_THRESHOLD) {
+            return new InputStreamReader(new ByteArrayInputStream(bodyBytes, bodyOffset, bodyLength),
+                    StandardCharsets.UTF_8);
+        }
+        String text = getBody();
+        return text != null ? new StringReader(text) : null;
+    }
+    
+    /**
+     * Checks whether the body of this message was received as bytes.
+     * 
+     * @return true if the body is binary, false if it is text
+     */
+    public boolean hasBinaryBody() {
+        return bodyBytes != null && !textBytes;
+    }
+    
     /**
      * Gets all message headers.
      * 
-     * @return the headers
+     * @return the headers, as a read-only {@link StompHeaders} map
      */
     public Map<String, String> getHeaders() {
         return headers;
@@ -61,11 +216,86 @@ public class StompMessage {
         return headers.get(name);
     }
     
+    /**
+     * Acknowledges this message.
+     * In {@link StompAckMode#CLIENT} mode the ACK is cumulative and may be batched
+     * according to the subscription options.
+     * 
+     * @throws IllegalStateException if the subscription does not use client acknowledgement
+     */
+    public void ack() {
+        requireAcknowledger().ack(getAckId(), ackGeneration);
+    }
+    
+    /**
+     * Rejects this message, so the server may redeliver it or move it to a dead letter queue.
+     * 
+     * @throws IllegalStateException if the subscription does not use client acknowledgement
+     */
+    public void nack() {
+        requireAcknowledger().nack(getAckId(), ackGeneration);
+    }
+    
+    /**
+     * Acknowledges this message within a transaction.
+     */
+    void ack(String transactionId) {
+        requireAcknowledger().ack(getAckId(), ackGeneration, transactionId);
+    }
+    
+    /**
+     * Rejects this message within a transaction.
+     */
+    void nack(String transactionId) {
+        requireAcknowledger().nack(getAckId(), ackGeneration, transactionId);
+    }
+    
+    /**
+     * Gets the id used to acknowledge this message: the {@code ack} header,
+     * or the {@code message-id} header for servers that do not send one.
+     * 
+     * @return the ack id
+     */
+    public String getAckId() {
+        String ackId = headers.get("ack");
+        return ackId != null ? ackId : headers.get("message-id");
+    }
+    
+    /**
+     * Sets the connection generation this message was tracked under by its acknowledger.
+     */
+    void setAckGeneration(long ackGeneration) {
+        this.ackGeneration = ackGeneration;
+    }
+    
+    /**
+     * Gets the connection generation this message was tracked under by its acknowledger.
+     */
+    long getAckGeneration() {
+        return ackGeneration;
+    }
+    
+    /**
+     * Gets the acknowledger of the subscription this message was received on.
+     * 
+     * @throws IllegalStateException if the subscription does not use client acknowledgement
+     */
+    StompAcknowledger acknowledger() {
+        return requireAcknowledger();
+    }
+    
+    private StompAcknowledger requireAcknowledger() {
+        if (acknowledger == null) {
+            throw new IllegalStateException("Message was not received on a subscription with client acknowledgement");
+        }
+        return acknowledger;
+    }
+    
     @Override
     public String toString() {
         return "StompMessage{" +
-                "destination='" + destination + '\'' +
-                ", body='" + body + '\'' +
+                "destination='" + getDestination() + '\'' +
+                ", body='" + getBody() + '\'' +
                 ", headers=" + headers +
                 '}';
     }
@@ -0,0 +1,28 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Policy applied when a subscription's inbound queue is full.
+ */
+public enum StompOverflowPolicy {
+    
+    /**
+     * Block the WebSocket reader until the handler has made room in the queue.
+     * This pushes back on the broker, but also delays every other subscription.
+     */
+    BLOCK_READER,
+    
+    /**
+     * Discard the oldest queued message to make room for the new one.
+     */
+    DROP_OLDEST,
+    
+    /**
+     * Discard the new message.
+     */
+    DROP_NEWEST,
+    
+    /**
+     * Unsubscribe and report a {@link StompException} to the connection listener.
+     */
+    FAIL_SUBSCRIPTION
+}
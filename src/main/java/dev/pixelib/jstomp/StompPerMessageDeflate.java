@@ -0,0 +1,206 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Options for the WebSocket {@code permessage-deflate} extension (RFC 7692).
+ * 
+ * OkHttp offers the extension on every connection and compresses outgoing messages
+ * of at least {@link #getMinMessageSize()} bytes once the server accepts it. Deflating
+ * pays off for large, repetitive messages but costs CPU and, with context takeover,
+ * a 32 KiB window per direction, which is rarely worth it for small frames.
+ * 
+ * Instances are immutable and created through {@link #builder()}.
+ * 
+ * @see StompClient#setPerMessageDeflate(StompPerMessageDeflate)
+ */
+public final class StompPerMessageDeflate {
+    
+    /**
+     * The WebSocket handshake header negotiating extensions.
+     */
+    static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+    
+    private static final StompPerMessageDeflate DEFAULTS = builder().build();
+    private static final StompPerMessageDeflate DISABLED = builder().enabled(false).build();
+    
+    private final boolean enabled;
+    private final boolean clientContextTakeover;
+    private final boolean serverContextTakeover;
+    private final long minMessageSize;
+    
+    private StompPerMessageDeflate(Builder builder) {
+        this.enabled = builder.enabled;
+        this.clientContextTakeover = builder.clientContextTakeover;
+        this.serverContextTakeover = builder.serverContextTakeover;
+        this.minMessageSize = builder.minMessageSize;
+    }
+    
+    /**
+     * Gets the default options, matching OkHttp's own behavior: the extension is offered
+     * with context takeover in both directions and messages of 1024 bytes or more are compressed.
+     * 
+     * @return the default options
+     */
+    public static StompPerMessageDeflate defaults() {
+        return DEFAULTS;
+    }
+    
+    /**
+     * Gets options that do not offer the extension, so no message is compressed in either direction.
+     * 
+     * @return the disabled options
+     */
+    public static StompPerMessageDeflate disabled() {
+        return DISABLED;
+    }
+    
+    /**
+     * Creates a new builder.
+     * 
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Checks whether the extension is offered to the server.
+     * 
+     * @return true if the extension is offered
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Checks whether the client keeps its compression window between messages.
+     * 
+     * @return true if the client uses context takeover
+     */
+    public boolean isClientContextTakeover() {
+        return clientContextTakeover;
+    }
+    
+    /**
+     * Checks whether the server may keep its compression window between messages.
+     * 
+     * @return true if the server may use context takeover
+     */
+    public boolean isServerContextTakeover() {
+        return serverContextTakeover;
+    }
+    
+    /**
+     * Gets the smallest outgoing message size in bytes that is compressed.
+     * 
+     * @return the minimum message size
+     */
+    public long getMinMessageSize() {
+        return minMessageSize;
+    }
+    
+    /**
+     * Gets the extension offer for the handshake request.
+     * 
+     * @return the header value, or null if the extension is not offered
+     */
+    String extensionOffer() {
+        if (!enabled) {
+            return null;
+        }
+        StringBuilder offer = new StringBuilder("permessage-deflate");
+        if (!clientContextTakeover) {
+            offer.append("; client_no_context_takeover");
+        }
+        if (!serverContextTakeover) {
+            offer.append("; server_no_context_takeover");
+        }
+        return offer.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return "StompPerMessageDeflate{" +
+                "enabled=" + enabled +
+                ", clientContextTakeover=" + clientContextTakeover +
+                ", serverContextTakeover=" + serverContextTakeover +
+                ", minMessageSize=" + minMessageSize +
+                '}';
+    }
+    
+    /**
+     * Builder for {@link StompPerMessageDeflate}.
+     */
+    public static final class Builder {
+        
+        private boolean enabled = true;
+        private boolean clientContextTakeover = true;
+        private boolean serverContextTakeover = true;
+        private long minMessageSize = 1024;
+        
+        private Builder() {
+        }
+        
+        /**
+         * Sets whether the extension is offered to the server. Defaults to true.
+         * 
+         * @param enabled false to never compress messages
+         * @return this builder
+         */
+        public Builder enabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+        
+        /**
+         * Sets whether the client keeps its compression window between messages.
+         * Without context takeover every message is compressed on its own, which
+         * compresses repetitive streams of small messages less well but frees the
+         * window after each message. Defaults to true.
+         * 
+         * @param clientContextTakeover false to request {@code client_no_context_takeover}
+         * @return this builder
+         */
+        public Builder clientContextTakeover(boolean clientContextTakeover) {
+            this.clientContextTakeover = clientContextTakeover;
+            return this;
+        }
+        
+        /**
+         * Sets whether the server may keep its compression window between messages.
+         * Without context takeover the client can release its decompression window
+         * after each message. Defaults to true.
+         * 
+         * @param serverContextTakeover false to request {@code server_no_context_takeover}
+         * @return this builder
+         */
+        public Builder serverContextTakeover(boolean serverContextTakeover) {
+            this.serverContextTakeover = serverContextTakeover;
+            return this;
+        }
+        
+        /**
+         * Sets the smallest outgoing message size in bytes that is compressed.
+         * Smaller messages are sent uncompressed even when the extension is negotiated.
+         * Defaults to 1024.
+         * 
+         * @param minMessageSize the minimum message size
+         * @return this builder
+         */
+        public Builder minMessageSize(long minMessageSize) {
+            if (minMessageSize < 0) {
+                throw new IllegalArgumentException("Minimum message size cannot be negative");
+            }
+            this.minMessageSize = minMessageSize;
+            return this;
+        }
+        
+        /**
+         * Builds the options.
+         * 
+         * @return the options
+         */
+        public StompPerMessageDeflate build() {
+            return new StompPerMessageDeflate(this);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package dev.pixelib.jstomp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A reusable SEND for one destination with a fixed set of headers.
+ * 
+ * The destination and the static headers are escaped and encoded once, when the
+ * prepared send is created; every message only encodes its own headers and body.
+ * This removes most of the per-message encoding cost when many messages are sent
+ * to the same destination. Per-message headers take precedence over static ones.
+ * 
+ * Prepared sends are created with {@link StompClient#prepareSend(String, Map)} and
+ * are safe to use from multiple threads.
+ */
+public final class StompPreparedSend {
+    
+    private final StompClient client;
+    private final StompFrameTemplate template;
+    
+    StompPreparedSend(StompClient client, String destination, Map<String, String> headers) {
+        if (destination == null) {
+            throw new IllegalArgumentException("Destination cannot be null");
+        }
+        Map<String, String> all = new LinkedHashMap<>();
+        all.put("destination", destination);
+        all.putAll(headers);
+        
+        this.client = client;
+        this.template = new StompFrameTemplate(StompCommand.SEND, all);
+    }
+    
+    /**
+     * Gets the destination messages are sent to.
+     * 
+     * @return the destination
+     */
+    public String getDestination() {
+        return template.headers().get("destination");
+    }
+    
+    /**
+     * Sends a message.
+     * 
+     * @param message the message body
+     */
+    public void send(String message) {
+        client.send(createFrame(message, Map.of()));
+    }
+    
+    /**
+     * Sends a message with additional per-message headers.
+     * 
+     * @param message the message body
+     * @param headers the per-message headers
+     */
+    public void send(String message, Map<String, String> headers) {
+        client.send(createFrame(message, headers));
+    }
+    
+    /**
+     * Sends a binary message.
+     * 
+     * @param body the message body
+     */
+    public void send(byte[] body) {
+        send(body, Map.of());
+    }
+    
+    /**
+     * Sends a binary message with additional per-message headers.
+     * 
+     * @param body the message body
+     * @param headers the per-message headers
+     */
+    public void send(byte[] body, Map<String, String> headers) {
+        StompFrame frame = createFrame(headers);
+        frame.setBody(body);
+        
+        client.send(frame);
+    }
+    
+    /**
+     * Sends a message and requests a receipt from the server.
+     * 
+     * @param message the message body
+     * @return a future completed when the server confirms the message
+     * @see StompClient#sendAsync(String, String, Map)
+     */
+    public CompletableFuture<Void> sendAsync(String message) {
+        return client.sendWithReceipt(createFrame(message, Map.of()));
+    }
+    
+    private StompFrame createFrame(String message, Map<String, String> headers) {
+        StompFrame frame = createFrame(headers);
+        frame.setBody(message);
+        return frame;
+    }
+    
+    private StompFrame createFrame(Map<String, String> headers) {
+        StompFrame frame = new StompFrame(template);
+        headers.forEach(frame::addHeader);
+        return frame;
+    }
+    
+    @Override
+    public String toString() {
+        return "StompPreparedSend{" +
+                "destination='" + getDestination() + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,200 @@
+package dev.pixelib.jstomp;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pipelined publisher with a bounded window of unconfirmed messages.
+ * 
+ * Every message is sent with a receipt request, without waiting for the receipt
+ * of the previous one. At most {@code maxInFlight} messages may be unconfirmed at
+ * any time; when the window is full, {@code publish} blocks until a receipt
+ * arrives (or the message fails), which bounds memory and applies backpressure
+ * to the producer. Confirm latency is measured from handing the message to the
+ * socket to its receipt, so time spent waiting for the window or in the send
+ * buffer is not counted.
+ * 
+ * Publishers are created with {@link StompClient#createPublisher(int)}.
+ */
+public final class StompPublisher {
+    
+    private final StompClient client;
+    private final int maxInFlight;
+    private final Semaphore window;
+    private final LongAdder confirmedCount;
+    private final LongAdder failedCount;
+    private final LongAdder totalLatencyNanos;
+    private final AtomicLong maxLatencyNanos;
+    
+    /**
+     * Creates a new publisher.
+     * 
+     * @param client the client to send through
+     * @param maxInFlight the maximum number of unconfirmed messages
+     */
+    StompPublisher(StompClient client, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("In-flight window must be at least 1");
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        this.confirmedCount = new LongAdder();
+        this.failedCount = new LongAdder();
+        this.totalLatencyNanos = new LongAdder();
+        this.maxLatencyNanos = new AtomicLong();
+    }
+    
+    /**
+     * Publishes a message, blocking while the in-flight window is full.
+     * 
+     * @param destination the destination to send to
+     * @param message the message body
+     * @return a future completed when the server confirms the message
+     * @throws InterruptedException if interrupted while waiting for the window
+     */
+    public CompletableFuture<Void> publish(String destination, String message) throws InterruptedException {
+        return publish(destination, message, Map.of());
+    }
+    
+    /**
+     * Publishes a message with custom headers, blocking while the in-flight window is full.
+     * 
+     * @param destination the destination to send to
+     * @param message the message body
+     * @param headers additional headers
+     * @return a future completed when the server confirms the message
+     * @throws InterruptedException if interrupted while waiting for the window
+     */
+    public CompletableFuture<Void> publish(String destination, String message, Map<String, String> headers)
+            throws InterruptedException {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        frame.setBody(message);
+        
+        return publish(frame);
+    }
+    
+    /**
+     * Publishes a binary message with custom headers, blocking while the in-flight window is full.
+     * 
+     * @param destination the destination to send to
+     * @param body the message body
+     * @param headers additional headers
+     * @return a future completed when the server confirms the message
+     * @throws InterruptedException if interrupted while waiting for the window
+     */
+    public CompletableFuture<Void> publish(String destination, byte[] body, Map<String, String> headers)
+            throws InterruptedException {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        frame.setBody(body);
+        
+        return publish(frame);
+    }
+    
+    private CompletableFuture<Void> publish(StompFrame frame) throws InterruptedException {
+        window.acquire();
+        
+        CompletableFuture<Void> future;
+        try {
+            future = client.sendWithReceipt(frame);
+        } catch (RuntimeException e) {
+            window.release();
+            throw e;
+        }
+        
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                recordLatency(System.nanoTime() - frame.writtenNanos());
+            } else {
+                failedCount.increment();
+            }
+            window.release();
+        });
+        return future;
+    }
+    
+    private void recordLatency(long nanos) {
+        confirmedCount.increment();
+        totalLatencyNanos.add(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+    
+    /**
+     * Waits until every published message has been confirmed or has failed.
+     * 
+     * @param timeout the maximum time to wait
+     * @return true if no messages are in flight anymore, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitConfirms(Duration timeout) throws InterruptedException {
+        if (!window.tryAcquire(maxInFlight, timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        window.release(maxInFlight);
+        return true;
+    }
+    
+    /**
+     * Gets the maximum number of unconfirmed messages.
+     * 
+     * @return the in-flight window size
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+    
+    /**
+     * Gets the number of messages currently waiting for a receipt.
+     * 
+     * @return the number of unconfirmed messages
+     */
+    public int getInFlight() {
+        return maxInFlight - window.availablePermits();
+    }
+    
+    /**
+     * Gets the number of messages confirmed by the server.
+     * 
+     * @return the number of confirmed messages
+     */
+    public long getConfirmedCount() {
+        return confirmedCount.sum();
+    }
+    
+    /**
+     * Gets the number of messages that failed or timed out before being confirmed.
+     * 
+     * @return the number of failed messages
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+    
+    /**
+     * Gets the average time between sending a message and receiving its receipt.
+     * 
+     * @return the average confirm latency, or {@link Duration#ZERO} if nothing was confirmed yet
+     */
+    public Duration getAverageConfirmLatency() {
+        long count = confirmedCount.sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos.sum() / count);
+    }
+    
+    /**
+     * Gets the longest time between sending a message and receiving its receipt.
+     * 
+     * @return the maximum confirm latency, or {@link Duration#ZERO} if nothing was confirmed yet
+     */
+    public Duration getMaxConfirmLatency() {
+        return Duration.ofNanos(maxLatencyNanos.get());
+    }
+}
@@ -0,0 +1,106 @@
+package dev.pixelib.jstomp;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks frames that requested a receipt until the matching RECEIPT arrives.
+ *
+ * Pending receipts live in a {@link ConcurrentHashMap} keyed by receipt id, so
+ * registering and completing receipts from different threads does not contend
+ * on a single lock, and thousands of receipts can be in flight at once.
+ */
+final class StompReceiptTracker {
+
+    private final Map<String, CompletableFuture<Void>> pending;
+    private final AtomicLong receiptIdCounter;
+
+    StompReceiptTracker() {
+        this.pending = new ConcurrentHashMap<>();
+        this.receiptIdCounter = new AtomicLong(0);
+    }
+
+    /**
+     * Generates a new receipt id.
+     */
+    String nextReceiptId() {
+        return "rcpt-" + receiptIdCounter.incrementAndGet();
+    }
+
+    /**
+     * Registers a pending receipt.
+     * The future fails with a {@link java.util.concurrent.TimeoutException} if no
+     * receipt arrives in time.
+     *
+     * @param receiptId the receipt id
+     * @param timeoutMillis the timeout in milliseconds, 0 for none
+     * @return a future completed when the receipt arrives
+     */
+    CompletableFuture<Void> register(String receiptId, long timeoutMillis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        register(receiptId, future, timeoutMillis);
+        return future;
+    }
+
+    /**
+     * Registers a pending receipt for an existing future, once its frame is written.
+     * The future fails with a {@link java.util.concurrent.TimeoutException} if no
+     * receipt arrives in time.
+     *
+     * @param receiptId the receipt id
+     * @param future the future to complete when the receipt arrives
+     * @param timeoutMillis the timeout in milliseconds, 0 for none
+     */
+    void register(String receiptId, CompletableFuture<Void> future, long timeoutMillis) {
+        pending.put(receiptId, future);
+        future.whenComplete((result, error) -> pending.remove(receiptId, future));
+        if (timeoutMillis > 0) {
+            future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Completes the pending receipt with the given id.
+     *
+     * @param receiptId the receipt id from a RECEIPT frame
+     * @return true if a pending receipt was completed
+     */
+    boolean complete(String receiptId) {
+        CompletableFuture<Void> future = receiptId != null ? pending.remove(receiptId) : null;
+        return future != null && future.complete(null);
+    }
+
+    /**
+     * Fails the pending receipt with the given id.
+     *
+     * @param receiptId the receipt id
+     * @param error the error
+     * @return true if a pending receipt was failed
+     */
+    boolean fail(String receiptId, Throwable error) {
+        CompletableFuture<Void> future = receiptId != null ? pending.remove(receiptId) : null;
+        return future != null && future.completeExceptionally(error);
+    }
+
+    /**
+     * Fails every pending receipt, for example because the connection was lost.
+     * Only frames that were written are pending; buffered frames keep their futures.
+     *
+     * @param error the error
+     */
+    void failAll(Throwable error) {
+        for (String receiptId : pending.keySet()) {
+            fail(receiptId, error);
+        }
+    }
+
+    /**
+     * Gets the number of receipts still pending.
+     */
+    int size() {
+        return pending.size();
+    }
+}
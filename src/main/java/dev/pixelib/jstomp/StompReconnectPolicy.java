@@ -0,0 +1,216 @@
+package dev.pixelib.jstomp;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy for automatically reconnecting a {@link StompClient} after the connection is lost.
+ * 
+ * The delay before each attempt grows exponentially from the initial delay up to the
+ * maximum delay. A jitter factor randomizes part of every delay, so clients that lost
+ * their connection at the same moment (for example when a broker restarts) do not all
+ * come back at once.
+ * 
+ * Instances are immutable and created through {@link #builder()}.
+ */
+public final class StompReconnectPolicy {
+    
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final double multiplier;
+    private final double jitter;
+    private final int maxAttempts;
+    
+    private StompReconnectPolicy(Builder builder) {
+        this.initialDelay = builder.initialDelay;
+        this.maxDelay = builder.maxDelay;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.maxAttempts = builder.maxAttempts;
+    }
+    
+    /**
+     * Creates a new builder.
+     * 
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Gets the delay before the first attempt, before jitter is applied.
+     * 
+     * @return the initial delay
+     */
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+    
+    /**
+     * Gets the upper bound of the delay, before jitter is applied.
+     * 
+     * @return the maximum delay
+     */
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+    
+    /**
+     * Gets the factor the delay grows by after every failed attempt.
+     * 
+     * @return the multiplier
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+    
+    /**
+     * Gets the fraction of each delay that is randomized.
+     * 
+     * @return the jitter, between 0 and 1
+     */
+    public double getJitter() {
+        return jitter;
+    }
+    
+    /**
+     * Gets the maximum number of consecutive attempts.
+     * 
+     * @return the maximum number of attempts, 0 for unlimited
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    /**
+     * Checks whether another attempt is allowed.
+     * 
+     * @param attempt the attempt number, starting at 1
+     * @return true if the attempt may be made
+     */
+    boolean allowsAttempt(int attempt) {
+        return maxAttempts == 0 || attempt <= maxAttempts;
+    }
+    
+    /**
+     * Computes the delay before the given attempt.
+     * 
+     * @param attempt the attempt number, starting at 1
+     * @return the delay in milliseconds
+     */
+    long delayMillis(int attempt) {
+        double base = initialDelay.toMillis() * Math.pow(multiplier, Math.max(0, attempt - 1));
+        base = Math.min(base, maxDelay.toMillis());
+        double randomized = base * jitter * ThreadLocalRandom.current().nextDouble();
+        return Math.round(base * (1 - jitter) + randomized);
+    }
+    
+    @Override
+    public String toString() {
+        return "StompReconnectPolicy{" +
+                "initialDelay=" + initialDelay +
+                ", maxDelay=" + maxDelay +
+                ", multiplier=" + multiplier +
+                ", jitter=" + jitter +
+                ", maxAttempts=" + maxAttempts +
+                '}';
+    }
+    
+    /**
+     * Builder for {@link StompReconnectPolicy}.
+     */
+    public static final class Builder {
+        
+        private Duration initialDelay = Duration.ofSeconds(1);
+        private Duration maxDelay = Duration.ofSeconds(30);
+        private double multiplier = 2.0;
+        private double jitter = 1.0;
+        private int maxAttempts = 0;
+        
+        private Builder() {
+        }
+        
+        /**
+         * Sets the delay before the first attempt. Defaults to 1 second.
+         * 
+         * @param initialDelay the initial delay
+         * @return this builder
+         */
+        public Builder initialDelay(Duration initialDelay) {
+            if (initialDelay == null || initialDelay.isNegative()) {
+                throw new IllegalArgumentException("Initial delay cannot be null or negative");
+            }
+            this.initialDelay = initialDelay;
+            return this;
+        }
+        
+        /**
+         * Sets the upper bound of the delay. Defaults to 30 seconds.
+         * 
+         * @param maxDelay the maximum delay
+         * @return this builder
+         */
+        public Builder maxDelay(Duration maxDelay) {
+            if (maxDelay == null || maxDelay.isNegative()) {
+                throw new IllegalArgumentException("Maximum delay cannot be null or negative");
+            }
+            this.maxDelay = maxDelay;
+            return this;
+        }
+        
+        /**
+         * Sets the factor the delay grows by after every failed attempt. Defaults to 2.
+         * 
+         * @param multiplier the multiplier, at least 1
+         * @return this builder
+         */
+        public Builder multiplier(double multiplier) {
+            if (multiplier < 1) {
+                throw new IllegalArgumentException("Multiplier must be at least 1");
+            }
+            this.multiplier = multiplier;
+            return this;
+        }
+        
+        /**
+         * Sets the fraction of each delay that is randomized.
+         * 0 gives fixed delays, 1 (the default) picks each delay uniformly between zero and
+         * the computed delay.
+         * 
+         * @param jitter the jitter, between 0 and 1
+         * @return this builder
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("Jitter must be between 0 and 1");
+            }
+            this.jitter = jitter;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum number of consecutive attempts before giving up.
+         * Defaults to 0, which means unlimited.
+         * 
+         * @param maxAttempts the maximum number of attempts, 0 for unlimited
+         * @return this builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 0) {
+                throw new IllegalArgumentException("Maximum attempts cannot be negative");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+        
+        /**
+         * Builds the policy.
+         * 
+         * @return the policy
+         */
+        public StompReconnectPolicy build() {
+            return new StompReconnectPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dev.pixelib.jstomp;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer shared by all {@link StompClient} instances in the JVM.
+ *
+ * A single daemon thread runs every timed task (heart-beats and the like), so
+ * the number of threads does not grow with the number of clients. Tasks must be
+ * short and must never block; anything slow belongs on another executor.
+ */
+final class StompScheduler {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "jstomp-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private StompScheduler() {
+    }
+
+    /**
+     * Runs a task once after the given delay.
+     *
+     * @param task the task
+     * @param delayMillis the delay in milliseconds
+     * @return the future of the scheduled task, which can be used to cancel it
+     */
+    static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return SCHEDULER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a task repeatedly at the given period.
+     * Exceptions thrown by the task are swallowed so later runs are not suppressed.
+     *
+     * @param task the task
+     * @param periodMillis the period in milliseconds
+     * @return the future of the scheduled task, which can be used to cancel it
+     */
+    static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMillis) {
+        return SCHEDULER.scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Keep the task scheduled, the task itself is responsible for reporting errors
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+}
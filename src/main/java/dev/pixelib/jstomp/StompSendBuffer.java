@@ -0,0 +1,212 @@
+package dev.pixelib.jstomp;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Bounded buffer holding SEND frames while the client is not connected.
+ * 
+ * The buffer is limited both by number of messages and by the total size of the
+ * message bodies. Buffered frames are sent in order as soon as the client is
+ * connected again. The statistics exposed here can be used for monitoring.
+ */
+public final class StompSendBuffer {
+    
+    private final int maxMessages;
+    private final long maxBytes;
+    private final StompSendOverflowPolicy overflowPolicy;
+    private final Deque<Entry> frames;
+    private long bufferedBytes;
+    private long droppedCount;
+    private long flushedCount;
+    
+    /**
+     * Creates a new send buffer.
+     * 
+     * @param maxMessages the maximum number of buffered messages
+     * @param maxBytes the maximum total size of the buffered message bodies in bytes
+     * @param overflowPolicy the policy applied when the buffer is full
+     */
+    public StompSendBuffer(int maxMessages, long maxBytes, StompSendOverflowPolicy overflowPolicy) {
+        if (maxMessages < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Send buffer limits must be positive");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy cannot be null");
+        }
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.frames = new ArrayDeque<>();
+    }
+    
+    /**
+     * Gets the maximum number of buffered messages.
+     * 
+     * @return the message limit
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+    
+    /**
+     * Gets the maximum total size of the buffered message bodies.
+     * 
+     * @return the byte limit
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    /**
+     * Gets the policy applied when the buffer is full.
+     * 
+     * @return the overflow policy
+     */
+    public StompSendOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    /**
+     * Gets the number of messages currently buffered.
+     * 
+     * @return the number of buffered messages
+     */
+    public synchronized int getBufferedCount() {
+        return frames.size();
+    }
+    
+    /**
+     * Gets the total size of the message bodies currently buffered.
+     * 
+     * @return the number of buffered bytes
+     */
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+    
+    /**
+     * Gets the number of messages that were discarded or rejected because the buffer was full.
+     * 
+     * @return the number of dropped messages
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+    
+    /**
+     * Gets the number of buffered messages that have been sent after reconnecting.
+     * 
+     * @return the number of flushed messages
+     */
+    public synchronized long getFlushedCount() {
+        return flushedCount;
+    }
+    
+    /**
+     * Adds a frame, applying the overflow policy when the buffer is full.
+     * Must be called while holding the lock of this buffer.
+     * 
+     * @param frame the frame
+     * @throws StompException if the buffer is full and the policy is {@link StompSendOverflowPolicy#REJECT}
+     */
+    void add(StompFrame frame) {
+        long size = frame.bodyArray() != null ? frame.bodyLength() : StompFrame.utf8Length(frame.getBody());
+        
+        if (size > maxBytes) {
+            droppedCount++;
+            if (overflowPolicy == StompSendOverflowPolicy.REJECT) {
+                throw new StompException("Message of " + size + " bytes exceeds the send buffer size of " + maxBytes + " bytes");
+            }
+            failReceipt(frame);
+            return;
+        }
+        
+        while (frames.size() >= maxMessages || bufferedBytes + size > maxBytes) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    Entry oldest = frames.removeFirst();
+                    bufferedBytes -= oldest.size;
+                    droppedCount++;
+                    failReceipt(oldest.frame);
+                    break;
+                case DROP_NEWEST:
+                    droppedCount++;
+                    failReceipt(frame);
+                    return;
+                case REJECT:
+                default:
+                    droppedCount++;
+                    throw new StompException("Send buffer is full (" + frames.size() + " messages, "
+                            + bufferedBytes + " bytes)");
+            }
+        }
+        
+        frames.addLast(new Entry(frame, size));
+        bufferedBytes += size;
+    }
+    
+    /**
+     * Removes a buffered frame that should no longer be sent.
+     * Must be called while holding the lock of this buffer.
+     * 
+     * @param frame the frame
+     */
+    void remove(StompFrame frame) {
+        Iterator<Entry> iterator = frames.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.frame == frame) {
+                iterator.remove();
+                bufferedBytes -= entry.size;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Removes all buffered frames and hands them to the sender in order.
+     * Must be called while holding the lock of this buffer.
+     * 
+     * @param sender sends a single frame
+     */
+    void flush(Consumer<StompFrame> sender) {
+        Entry entry;
+        while ((entry = frames.pollFirst()) != null) {
+            bufferedBytes -= entry.size;
+            sender.accept(entry.frame);
+            flushedCount++;
+        }
+    }
+    
+    private static void failReceipt(StompFrame frame) {
+        CompletableFuture<Void> receipt = frame.receipt();
+        if (receipt != null) {
+            receipt.completeExceptionally(new StompException("Message was dropped from the full send buffer"));
+        }
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "StompSendBuffer{" +
+                "bufferedCount=" + frames.size() +
+                ", bufferedBytes=" + bufferedBytes +
+                ", droppedCount=" + droppedCount +
+                ", flushedCount=" + flushedCount +
+                '}';
+    }
+    
+    private static final class Entry {
+        
+        private final StompFrame frame;
+        private final long size;
+        
+        private Entry(StompFrame frame, long size) {
+            this.frame = frame;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Policy applied when the outbound send buffer is full.
+ */
+public enum StompSendOverflowPolicy {
+    
+    /**
+     * Discard the oldest buffered messages to make room for the new one.
+     */
+    DROP_OLDEST,
+    
+    /**
+     * Discard the new message.
+     */
+    DROP_NEWEST,
+    
+    /**
+     * Throw a {@link StompException} to the caller.
+     */
+    REJECT
+}
@@ -0,0 +1,17 @@
+package dev.pixelib.jstomp;
+
+/**
+ * Exception reported when the server answers with an ERROR frame.
+ * Unlike a receipt timeout or a lost connection, it means the server did not process the frame.
+ */
+public class StompServerErrorException extends StompException {
+    
+    /**
+     * Creates a new exception for an ERROR frame with the given body.
+     * 
+     * @param errorMessage the body of the ERROR frame
+     */
+    public StompServerErrorException(String errorMessage) {
+        super("Server error: " + errorMessage);
+    }
+}
@@ -0,0 +1,463 @@
+package dev.pixelib.jstomp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental STOMP frame decoder for a stream of WebSocket messages.
+ *
+ * Transport messages and STOMP frames do not have to line up: a message may
+ * hold several frames, and a frame may be split across several messages. The
+ * decoder emits every complete frame and keeps the bytes of an incomplete frame
+ * in a growable buffer until the rest arrives. Frames must be NUL-terminated.
+ *
+ * In the common case where a message holds only complete frames, nothing is
+ * buffered and the frames are decoded straight from the message: text messages
+ * from their string, binary messages from their bytes. A frame larger than the
+ * maximum frame size is rejected as soon as that becomes known, and no more
+ * than the maximum frame size is ever buffered, so a misbehaving peer cannot
+ * make the buffer grow without bounds.
+ *
+ * Values of headers that repeat across frames, such as destinations and
+ * subscription ids, are cached for the lifetime of the decoder.
+ *
+ * In lazy mode, MESSAGE frames are only scanned for their subscription; their
+ * other headers and body are decoded when they are first read. Such frames
+ * refer to the received bytes, so a frame taken from the reassembly buffer is
+ * copied first.
+ *
+ * Instances are not thread-safe; use one decoder per connection.
+ */
+final class StompStreamDecoder {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * Buffers larger than this are released once they are drained, so a single
+     * large frame does not pin its memory for the lifetime of the connection.
+     */
+    private static final int RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int VALUE_CACHE_CAPACITY = 64;
+
+    private static final String CONTENT_LENGTH_PREFIX = StompFrame.CONTENT_LENGTH + ":";
+    private static final byte[] CONTENT_LENGTH = CONTENT_LENGTH_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private final int maxFrameSize;
+    private final boolean lazyMessages;
+    private final StompHeaderValueCache valueCache;
+    private byte[] buffer;
+    private int length;
+
+    /**
+     * Creates a new stream decoder.
+     *
+     * @param maxFrameSize the maximum size of a single frame in bytes
+     */
+    StompStreamDecoder(int maxFrameSize) {
+        this(maxFrameSize, false);
+    }
+
+    /**
+     * Creates a new stream decoder.
+     *
+     * @param maxFrameSize the maximum size of a single frame in bytes
+     * @param lazyMessages whether to defer decoding the headers and body of MESSAGE frames
+     */
+    StompStreamDecoder(int maxFrameSize, boolean lazyMessages) {
+        if (maxFrameSize < 1) {
+            throw new IllegalArgumentException("Maximum frame size must be positive");
+        }
+        this.maxFrameSize = maxFrameSize;
+        this.lazyMessages = lazyMessages;
+        this.valueCache = new StompHeaderValueCache(VALUE_CACHE_CAPACITY);
+        this.buffer = EMPTY;
+    }
+
+    /**
+     * Decodes the complete frames available after receiving a text message.
+     * Bodies of frames received as text are decoded as text.
+     *
+     * @param text the received text
+     * @return the completed frames, in order, possibly none
+     * @throws IllegalArgumentException if a frame is invalid
+     * @throws StompFrameTooLargeException if a frame exceeds the maximum frame size
+     */
+    List<StompFrame> decode(String text) {
+        if (length > 0 || lazyMessages) {
+            // Reassembly and lazy frames work on the UTF-8 bytes
+            return decodeText(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<StompFrame> frames = new ArrayList<>(1);
+        int limit = text.length();
+        int pos = 0;
+        try {
+            while ((pos = StompFrameDecoder.skipEols(text, pos, limit)) < limit) {
+                int frameEnd = findFrameEnd(text, pos, limit);
+                if (frameEnd < 0) {
+                    checkFrameSize(text, pos, limit);
+                    break;
+                }
+                checkFrameSize(text, pos, frameEnd);
+                frames.add(StompFrameDecoder.decode(text, pos, frameEnd, valueCache));
+                pos = frameEnd;
+            }
+        } catch (RuntimeException e) {
+            reset();
+            throw e;
+        }
+
+        // Keep the incomplete frame, if any
+        if (pos < limit) {
+            byte[] rest = text.substring(pos).getBytes(StandardCharsets.UTF_8);
+            append(rest, 0, rest.length);
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes the complete frames available after receiving a text message,
+     * already encoded as UTF-8 by the caller.
+     * The array is not copied if it holds complete frames only, so it must not be modified afterwards.
+     *
+     * @param bytes the received text as UTF-8
+     * @return the completed frames, in order, possibly none
+     * @throws IllegalArgumentException if a frame is invalid
+     * @throws StompFrameTooLargeException if a frame exceeds the maximum frame size
+     */
+    List<StompFrame> decodeText(byte[] bytes) {
+        return decode(bytes, 0, bytes.length, true);
+    }
+
+    /**
+     * Decodes the complete frames available after receiving a binary message.
+     * The array is not copied if it holds complete frames only, so it must not be modified afterwards.
+     *
+     * @param bytes the received bytes
+     * @return the completed frames, in order, possibly none
+     * @throws IllegalArgumentException if a frame is invalid
+     * @throws StompFrameTooLargeException if a frame exceeds the maximum frame size
+     */
+    List<StompFrame> decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length, false);
+    }
+
+    /**
+     * Checks whether part of a frame is waiting for more data.
+     *
+     * @return true if bytes of an incomplete frame are buffered
+     */
+    boolean hasPartialFrame() {
+        return length > 0;
+    }
+
+    /**
+     * Discards any buffered partial frame.
+     */
+    void reset() {
+        length = 0;
+        if (buffer.length > RETAINED_CAPACITY) {
+            buffer = EMPTY;
+        }
+    }
+
+    private List<StompFrame> decode(byte[] data, int offset, int count, boolean text) {
+        List<StompFrame> frames = new ArrayList<>(1);
+        int pos = offset;
+        int limit = offset + count;
+        try {
+            if (length > 0) {
+                // Complete the buffered frame first, appending no more than the frame size limit allows
+                int taken = Math.min(count, maxFrameSize - length);
+                append(data, offset, taken);
+                int end = decodeFrames(buffer, 0, length, text, frames);
+                if (end < length && taken < count) {
+                    if (end == 0) {
+                        throw frameTooLarge();
+                    }
+                    // A new frame started in the appended bytes; decode it from the message instead
+                    pos = offset + taken - (length - end);
+                    reset();
+                } else {
+                    compact(end);
+                    if (taken == count) {
+                        return frames;
+                    }
+                    pos = offset + taken;
+                }
+            }
+            pos = decodeFrames(data, pos, limit, text, frames);
+        } catch (RuntimeException e) {
+            reset();
+            throw e;
+        }
+
+        // Keep the incomplete frame, if any
+        if (pos < limit) {
+            append(data, pos, limit - pos);
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes the complete frames in the given region.
+     *
+     * @return the index of the incomplete frame following them, or {@code limit}
+     */
+    private int decodeFrames(byte[] input, int pos, int limit, boolean text, List<StompFrame> frames) {
+        while ((pos = StompFrameDecoder.skipEols(input, pos, limit)) < limit) {
+            int frameEnd = findFrameEnd(input, pos, limit);
+            if (frameEnd < 0) {
+                checkFrameSize(limit - pos);
+                break;
+            }
+            checkFrameSize(frameEnd - pos);
+
+            if (lazyMessages) {
+                // Lazy frames refer to their input, which must not be the reused buffer
+                frames.add(input == buffer
+                        ? StompFrameDecoder.decodeLazy(Arrays.copyOfRange(input, pos, frameEnd), 0,
+                                frameEnd - pos, text, valueCache)
+                        : StompFrameDecoder.decodeLazy(input, pos, frameEnd - pos, text, valueCache));
+            } else if (input == buffer && !text) {
+                // Binary bodies refer to their input, which must not be the reused buffer
+                frames.add(StompFrameDecoder.decode(Arrays.copyOfRange(input, pos, frameEnd), 0,
+                        frameEnd - pos, false, valueCache));
+            } else {
+                frames.add(StompFrameDecoder.decode(input, pos, frameEnd - pos, text, valueCache));
+            }
+            pos = frameEnd;
+        }
+        return pos;
+    }
+
+    /**
+     * Drops the decoded bytes before {@code end} from the buffer.
+     */
+    private void compact(int end) {
+        System.arraycopy(buffer, end, buffer, 0, length - end);
+        length -= end;
+        if (length == 0) {
+            reset();
+        }
+    }
+
+    /**
+     * Finds the end of the frame starting at {@code start}.
+     *
+     * @return the index after the NUL terminating the frame, or -1 if the frame is incomplete
+     */
+    private int findFrameEnd(byte[] input, int start, int limit) {
+        int contentLength = -1;
+        boolean contentLengthSeen = false;
+        int pos = start;
+
+        while (true) {
+            int lineEnd = pos;
+            while (lineEnd < limit && input[lineEnd] != '\n' && input[lineEnd] != 0) {
+                lineEnd++;
+            }
+            if (lineEnd == limit) {
+                return -1;
+            }
+            if (input[lineEnd] == 0) {
+                return lineEnd + 1;
+            }
+
+            int contentEnd = lineEnd > pos && input[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            if (pos > start && contentEnd == pos) {
+                // Empty line: the body follows
+                int bodyStart = lineEnd + 1;
+                if (contentLength >= 0) {
+                    long nul = (long) bodyStart + contentLength;
+                    return nul < limit ? (int) nul + 1 : -1;
+                }
+                for (int i = bodyStart; i < limit; i++) {
+                    if (input[i] == 0) {
+                        return i + 1;
+                    }
+                }
+                return -1;
+            }
+
+            // Like the frame decoder, only the first of repeated content-length headers counts
+            if (!contentLengthSeen && pos > start && startsWith(input, pos, contentEnd, CONTENT_LENGTH)) {
+                contentLength = parseContentLength(input, pos + CONTENT_LENGTH.length, contentEnd);
+                contentLengthSeen = true;
+            }
+            pos = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Finds the end of the frame starting at {@code start} in received text.
+     *
+     * @return the index after the NUL terminating the frame, or -1 if the frame is incomplete
+     */
+    private int findFrameEnd(String input, int start, int limit) {
+        int contentLength = -1;
+        boolean contentLengthSeen = false;
+        int pos = start;
+
+        while (true) {
+            int lineEnd = pos;
+            while (lineEnd < limit && input.charAt(lineEnd) != '\n' && input.charAt(lineEnd) != 0) {
+                lineEnd++;
+            }
+            if (lineEnd == limit) {
+                return -1;
+            }
+            if (input.charAt(lineEnd) == 0) {
+                return lineEnd + 1;
+            }
+
+            int contentEnd = lineEnd > pos && input.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (pos > start && contentEnd == pos) {
+                // Empty line: the body follows
+                int bodyStart = lineEnd + 1;
+                int nul = contentLength >= 0
+                        ? charIndexAfterOctets(input, bodyStart, limit, contentLength)
+                        : input.indexOf('\0', bodyStart);
+                return nul >= 0 && nul < limit ? nul + 1 : -1;
+            }
+
+            if (!contentLengthSeen && pos > start && contentEnd - pos >= CONTENT_LENGTH_PREFIX.length()
+                    && input.startsWith(CONTENT_LENGTH_PREFIX, pos)) {
+                contentLength = parseContentLength(input, pos + CONTENT_LENGTH_PREFIX.length(), contentEnd);
+                contentLengthSeen = true;
+            }
+            pos = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Finds the index of the character that starts after {@code octets} UTF-8 bytes,
+     * or -1 if the text ends first.
+     */
+    private static int charIndexAfterOctets(String input, int from, int limit, int octets) {
+        int i = from;
+        int count = 0;
+        while (count < octets) {
+            if (i == limit) {
+                return -1;
+            }
+            char c = input.charAt(i++);
+            if (c < 0x80) {
+                count++;
+            } else if (c < 0x800) {
+                count += 2;
+            } else if (Character.isHighSurrogate(c) && i < limit && Character.isLowSurrogate(input.charAt(i))) {
+                count += 4;
+                i++;
+            } else {
+                count += 3;
+            }
+        }
+        return i;
+    }
+
+    private int parseContentLength(String input, int start, int end) {
+        while (start < end && input.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return -1;
+        }
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = input.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+            if (value > maxFrameSize) {
+                throw frameTooLarge();
+            }
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a content-length value, returning -1 if it is not a number so the
+     * frame decoder can report it. Values over the frame size limit are rejected.
+     */
+    private int parseContentLength(byte[] input, int start, int end) {
+        while (start < end && input[start] == ' ') {
+            start++;
+        }
+        while (end > start && input[end - 1] == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return -1;
+        }
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = input[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+            if (value > maxFrameSize) {
+                throw frameTooLarge();
+            }
+        }
+        return (int) value;
+    }
+
+    private static boolean startsWith(byte[] input, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (input[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkFrameSize(int size) {
+        if (size > maxFrameSize) {
+            throw frameTooLarge();
+        }
+    }
+
+    /**
+     * Checks the UTF-8 size of a frame received as text. Every character takes at
+     * least one and at most three bytes, so the bytes are only counted when needed.
+     */
+    private void checkFrameSize(String input, int start, int end) {
+        int chars = end - start;
+        checkFrameSize(chars);
+        if (chars > maxFrameSize / 3) {
+            checkFrameSize(StompFrame.utf8Length(input, start, end));
+        }
+    }
+
+    private StompFrameTooLargeException frameTooLarge() {
+        return new StompFrameTooLargeException(maxFrameSize);
+    }
+
+    private void append(byte[] data, int offset, int count) {
+        int required = length + count;
+        if (required > buffer.length) {
+            int capacity = Math.max(buffer.length, INITIAL_CAPACITY);
+            while (capacity < required) {
+                capacity = capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE - 8 : capacity * 2;
+            }
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+        System.arraycopy(data, offset, buffer, length, count);
+        length = required;
+    }
+}
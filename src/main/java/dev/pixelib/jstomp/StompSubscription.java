@@ -1,5 +1,9 @@
 package dev.pixelib.jstomp;
 
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
 /**
  * Represents a STOMP subscription.
  */
@@ -8,6 +12,9 @@ public class StompSubscription {
     private final String id;
     private final String destination;
     private final StompMessageHandler messageHandler;
+    private final StompSubscriptionOptions options;
+    private final StompDispatchQueue dispatchQueue;
+    private final StompAcknowledger acknowledger;
     
     /**
      * Creates a new STOMP subscription.
@@ -17,9 +24,69 @@ public class StompSubscription {
      * @param messageHandler the message handler
      */
     public StompSubscription(String id, String destination, StompMessageHandler messageHandler) {
+        this(id, destination, messageHandler, StompSubscriptionOptions.defaults(), Runnable::run, error -> {
+            throw new StompException("Error in message handler", error);
+        }, frame -> { });
+    }
+    
+    /**
+     * Creates a new STOMP subscription whose messages are delivered on the given executor.
+     * 
+     * @param id the subscription ID
+     * @param destination the destination
+     * @param messageHandler the message handler
+     * @param options the subscription options
+     * @param dispatchExecutor the executor delivering messages to the handler
+     * @param errorHandler receives exceptions thrown by the message handler
+     * @param frameSender sends the ACK and NACK frames of this subscription
+     */
+    StompSubscription(String id, String destination, StompMessageHandler messageHandler,
+                      StompSubscriptionOptions options, Executor dispatchExecutor,
+                      Consumer<Throwable> errorHandler, Consumer<StompFrame> frameSender) {
+        this(id, destination, messageHandler, options, dispatchExecutor, errorHandler, frameSender,
+                message -> message);
+    }
+    
+    /**
+     * Creates a new STOMP subscription whose messages are decompressed and delivered on the given executor.
+     * 
+     * @param id the subscription ID
+     * @param destination the destination
+     * @param messageHandler the message handler
+     * @param options the subscription options
+     * @param dispatchExecutor the executor delivering messages to the handler
+     * @param errorHandler receives exceptions thrown by the message handler
+     * @param frameSender sends the ACK and NACK frames of this subscription
+     * @param decompressor decompresses each message before it is handed to the handler
+     */
+    StompSubscription(String id, String destination, StompMessageHandler messageHandler,
+                      StompSubscriptionOptions options, Executor dispatchExecutor,
+                      Consumer<Throwable> errorHandler, Consumer<StompFrame> frameSender,
+                      MessageDecompressor decompressor) {
         this.id = id;
         this.destination = destination;
         this.messageHandler = messageHandler;
+        this.options = options;
+        StompAcknowledger acknowledger = options.getAckMode() == StompAckMode.AUTO ? null
+                : new StompAcknowledger(options.getAckMode(), options.getAckBatchSize(),
+                        options.getAckBatchInterval().toMillis(), frameSender);
+        this.acknowledger = acknowledger;
+        // A dropped message is rejected, so the server can redeliver it instead of holding it in the prefetch window
+        Consumer<StompMessage> dropHandler = acknowledger == null ? message -> { }
+                : message -> acknowledger.reject(message.getAckId(), message.getAckGeneration());
+        StompMessageHandler decompressingHandler = message -> {
+            StompMessage decompressed;
+            try {
+                decompressed = decompressor.decompress(message);
+            } catch (IOException e) {
+                // The message can never be handled, so it must not keep a slot of the prefetch window
+                dropHandler.accept(message);
+                throw new StompException("Failed to decompress message body", e);
+            }
+            messageHandler.onMessage(decompressed);
+        };
+        this.dispatchQueue = new StompDispatchQueue(dispatchExecutor, decompressingHandler, errorHandler,
+                dropHandler, options);
     }
     
     /**
@@ -49,6 +116,112 @@ public class StompSubscription {
         return messageHandler;
     }
     
+    /**
+     * Gets the subscription options.
+     * 
+     * @return the options
+     */
+    public StompSubscriptionOptions getOptions() {
+        return options;
+    }
+    
+    /**
+     * Gets the number of messages queued for the handler since the subscription was created.
+     * 
+     * @return the number of queued messages
+     */
+    public long getQueuedCount() {
+        return dispatchQueue.getQueuedCount();
+    }
+    
+    /**
+     * Gets the number of messages dropped because the queue was full.
+     * 
+     * @return the number of dropped messages
+     */
+    public long getDroppedCount() {
+        return dispatchQueue.getDroppedCount();
+    }
+    
+    /**
+     * Gets the number of messages currently waiting to be handled.
+     * 
+     * @return the current queue size
+     */
+    public int getQueueSize() {
+        return dispatchQueue.size();
+    }
+    
+    /**
+     * Gets the number of delivered messages that have not been acknowledged yet.
+     * Always 0 in {@link StompAckMode#AUTO} mode.
+     * 
+     * @return the number of unacknowledged messages
+     */
+    public int getUnackedCount() {
+        return acknowledger != null ? acknowledger.getUnackedCount() : 0;
+    }
+    
+    /**
+     * Gets the acknowledger of this subscription.
+     * 
+     * @return the acknowledger, or null in {@link StompAckMode#AUTO} mode
+     */
+    StompAcknowledger acknowledger() {
+        return acknowledger;
+    }
+    
+    /**
+     * Queues a message for delivery to the message handler.
+     * Messages of one subscription are delivered one at a time, in order.
+     * With client acknowledgement, messages dropped because the queue is full are rejected with a NACK.
+     * 
+     * @return false if the queue overflowed and the subscription must be failed
+     */
+    boolean dispatch(StompMessage message) {
+        if (acknowledger != null) {
+            message.setAckGeneration(acknowledger.track(message.getAckId()));
+        }
+        return dispatchQueue.enqueue(message);
+    }
+    
+    /**
+     * Forgets the deliveries of a lost connection. With client acknowledgement the server
+     * redelivers them, so queued messages are discarded and later acknowledgements of
+     * messages already handed out are dropped.
+     */
+    void connectionLost() {
+        if (acknowledger != null) {
+            dispatchQueue.clear();
+            acknowledger.discard();
+        }
+    }
+    
+    /**
+     * Stops delivery and discards messages that have not been delivered yet.
+     */
+    void close() {
+        dispatchQueue.close();
+        if (acknowledger != null) {
+            acknowledger.discard();
+        }
+    }
+    
+    /**
+     * Decompresses a received message on the dispatch executor, off the WebSocket reader thread.
+     */
+    @FunctionalInterface
+    interface MessageDecompressor {
+        
+        /**
+         * Decompresses a message.
+         * 
+         * @return the message to hand to the handler
+         * @throws IOException if the body cannot be decompressed
+         */
+        StompMessage decompress(StompMessage message) throws IOException;
+    }
+    
     @Override
     public String toString() {
         return "StompSubscription{" +
@@ -0,0 +1,244 @@
+package dev.pixelib.jstomp;
+
+import java.time.Duration;
+
+/**
+ * Options for a STOMP subscription.
+ * 
+ * Instances are immutable and created through {@link #builder()}.
+ */
+public final class StompSubscriptionOptions {
+    
+    private static final StompSubscriptionOptions DEFAULTS = builder().build();
+    
+    private final int queueCapacity;
+    private final StompOverflowPolicy overflowPolicy;
+    private final StompAckMode ackMode;
+    private final int ackBatchSize;
+    private final Duration ackBatchInterval;
+    private final int prefetch;
+    
+    private StompSubscriptionOptions(Builder builder) {
+        // Only a client ack mode bounds the messages in flight, so only then can the queue be capped
+        this.queueCapacity = builder.prefetch > 0 && builder.ackMode != StompAckMode.AUTO
+                ? Math.min(builder.queueCapacity, builder.prefetch)
+                : builder.queueCapacity;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.ackMode = builder.ackMode;
+        this.ackBatchSize = builder.ackBatchSize;
+        this.ackBatchInterval = builder.ackBatchInterval;
+        this.prefetch = builder.prefetch;
+    }
+    
+    /**
+     * Gets the default options: an unbounded queue and automatic acknowledgement.
+     * 
+     * @return the default options
+     */
+    public static StompSubscriptionOptions defaults() {
+        return DEFAULTS;
+    }
+    
+    /**
+     * Creates a new builder.
+     * 
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Gets the maximum number of messages queued for the handler.
+     * When a prefetch window is set with a client ack mode, the capacity never exceeds it.
+     * 
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    /**
+     * Gets the policy applied when the queue is full.
+     * 
+     * @return the overflow policy
+     */
+    public StompOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    /**
+     * Gets the acknowledgement mode.
+     * 
+     * @return the ack mode
+     */
+    public StompAckMode getAckMode() {
+        return ackMode;
+    }
+    
+    /**
+     * Gets the number of messages acknowledged per cumulative ACK in {@link StompAckMode#CLIENT} mode.
+     * 
+     * @return the ack batch size
+     */
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+    
+    /**
+     * Gets the maximum time a cumulative ACK is delayed in {@link StompAckMode#CLIENT} mode.
+     * 
+     * @return the ack batch interval, {@link Duration#ZERO} for no limit
+     */
+    public Duration getAckBatchInterval() {
+        return ackBatchInterval;
+    }
+    
+    /**
+     * Gets the maximum number of unacknowledged messages the server is asked to send.
+     * 
+     * @return the prefetch window, 0 if the server default applies
+     */
+    public int getPrefetch() {
+        return prefetch;
+    }
+    
+    @Override
+    public String toString() {
+        return "StompSubscriptionOptions{" +
+                "queueCapacity=" + queueCapacity +
+                ", overflowPolicy=" + overflowPolicy +
+                ", ackMode=" + ackMode +
+                ", ackBatchSize=" + ackBatchSize +
+                ", ackBatchInterval=" + ackBatchInterval +
+                ", prefetch=" + prefetch +
+                '}';
+    }
+    
+    /**
+     * Builder for {@link StompSubscriptionOptions}.
+     */
+    public static final class Builder {
+        
+        private int queueCapacity = Integer.MAX_VALUE;
+        private StompOverflowPolicy overflowPolicy = StompOverflowPolicy.BLOCK_READER;
+        private StompAckMode ackMode = StompAckMode.AUTO;
+        private int ackBatchSize = 1;
+        private Duration ackBatchInterval = Duration.ZERO;
+        private int prefetch;
+        
+        private Builder() {
+        }
+        
+        /**
+         * Sets the maximum number of messages queued for the handler.
+         * Defaults to unbounded.
+         * 
+         * @param queueCapacity the queue capacity, at least 1
+         * @return this builder
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("Queue capacity must be at least 1");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+        
+        /**
+         * Sets the policy applied when the queue is full.
+         * Defaults to {@link StompOverflowPolicy#BLOCK_READER}.
+         * 
+         * @param overflowPolicy the overflow policy
+         * @return this builder
+         */
+        public Builder overflowPolicy(StompOverflowPolicy overflowPolicy) {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("Overflow policy cannot be null");
+            }
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+        
+        /**
+         * Sets the acknowledgement mode.
+         * Defaults to {@link StompAckMode#AUTO}.
+         * 
+         * @param ackMode the ack mode
+         * @return this builder
+         */
+        public Builder ackMode(StompAckMode ackMode) {
+            if (ackMode == null) {
+                throw new IllegalArgumentException("Ack mode cannot be null");
+            }
+            this.ackMode = ackMode;
+            return this;
+        }
+        
+        /**
+         * Sets how many acknowledged messages are covered by one cumulative ACK frame
+         * in {@link StompAckMode#CLIENT} mode. Defaults to 1, which sends an ACK for every
+         * acknowledged message. When larger, combine it with an
+         * {@link #ackBatchInterval(Duration) interval} so the last messages of a burst
+         * are acknowledged as well, and keep it below the broker's prefetch limit.
+         * 
+         * @param ackBatchSize the batch size, at least 1
+         * @return this builder
+         */
+        public Builder ackBatchSize(int ackBatchSize) {
+            if (ackBatchSize < 1) {
+                throw new IllegalArgumentException("Ack batch size must be at least 1");
+            }
+            this.ackBatchSize = ackBatchSize;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum time a cumulative ACK is delayed in {@link StompAckMode#CLIENT} mode
+         * while waiting for the batch to fill up. Defaults to no limit.
+         * 
+         * @param ackBatchInterval the interval, or {@link Duration#ZERO} for no limit
+         * @return this builder
+         */
+        public Builder ackBatchInterval(Duration ackBatchInterval) {
+            if (ackBatchInterval == null || ackBatchInterval.isNegative()) {
+                throw new IllegalArgumentException("Ack batch interval cannot be negative");
+            }
+            this.ackBatchInterval = ackBatchInterval;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum number of unacknowledged messages the server may send to this
+         * subscription, using the {@code prefetch-count} header understood by RabbitMQ and the
+         * {@code activemq.prefetchSize} header understood by ActiveMQ. With a client
+         * {@link #ackMode(StompAckMode) ack mode} the queue capacity is limited to the same
+         * window, so no more than this many messages are held in memory.
+         * Defaults to 0, which leaves the server default in place.
+         * 
+         * @param prefetch the prefetch window, or 0 for the server default
+         * @return this builder
+         */
+        public Builder prefetch(int prefetch) {
+            if (prefetch < 0) {
+                throw new IllegalArgumentException("Prefetch cannot be negative");
+            }
+            this.prefetch = prefetch;
+            return this;
+        }
+        
+        /**
+         * Builds the options.
+         * 
+         * @return the options
+         * @throws IllegalArgumentException if the ack batch size exceeds the prefetch window,
+         *         which would stall the subscription
+         */
+        public StompSubscriptionOptions build() {
+            if (prefetch > 0 && ackBatchSize > prefetch) {
+                throw new IllegalArgumentException("Ack batch size cannot exceed the prefetch window");
+            }
+            return new StompSubscriptionOptions(this);
+        }
+    }
+}
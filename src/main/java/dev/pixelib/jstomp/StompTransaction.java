@@ -0,0 +1,189 @@
+package dev.pixelib.jstomp;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A STOMP transaction grouping SEND, ACK and NACK frames into one atomic unit.
+ * 
+ * Frames sent within the transaction carry its {@code transaction} header and are
+ * only processed by the server once the transaction is committed. Sends are
+ * pipelined: nothing waits for the server until {@link #commit()}, whose future
+ * completes when the server confirms the COMMIT with a receipt. Messages acknowledged
+ * within the transaction can be acknowledged again once it is aborted, or once the
+ * server rejects the COMMIT with an ERROR. If the outcome of the COMMIT is unknown,
+ * because the receipt timed out or the connection was lost, the messages stay settled:
+ * acknowledging a message the server already settled is an error, while one it still
+ * considers unacknowledged is redelivered once the connection closes.
+ * 
+ * Transactions are started with {@link StompClient#begin()} and cannot survive a
+ * reconnect; the server aborts them when the connection is lost.
+ */
+public final class StompTransaction {
+    
+    private final StompClient client;
+    private final String id;
+    private final Set<StompAcknowledger> acknowledgers = ConcurrentHashMap.newKeySet();
+    private volatile boolean completed;
+    
+    StompTransaction(StompClient client, String id) {
+        this.client = client;
+        this.id = id;
+    }
+    
+    /**
+     * Gets the transaction ID.
+     * 
+     * @return the ID
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * Sends a message as part of this transaction.
+     * 
+     * @param destination the destination to send to
+     * @param message the message body
+     */
+    public void send(String destination, String message) {
+        send(destination, message, Map.of());
+    }
+    
+    /**
+     * Sends a message with custom headers as part of this transaction.
+     * 
+     * @param destination the destination to send to
+     * @param message the message body
+     * @param headers additional headers
+     */
+    public void send(String destination, String message, Map<String, String> headers) {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        frame.setBody(message);
+        
+        sendFrame(frame);
+    }
+    
+    /**
+     * Sends a binary message with custom headers as part of this transaction.
+     * 
+     * @param destination the destination to send to
+     * @param body the message body
+     * @param headers additional headers
+     */
+    public void send(String destination, byte[] body, Map<String, String> headers) {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", destination);
+        headers.forEach(frame::addHeader);
+        frame.setBody(body);
+        
+        sendFrame(frame);
+    }
+    
+    /**
+     * Acknowledges a message as part of this transaction.
+     * 
+     * @param message the message, received on a subscription with client acknowledgement
+     */
+    public void ack(StompMessage message) {
+        ensureActive();
+        acknowledgers.add(message.acknowledger());
+        message.ack(id);
+    }
+    
+    /**
+     * Rejects a message as part of this transaction.
+     * 
+     * @param message the message, received on a subscription with client acknowledgement
+     */
+    public void nack(StompMessage message) {
+        ensureActive();
+        acknowledgers.add(message.acknowledger());
+        message.nack(id);
+    }
+    
+    /**
+     * Commits the transaction.
+     * 
+     * @return a future completed when the server confirms the commit
+     */
+    public CompletableFuture<Void> commit() {
+        return complete(StompCommand.COMMIT);
+    }
+    
+    /**
+     * Aborts the transaction, discarding every frame sent within it.
+     * 
+     * @return a future completed when the server confirms the abort
+     */
+    public CompletableFuture<Void> abort() {
+        return complete(StompCommand.ABORT);
+    }
+    
+    /**
+     * Checks whether the transaction was committed or aborted.
+     * 
+     * @return true if no more frames can be sent within this transaction
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+    
+    private CompletableFuture<Void> complete(StompCommand command) {
+        synchronized (this) {
+            ensureActive();
+            completed = true;
+        }
+        
+        StompFrame frame = new StompFrame(command);
+        frame.addHeader("transaction", id);
+        CompletableFuture<Void> future = client.sendWithReceipt(frame, client::sendTransactionFrame);
+        if (command == StompCommand.ABORT) {
+            acknowledgers.forEach(acknowledger -> acknowledger.abort(id));
+        } else {
+            future.whenComplete((result, error) -> commitCompleted(error));
+        }
+        return future;
+    }
+    
+    /**
+     * Settles the acknowledgements made within this transaction once the COMMIT completed.
+     * Only an ERROR from the server tracks them again; see the class documentation.
+     * 
+     * @param error the error the COMMIT failed with, or null if it was confirmed
+     */
+    void commitCompleted(Throwable error) {
+        boolean rejected = error instanceof StompServerErrorException;
+        acknowledgers.forEach(acknowledger -> {
+            if (rejected) {
+                acknowledger.abort(id);
+            } else {
+                acknowledger.commit(id);
+            }
+        });
+    }
+    
+    private void sendFrame(StompFrame frame) {
+        ensureActive();
+        frame.addHeader("transaction", id);
+        client.sendTransactionFrame(frame);
+    }
+    
+    private void ensureActive() {
+        if (completed) {
+            throw new IllegalStateException("Transaction " + id + " was already completed");
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "StompTransaction{" +
+                "id='" + id + '\'' +
+                ", completed=" + completed +
+                '}';
+    }
+}
@@ -0,0 +1,264 @@
+package dev.pixelib.jstomp;
+
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okio.ByteString;
+
+import javax.net.SocketFactory;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the bytes a client exchanges with the server.
+ * 
+ * Message bytes are the payloads of WebSocket messages as the application sees them,
+ * before {@code permessage-deflate} compresses them on the way out and after it inflates
+ * them on the way in. Wire bytes are the bytes that actually pass through the socket,
+ * including the HTTP upgrade, WebSocket framing and, for {@code wss}, TLS. Comparing
+ * the two shows what WebSocket compression saves in bandwidth; the CPU it costs shows
+ * up in profiles of the OkHttp reader and writer threads.
+ * 
+ * Wire bytes can only be counted when the OkHttp client uses the default socket
+ * factory; with a custom socket factory they stay zero.
+ * 
+ * Counters accumulate across connections until they are {@link #reset() reset}.
+ * 
+ * @see StompClient#getWireStats()
+ */
+public final class StompWireStats {
+    
+    private final LongAdder messageBytesSent = new LongAdder();
+    private final LongAdder messageBytesReceived = new LongAdder();
+    private final LongAdder wireBytesSent = new LongAdder();
+    private final LongAdder wireBytesReceived = new LongAdder();
+    
+    /**
+     * Creates new counters, all zero.
+     */
+    StompWireStats() {
+    }
+    
+    /**
+     * Gets the number of uncompressed WebSocket message bytes sent.
+     * 
+     * @return the number of message bytes sent
+     */
+    public long getMessageBytesSent() {
+        return messageBytesSent.sum();
+    }
+    
+    /**
+     * Gets the number of uncompressed WebSocket message bytes received.
+     * 
+     * @return the number of message bytes received
+     */
+    public long getMessageBytesReceived() {
+        return messageBytesReceived.sum();
+    }
+    
+    /**
+     * Gets the number of bytes written to the socket.
+     * 
+     * @return the number of wire bytes sent
+     */
+    public long getWireBytesSent() {
+        return wireBytesSent.sum();
+    }
+    
+    /**
+     * Gets the number of bytes read from the socket.
+     * 
+     * @return the number of wire bytes received
+     */
+    public long getWireBytesReceived() {
+        return wireBytesReceived.sum();
+    }
+    
+    /**
+     * Resets all counters to zero.
+     */
+    public void reset() {
+        messageBytesSent.reset();
+        messageBytesReceived.reset();
+        wireBytesSent.reset();
+        wireBytesReceived.reset();
+    }
+    
+    /**
+     * Counts a received WebSocket message.
+     */
+    void messageReceived(long bytes) {
+        messageBytesReceived.add(bytes);
+    }
+    
+    /**
+     * Wraps a WebSocket so the messages sent through it are counted.
+     */
+    WebSocket count(WebSocket webSocket) {
+        return new CountingWebSocket(webSocket);
+    }
+    
+    /**
+     * Creates a socket factory whose sockets count the bytes passing through them.
+     */
+    SocketFactory socketFactory() {
+        return new CountingSocketFactory();
+    }
+    
+    @Override
+    public String toString() {
+        return "StompWireStats{" +
+                "messageBytesSent=" + getMessageBytesSent() +
+                ", messageBytesReceived=" + getMessageBytesReceived() +
+                ", wireBytesSent=" + getWireBytesSent() +
+                ", wireBytesReceived=" + getWireBytesReceived() +
+                '}';
+    }
+    
+    private final class CountingWebSocket implements WebSocket {
+        
+        private final WebSocket delegate;
+        
+        CountingWebSocket(WebSocket delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public boolean send(String text) {
+            boolean queued = delegate.send(text);
+            if (queued) {
+                messageBytesSent.add(StompFrame.utf8Length(text));
+            }
+            return queued;
+        }
+        
+        @Override
+        public boolean send(ByteString bytes) {
+            boolean queued = delegate.send(bytes);
+            if (queued) {
+                messageBytesSent.add(bytes.size());
+            }
+            return queued;
+        }
+        
+        @Override
+        public boolean close(int code, String reason) {
+            return delegate.close(code, reason);
+        }
+        
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+        
+        @Override
+        public long queueSize() {
+            return delegate.queueSize();
+        }
+        
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+    }
+    
+    private final class CountingSocketFactory extends SocketFactory {
+        
+        @Override
+        public Socket createSocket() {
+            return new CountingSocket();
+        }
+        
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return connect(new InetSocketAddress(host, port));
+        }
+        
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return connect(new InetSocketAddress(host, port), new InetSocketAddress(localHost, localPort));
+        }
+        
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return connect(new InetSocketAddress(host, port));
+        }
+        
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return connect(new InetSocketAddress(address, port), new InetSocketAddress(localAddress, localPort));
+        }
+        
+        private Socket connect(InetSocketAddress remote, InetSocketAddress... local) throws IOException {
+            Socket socket = new CountingSocket();
+            try {
+                if (local.length > 0) {
+                    socket.bind(local[0]);
+                }
+                socket.connect(remote);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+    }
+    
+    private final class CountingSocket extends Socket {
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b >= 0) {
+                        wireBytesReceived.increment();
+                    }
+                    return b;
+                }
+                
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = in.read(b, off, len);
+                    if (read > 0) {
+                        wireBytesReceived.add(read);
+                    }
+                    return read;
+                }
+                
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = in.skip(n);
+                    wireBytesReceived.add(skipped);
+                    return skipped;
+                }
+            };
+        }
+        
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return new FilterOutputStream(super.getOutputStream()) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    wireBytesSent.increment();
+                }
+                
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    wireBytesSent.add(len);
+                }
+            };
+        }
+    }
+}
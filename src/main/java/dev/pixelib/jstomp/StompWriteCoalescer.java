@@ -0,0 +1,100 @@
+package dev.pixelib.jstomp;
+
+import okio.Buffer;
+import okio.ByteString;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+/**
+ * Concatenates frames written within a short window into one WebSocket message.
+ *
+ * STOMP frames are NUL-terminated, so several of them can share a transport
+ * message. Pending frames are sent when the window elapses, when they reach the
+ * byte limit, or when {@link #flush()} is called, whichever comes first. Text and
+ * binary frames are never mixed in one message: switching between them flushes
+ * the pending frames first, which also keeps the frames in order. Frames are
+ * encoded directly into the pending buffer, without an intermediate copy.
+ */
+final class StompWriteCoalescer {
+
+    private final long windowMillis;
+    private final int maxBytes;
+    private final Consumer<String> textSink;
+    private final Consumer<ByteString> binarySink;
+    private final Buffer pending;
+    private boolean pendingBinary;
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Creates a new write coalescer.
+     *
+     * @param windowMillis the maximum time a frame is held back
+     * @param maxBytes the message size at which pending frames are sent right away
+     * @param textSink sends a text WebSocket message
+     * @param binarySink sends a binary WebSocket message
+     */
+    StompWriteCoalescer(long windowMillis, int maxBytes, Consumer<String> textSink, Consumer<ByteString> binarySink) {
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+        this.textSink = textSink;
+        this.binarySink = binarySink;
+        this.pending = new Buffer();
+    }
+
+    /**
+     * Encodes a frame straight into the pending message.
+     *
+     * @param frame the frame
+     * @param binary whether the frame must be sent as a binary message
+     * @param includeContentLength whether to write a content-length header for a text body
+     */
+    synchronized void write(StompFrame frame, boolean binary, boolean includeContentLength) {
+        if (binary != pendingBinary) {
+            flush();
+        }
+        pendingBinary = binary;
+        frame.writeTo(pending, includeContentLength);
+        written();
+    }
+
+    private void written() {
+        if (pending.size() >= maxBytes) {
+            flush();
+        } else if (flushTask == null) {
+            flushTask = StompScheduler.schedule(this::flush, windowMillis);
+        }
+    }
+
+    /**
+     * Sends the pending frames, if any, as one message.
+     */
+    synchronized void flush() {
+        cancelFlushTask();
+        if (pending.size() == 0) {
+            return;
+        }
+
+        if (pendingBinary) {
+            binarySink.accept(pending.readByteString());
+        } else {
+            textSink.accept(pending.readUtf8());
+        }
+    }
+
+    /**
+     * Drops the pending frames, for example because the connection was lost.
+     */
+    synchronized void discard() {
+        cancelFlushTask();
+        pending.clear();
+        pendingBinary = false;
+    }
+
+    private void cancelFlushTask() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompAcknowledgerTest {
+    
+    private final List<StompFrame> sent = new CopyOnWriteArrayList<>();
+    
+    @Test
+    void shouldAckEveryMessageIndividually() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT_INDIVIDUAL, 10, 0, sent::add);
+        
+        acknowledger.ack("1", acknowledger.track("1"));
+        acknowledger.ack("2", acknowledger.track("2"));
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.ACK, StompCommand.ACK);
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("1", "2");
+    }
+    
+    @Test
+    void shouldSendOneCumulativeAckPerBatch() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 3, 0, sent::add);
+        
+        for (int i = 1; i <= 7; i++) {
+            String ackId = String.valueOf(i);
+            acknowledger.ack(ackId, acknowledger.track(ackId));
+        }
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("3", "6");
+        assertThat(acknowledger.getPendingCount()).isEqualTo(1);
+        
+        acknowledger.flush();
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("3", "6", "7");
+        assertThat(acknowledger.getPendingCount()).isZero();
+    }
+    
+    @Test
+    void shouldKeepLatestMessageInCumulativeAckWhenAckedOutOfOrder() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        long generation = 0;
+        for (int i = 1; i <= 3; i++) {
+            generation = acknowledger.track(String.valueOf(i));
+        }
+        
+        acknowledger.ack("1", generation);
+        acknowledger.ack("3", generation);
+        acknowledger.ack("2", generation);
+        acknowledger.flush();
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("3");
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldFlushBatchAfterInterval() throws Exception {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 100, 20, sent::add);
+        
+        acknowledger.ack("1", acknowledger.track("1"));
+        acknowledger.ack("2", acknowledger.track("2"));
+        assertThat(sent).isEmpty();
+        
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("2");
+    }
+    
+    @Test
+    void shouldFlushPendingAcksBeforeNack() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        
+        acknowledger.ack("1", acknowledger.track("1"));
+        acknowledger.nack("2", acknowledger.track("2"));
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.ACK, StompCommand.NACK);
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("1", "2");
+    }
+    
+    @Test
+    void shouldKeepPendingAckOfLaterMessageWhenNackingEarlierOne() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        long generation = 0;
+        for (int i = 1; i <= 3; i++) {
+            generation = acknowledger.track(String.valueOf(i));
+        }
+        
+        acknowledger.ack("3", generation);
+        acknowledger.nack("1", generation);
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.NACK);
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("1");
+        
+        acknowledger.flush();
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.NACK, StompCommand.ACK);
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("1", "3");
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldDropNackOfMessageSettledByPendingAck() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        long generation = acknowledger.track("1");
+        
+        acknowledger.ack("1", generation);
+        acknowledger.nack("1", generation);
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.ACK);
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldDiscardPendingAcks() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        
+        acknowledger.ack("1", acknowledger.track("1"));
+        acknowledger.discard();
+        acknowledger.flush();
+        
+        assertThat(sent).isEmpty();
+    }
+    
+    @Test
+    void shouldDropAcksOfUnknownOrEarlierConnectionMessages() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT_INDIVIDUAL, 1, 0, sent::add);
+        long lost = acknowledger.track("1");
+        acknowledger.discard();
+        long current = acknowledger.track("1");
+        
+        acknowledger.ack("1", lost);
+        acknowledger.nack("1", lost, "tx-1");
+        acknowledger.ack("2", current);
+        assertThat(sent).isEmpty();
+        assertThat(acknowledger.getUnackedCount()).isEqualTo(1);
+        
+        acknowledger.ack("1", current);
+        acknowledger.nack("1", current);
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.ACK);
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldTrackTransactionalAcksAgainAfterAbort() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        long generation = 0;
+        for (int i = 1; i <= 3; i++) {
+            generation = acknowledger.track(String.valueOf(i));
+        }
+        
+        acknowledger.ack("2", generation, "tx-1");
+        assertThat(acknowledger.getUnackedCount()).isEqualTo(1);
+        acknowledger.abort("tx-1");
+        assertThat(acknowledger.getUnackedCount()).isEqualTo(3);
+        
+        acknowledger.ack("3", generation);
+        acknowledger.ack("1", generation);
+        acknowledger.flush();
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("2", "3");
+        assertThat(sent).extracting(frame -> frame.getHeader("transaction")).containsExactly("tx-1", null);
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldDropAcksOfMessagesSettledByCommittedTransaction() {
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT_INDIVIDUAL, 1, 0, sent::add);
+        long generation = acknowledger.track("1");
+        
+        acknowledger.ack("1", generation, "tx-1");
+        acknowledger.commit("tx-1");
+        acknowledger.abort("tx-1");
+        acknowledger.ack("1", generation);
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("1");
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldAckMessageThroughItsSubscription() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(StompAckMode.CLIENT_INDIVIDUAL)
+                .build();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", message -> { },
+                options, Runnable::run, error -> { }, sent::add);
+        StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+        frame.addHeader("destination", "/queue/test");
+        frame.addHeader("message-id", "m-1");
+        frame.addHeader("ack", "a-1");
+        
+        StompMessage message = StompMessage.fromFrame(frame, subscription.acknowledger());
+        subscription.dispatch(message);
+        message.ack();
+        message.nack();
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.ACK);
+        assertThat(sent).extracting(f -> f.getHeader("id")).containsExactly("a-1");
+    }
+    
+    @Test
+    void shouldRejectAckInAutoMode() {
+        StompMessage message = new StompMessage("/queue/test", "Hello", Map.of("message-id", "m-1"));
+        
+        assertThat(message.getAckId()).isEqualTo("m-1");
+        assertThatThrownBy(message::ack).isInstanceOf(IllegalStateException.class);
+    }
+}
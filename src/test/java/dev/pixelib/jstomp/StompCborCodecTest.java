@@ -0,0 +1,159 @@
+package dev.pixelib.jstomp;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class StompCborCodecTest {
+
+    private final StompCborCodec codec = new StompCborCodec();
+
+    @Test
+    void shouldEncodeInShortestForm() throws Exception {
+        assertThat(hex(codec.encode(0))).isEqualTo("00");
+        assertThat(hex(codec.encode(23))).isEqualTo("17");
+        assertThat(hex(codec.encode(24))).isEqualTo("1818");
+        assertThat(hex(codec.encode(1000))).isEqualTo("1903e8");
+        assertThat(hex(codec.encode(1_000_000))).isEqualTo("1a000f4240");
+        assertThat(hex(codec.encode(1_000_000_000_000L))).isEqualTo("1b000000e8d4a51000");
+        assertThat(hex(codec.encode(-1))).isEqualTo("20");
+        assertThat(hex(codec.encode(-1000))).isEqualTo("3903e7");
+        assertThat(hex(codec.encode(1.5))).isEqualTo("fa3fc00000");
+        assertThat(hex(codec.encode(1.1))).isEqualTo("fb3ff199999999999a");
+        assertThat(hex(codec.encode(true))).isEqualTo("f5");
+        assertThat(hex(codec.encode(null))).isEqualTo("f6");
+        assertThat(hex(codec.encode("IETF"))).isEqualTo("6449455446");
+        assertThat(hex(codec.encode(List.of(1, 2, 3)))).isEqualTo("83010203");
+        assertThat(hex(codec.encode(new BigInteger("18446744073709551616")))).isEqualTo("c249010000000000000000");
+        assertThat(hex(codec.encode(new BigInteger("-18446744073709551617")))).isEqualTo("c349010000000000000000");
+        assertThat(hex(codec.encode(new BigDecimal("273.15")))).isEqualTo("c48221196ab3");
+    }
+
+    @Test
+    void shouldRoundTripObjects() throws Exception {
+        TestMessage message = new TestMessage("héllo", 42, List.of(1.5, -2.25), Map.of("k", true));
+
+        TestMessage decoded = decode(codec.encode(message), TestMessage.class);
+
+        assertThat(decoded.name).isEqualTo("héllo");
+        assertThat(decoded.value).isEqualTo(42);
+        assertThat(decoded.values).containsExactly(1.5, -2.25);
+        assertThat(decoded.flags).containsEntry("k", true);
+    }
+
+    @Test
+    void shouldDecodeAnyWellFormedEncoding() throws Exception {
+        // Examples from RFC 8949 appendix A
+        assertThat(this.<Double>decode("f93c00", Double.class)).isEqualTo(1.0);
+        assertThat(this.<Double>decode("f9c400", Double.class)).isEqualTo(-4.0);
+        assertThat(this.<Double>decode("f90001", Double.class)).isEqualTo(5.960464477539063e-8);
+        assertThat(this.<BigInteger>decode("1bffffffffffffffff", BigInteger.class)).isEqualTo(new BigInteger("18446744073709551615"));
+        assertThat(this.<BigInteger>decode("3bffffffffffffffff", BigInteger.class)).isEqualTo(new BigInteger("-18446744073709551616"));
+        assertThat(this.<BigInteger>decode("c249010000000000000000", BigInteger.class)).isEqualTo(new BigInteger("18446744073709551616"));
+        assertThat(this.<BigDecimal>decode("c48221196ab3", BigDecimal.class)).isEqualTo(new BigDecimal("273.15"));
+        assertThat(this.<String>decode("7f657374726561646d696e67ff", String.class)).isEqualTo("streaming");
+        assertThat(this.<List<Object>>decode("9f018202039f0405ffff", new TypeToken<List<Object>>() { }.getType()).toString())
+                .isEqualTo("[1.0, [2.0, 3.0], [4.0, 5.0]]");
+        assertThat(this.<Map<String, Object>>decode("bf6346756ef563416d7421ff", new TypeToken<Map<String, Object>>() { }.getType()).toString())
+                .isEqualTo("{Fun=true, Amt=-2.0}");
+        assertThat(this.<byte[]>decode("4401020304", byte[].class)).containsExactly(1, 2, 3, 4);
+        assertThat(this.<Long>decode("c11a514b67b0", Long.class)).isEqualTo(1363896240L);
+    }
+
+    @Test
+    void shouldDecodeEmptyBodyAsNull() throws Exception {
+        assertThat(this.<TestMessage>decode(new byte[0], TestMessage.class)).isNull();
+    }
+
+    @Test
+    void shouldRejectMalformedBodies() {
+        assertThatThrownBy(() -> decode("1a0000", Long.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("7bffffffffffffffff", String.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("9a7fffffff00", List.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("0101", Long.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("ff", Long.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("1c", Long.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("81".repeat(1000) + "00", List.class)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void shouldRejectTruncatedIndefiniteLengthItems() {
+        assertThatThrownBy(() -> decode("9f", List.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("9f01", List.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("bf6141", Map.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("7f6161", String.class)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("5f", byte[].class)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void shouldSendObjectAsBinaryWithContentType() throws Exception {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        StompSendBuffer buffer = new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT);
+        client.setSendBuffer(buffer);
+        client.registerCodec(codec);
+
+        client.sendObject("/queue/test", List.of(1, 2, 3), "application/cbor");
+        client.sendObject("/queue/test", List.of(1, 2, 3), "Application/JSON; charset=utf-8");
+
+        List<StompFrame> frames = new ArrayList<>();
+        buffer.flush(frames::add);
+        assertThat(frames).hasSize(2);
+        assertThat(frames.get(0).hasBinaryBody()).isTrue();
+        assertThat(frames.get(0).getHeader("content-type")).isEqualTo("application/cbor");
+        assertThat(hex(frames.get(0).getBodyBytes())).isEqualTo("83010203");
+        assertThat(frames.get(1).hasBinaryBody()).isFalse();
+        assertThat(frames.get(1).getHeader("content-type")).isEqualTo("application/json");
+        assertThat(frames.get(1).getBody()).isEqualTo("[1,2,3]");
+    }
+
+    @Test
+    void shouldRejectUnknownContentType() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        client.setSendBuffer(new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT));
+
+        assertThatThrownBy(() -> client.sendObject("/queue/test", 1, "application/cbor"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("application/cbor");
+    }
+
+    private <T> T decode(String hex, Type type) throws IOException {
+        return decode(HexFormat.of().parseHex(hex), type);
+    }
+
+    private <T> T decode(byte[] body, Type type) throws IOException {
+        StompCodec.Decoder<T> decoder = codec.decoder(type);
+        return decoder.decode(new StompMessage("/queue/test", body, Map.of()));
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    static class TestMessage {
+        String name;
+        int value;
+        List<Double> values;
+        Map<String, Boolean> flags;
+
+        TestMessage() {
+        }
+
+        TestMessage(String name, int value, List<Double> values, Map<String, Boolean> flags) {
+            this.name = name;
+            this.value = value;
+            this.values = values;
+            this.flags = flags;
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package dev.pixelib.jstomp;
 
 import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.ByteString;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -110,4 +123,358 @@ class StompClientTest {
         // Should not throw exception when disconnecting while not connected
         assertThatCode(() -> stompClient.disconnect()).doesNotThrowAnyException();
     }
+    
+    @Test
+    void shouldCloseConnectingSocketOnDisconnect() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer stompServer = new StompServer();
+            server.enqueue(new MockResponse().withWebSocketUpgrade(stompServer));
+            server.start();
+            
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            CompletableFuture<Void> connecting = client.connect();
+            assertThat(stompServer.frames.poll(5, TimeUnit.SECONDS)).startsWith("CONNECT\n");
+            
+            client.disconnect();
+            stompServer.socket.send("CONNECTED\nversion:1.2\n\n\0");
+            
+            assertThat(stompServer.closed.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThatThrownBy(() -> connecting.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+            assertThat(client.isConnected()).isFalse();
+        }
+    }
+    
+    @Test
+    void shouldNotCountBufferedTimeInPublishLatency() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer stompServer = new StompServer();
+            server.enqueue(new MockResponse().withWebSocketUpgrade(stompServer));
+            server.start();
+            
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.setSendBuffer(new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT));
+            StompPublisher publisher = client.createPublisher(1);
+            CompletableFuture<Void> confirmed = publisher.publish("/queue/test", "hello");
+            Thread.sleep(500);
+            
+            client.connect();
+            stompServer.acceptConnect();
+            String send = stompServer.frames.poll(5, TimeUnit.SECONDS);
+            assertThat(send).startsWith("SEND\n");
+            String receiptId = StompFrameDecoder.decode(send).getHeader("receipt");
+            stompServer.socket.send("RECEIPT\nreceipt-id:" + receiptId + "\n\n\0");
+            
+            confirmed.get(5, TimeUnit.SECONDS);
+            // The window is released only after the latency is recorded
+            assertThat(publisher.awaitConfirms(Duration.ofSeconds(5))).isTrue();
+            assertThat(publisher.getConfirmedCount()).isEqualTo(1);
+            assertThat(publisher.getMaxConfirmLatency()).isPositive().isLessThan(Duration.ofMillis(500));
+            client.disconnect();
+        }
+    }
+    
+    @Test
+    void shouldCompleteServerInitiatedClose() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer stompServer = new StompServer();
+            server.enqueue(new MockResponse().withWebSocketUpgrade(stompServer));
+            server.start();
+            
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.connect();
+            stompServer.acceptConnect();
+            awaitConnected(client);
+            
+            stompServer.socket.close(1001, "Going away");
+            
+            assertThat(stompServer.closeCompleted.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(client.isConnected()).isFalse();
+        }
+    }
+    
+    @Test
+    void shouldIgnoreCloseOfReplacedSocket() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer first = new StompServer();
+            StompServer second = new StompServer();
+            first.deferCloseReply = true;
+            server.enqueue(new MockResponse().withWebSocketUpgrade(first));
+            server.enqueue(new MockResponse().withWebSocketUpgrade(second));
+            server.start();
+            
+            BlockingQueue<String> events = new LinkedBlockingQueue<>();
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.setConnectionListener(new StompConnectionListener() {
+                @Override
+                public void onConnected() {
+                    events.add("connected");
+                }
+                
+                @Override
+                public void onDisconnected() {
+                    events.add("disconnected");
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    events.add("error");
+                }
+            });
+            client.connect();
+            first.acceptConnect();
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("connected");
+            
+            // The first socket only finishes closing once the second one is connected
+            client.disconnect();
+            assertThat(first.closed.await(5, TimeUnit.SECONDS)).isTrue();
+            client.connect();
+            second.acceptConnect();
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("connected");
+            first.socket.close(1000, null);
+            
+            assertThat(first.closeCompleted.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(events.poll(500, TimeUnit.MILLISECONDS)).isNull();
+            assertThat(client.isConnected()).isTrue();
+            client.send("/queue/test", "hello");
+            assertThat(second.frames.poll(5, TimeUnit.SECONDS)).startsWith("SEND\n");
+            client.disconnect();
+        }
+    }
+    
+    @Test
+    void shouldRestoreSubscriptionsOnlyWhenReconnecting() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer first = new StompServer();
+            StompServer second = new StompServer();
+            StompServer third = new StompServer();
+            server.enqueue(new MockResponse().withWebSocketUpgrade(first));
+            server.enqueue(new MockResponse().withWebSocketUpgrade(second));
+            server.enqueue(new MockResponse().withWebSocketUpgrade(third));
+            server.start();
+            
+            BlockingQueue<String> events = new LinkedBlockingQueue<>();
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.setReconnectPolicy(StompReconnectPolicy.builder()
+                    .initialDelay(Duration.ofMillis(10))
+                    .jitter(0)
+                    .build());
+            client.setConnectionListener(new StompConnectionListener() {
+                @Override
+                public void onConnected() {
+                    events.add("connected");
+                }
+                
+                @Override
+                public void onDisconnected() {
+                    events.add("disconnected");
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    events.add("error");
+                }
+            });
+            client.connect();
+            first.acceptConnect();
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("connected");
+            String subscriptionId = client.subscribe("/topic/test", mockMessageHandler);
+            assertThat(first.frames.poll(5, TimeUnit.SECONDS)).startsWith("SUBSCRIBE\n");
+            
+            first.socket.close(1000, "Restarting");
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("disconnected");
+            second.acceptConnect();
+            assertThat(second.frames.poll(5, TimeUnit.SECONDS))
+                    .startsWith("SUBSCRIBE\n")
+                    .contains("id:" + subscriptionId + "\n");
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("connected");
+            
+            client.disconnect();
+            assertThat(client.getSubscription(subscriptionId)).isNull();
+            // Connect again only once the closing handshake is over, so the old socket
+            // cannot report its close against the new connection
+            assertThat(second.closed.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("disconnected");
+            client.connect();
+            third.acceptConnect();
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("connected");
+            client.send("/queue/test", "hello");
+            assertThat(third.frames.poll(5, TimeUnit.SECONDS)).startsWith("SEND\n");
+            client.disconnect();
+        }
+    }
+    
+    @Test
+    void shouldReportMissedHeartbeatsOffSchedulerThread() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer stompServer = new StompServer();
+            server.enqueue(new MockResponse().withWebSocketUpgrade(stompServer));
+            server.start();
+            
+            BlockingQueue<String> errorThreads = new LinkedBlockingQueue<>();
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.setHeartbeat(0, 50);
+            client.setConnectionListener(new StompConnectionListener() {
+                @Override
+                public void onConnected() {
+                }
+                
+                @Override
+                public void onDisconnected() {
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    if (error instanceof StompException) {
+                        errorThreads.add(Thread.currentThread().getName());
+                    }
+                }
+            });
+            client.connect();
+            assertThat(stompServer.frames.poll(5, TimeUnit.SECONDS)).startsWith("CONNECT\n");
+            stompServer.socket.send("CONNECTED\nversion:1.2\nheart-beat:50,0\n\n\0");
+            
+            assertThat(errorThreads.poll(5, TimeUnit.SECONDS)).isNotEqualTo("jstomp-scheduler");
+            assertThat(stompServer.closed.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+    
+    @Test
+    void shouldNackMessageThatFailsToDecompress() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer stompServer = new StompServer();
+            server.enqueue(new MockResponse().withWebSocketUpgrade(stompServer));
+            server.start();
+            
+            BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.setConnectionListener(new StompConnectionListener() {
+                @Override
+                public void onConnected() {
+                }
+                
+                @Override
+                public void onDisconnected() {
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    errors.add(error);
+                }
+            });
+            client.connect();
+            stompServer.acceptConnect();
+            awaitConnected(client);
+            BlockingQueue<StompMessage> received = new LinkedBlockingQueue<>();
+            String subscriptionId = client.subscribe("/queue/test", received::add,
+                    StompSubscriptionOptions.builder().ackMode(StompAckMode.CLIENT_INDIVIDUAL).build());
+            assertThat(stompServer.frames.poll(5, TimeUnit.SECONDS)).startsWith("SUBSCRIBE\n");
+            
+            // Delivered as received while compression is disabled
+            stompServer.socket.send("MESSAGE\nsubscription:" + subscriptionId
+                    + "\nmessage-id:m-1\nack:a-1\ncontent-encoding:deflate\n\nnot deflated\0");
+            StompMessage message = received.poll(5, TimeUnit.SECONDS);
+            assertThat(message).isNotNull();
+            assertThat(message.getHeader("content-encoding")).isEqualTo("deflate");
+            assertThat(message.getBody()).isEqualTo("not deflated");
+            message.ack();
+            assertThat(stompServer.frames.poll(5, TimeUnit.SECONDS)).startsWith("ACK\n").contains("id:a-1\n");
+            
+            client.setCompression(StompCompression.DEFLATE, 1024);
+            stompServer.socket.send("MESSAGE\nsubscription:" + subscriptionId
+                    + "\nmessage-id:m-2\nack:a-2\ncontent-encoding:deflate\n\nnot deflated\0");
+            
+            assertThat(stompServer.frames.poll(5, TimeUnit.SECONDS)).startsWith("NACK\n").contains("id:a-2\n");
+            assertThat(received).isEmpty();
+            assertThat(errors.poll(5, TimeUnit.SECONDS)).isInstanceOf(StompException.class)
+                    .hasMessageContaining("decompress");
+            assertThat(client.getSubscription(subscriptionId).getUnackedCount()).isZero();
+            client.disconnect();
+        }
+    }
+    
+    @Test
+    void shouldSendJsonAsTextMessageInTextMode() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            StompServer stompServer = new StompServer();
+            server.enqueue(new MockResponse().withWebSocketUpgrade(stompServer));
+            server.start();
+            
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.connect();
+            stompServer.acceptConnect();
+            awaitConnected(client);
+            
+            client.sendJson("/queue/test", Map.of("text", "h\u00e9llo \u2603"));
+            assertThat(stompServer.frames.poll(5, TimeUnit.SECONDS)).startsWith("SEND\n")
+                    .contains("content-type:application/json\n")
+                    .endsWith("\n\n{\"text\":\"h\u00e9llo \u2603\"}\0");
+            
+            client.setBinaryMode(true);
+            client.sendJson("/queue/test", Map.of("text", "h\u00e9llo \u2603"));
+            ByteString frame = stompServer.binaryFrames.poll(5, TimeUnit.SECONDS);
+            assertThat(frame).isNotNull();
+            assertThat(frame.utf8()).startsWith("SEND\n").endsWith("\n\n{\"text\":\"h\u00e9llo \u2603\"}\0");
+            assertThat(stompServer.frames).isEmpty();
+            client.disconnect();
+        }
+    }
+    
+    private static void awaitConnected(StompClient client) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!client.isConnected() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(client.isConnected()).isTrue();
+    }
+    
+    /**
+     * The server side of a WebSocket that records the frames it receives.
+     */
+    private static class StompServer extends WebSocketListener {
+        
+        final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+        final BlockingQueue<ByteString> binaryFrames = new LinkedBlockingQueue<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        final CountDownLatch closeCompleted = new CountDownLatch(1);
+        volatile boolean deferCloseReply;
+        volatile WebSocket socket;
+        
+        void acceptConnect() throws InterruptedException {
+            assertThat(frames.poll(5, TimeUnit.SECONDS)).startsWith("CONNECT\n");
+            socket.send("CONNECTED\nversion:1.2\n\n\0");
+        }
+        
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            socket = webSocket;
+        }
+        
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            frames.add(text);
+        }
+        
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            binaryFrames.add(bytes);
+        }
+        
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            if (!deferCloseReply) {
+                webSocket.close(1000, null);
+            }
+            closed.countDown();
+        }
+        
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            closeCompleted.countDown();
+        }
+        
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            closed.countDown();
+        }
+    }
 }
@@ -0,0 +1,155 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+class StompCompressionTest {
+
+    private static final int MAX_LENGTH = 1024 * 1024;
+
+    @Test
+    void shouldRoundTripCompressibleBodies() throws Exception {
+        for (StompCompression compression : StompCompression.values()) {
+            for (int count : new int[] {10, 100, 5_000}) {
+                byte[] body = json(count);
+                byte[] padded = new byte[body.length + 7];
+                System.arraycopy(body, 0, padded, 3, body.length);
+
+                byte[] compressed = compression.compress(padded, 3, body.length);
+
+                assertThat(compressed).isNotNull();
+                assertThat(compressed.length).isLessThan(body.length / 2);
+                assertThat(compression.decompress(compressed, 0, compressed.length, MAX_LENGTH)).isEqualTo(body);
+            }
+        }
+    }
+
+    @Test
+    void shouldNotCompressIncompressibleBodies() {
+        byte[] body = new byte[4096];
+        new Random(42).nextBytes(body);
+
+        for (StompCompression compression : StompCompression.values()) {
+            assertThat(compression.compress(body, 0, body.length)).isNull();
+        }
+    }
+
+    @Test
+    void shouldDecodeReferenceLz4Block() throws Exception {
+        // Three literals, a 10 byte overlapping match at offset 3 and five trailing literals
+        byte[] block = HexFormat.of().parseHex("12000000366162630300506263616263");
+
+        byte[] body = StompCompression.LZ4.decompress(block, 0, block.length, MAX_LENGTH);
+
+        assertThat(new String(body, StandardCharsets.US_ASCII)).isEqualTo("abcabcabcabcabcabc");
+    }
+
+    @Test
+    void shouldRejectMalformedBodies() {
+        assertThatThrownBy(() -> lz4("12000000366162630000506263616263")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> lz4("12000000366162630400506263616263")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> lz4("1200000036616263")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> lz4("13000000366162630300506263616263")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> lz4("ffffff7f00")).isInstanceOf(IOException.class);
+
+        byte[] body = json(5_000);
+        byte[] compressed = StompCompression.DEFLATE.compress(body, 0, body.length);
+        assertThatThrownBy(() -> StompCompression.DEFLATE.decompress(compressed, 0, compressed.length, body.length - 1))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("exceeds");
+        assertThatThrownBy(() -> StompCompression.DEFLATE.decompress(compressed, 0, compressed.length / 2, MAX_LENGTH))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void shouldLookUpContentEncodings() {
+        assertThat(StompCompression.forContentEncoding("deflate")).isEqualTo(StompCompression.DEFLATE);
+        assertThat(StompCompression.forContentEncoding(" LZ4")).isEqualTo(StompCompression.LZ4);
+        assertThat(StompCompression.forContentEncoding("gzip")).isNull();
+    }
+
+    @Test
+    void shouldCompressAndDecompressFrameBodies() throws Exception {
+        String body = new String(json(100), StandardCharsets.UTF_8);
+        StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+        frame.addHeader("destination", "/topic/test");
+        frame.addHeader("content-length", Integer.toString(body.length()));
+        frame.setBody(body);
+
+        assertThat(frame.compressBody(StompCompression.LZ4, body.length() + 1)).isFalse();
+        assertThat(frame.compressBody(StompCompression.LZ4, 256)).isTrue();
+        assertThat(frame.hasBinaryBody()).isTrue();
+        assertThat(frame.getHeader("content-encoding")).isEqualTo("lz4");
+        assertThat(frame.getBodyBytes().length).isLessThan(body.length());
+        assertThat(frame.compressBody(StompCompression.DEFLATE, 256)).isFalse();
+
+        StompMessage received = StompMessage.fromFrame(StompFrame.parse(frame.toBytes())).decompress(MAX_LENGTH);
+
+        assertThat(received.getBody()).isEqualTo(body);
+        assertThat(received.getHeader("content-encoding")).isNull();
+        assertThat(received.getHeader("content-length")).isEqualTo(Integer.toString(body.length()));
+        assertThat(received.getHeader("destination")).isEqualTo("/topic/test");
+    }
+
+    @Test
+    void shouldLeaveUnknownContentEncodingsAlone() throws Exception {
+        StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+        frame.addHeader("content-encoding", "gzip");
+        frame.setBody(new byte[] {1, 2, 3});
+        StompMessage message = StompMessage.fromFrame(frame);
+
+        assertThat(message.decompress(MAX_LENGTH)).isSameAs(message);
+        assertThat(message.getHeader("content-encoding")).isEqualTo("gzip");
+        assertThat(message.getBodyBytes()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void shouldCompressLargeSendsWhenEnabled() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        StompSendBuffer buffer = new StompSendBuffer(10, MAX_LENGTH, StompSendOverflowPolicy.REJECT);
+        client.setSendBuffer(buffer);
+        client.setCompression(StompCompression.DEFLATE, 1024);
+        String large = new String(json(100), StandardCharsets.UTF_8);
+
+        client.send("/queue/test", "small");
+        client.send("/queue/test", large);
+        client.send("/queue/test", large, Map.of("content-encoding", "identity"));
+
+        List<StompFrame> frames = new ArrayList<>();
+        buffer.flush(frames::add);
+        assertThat(frames).hasSize(3);
+        assertThat(frames.get(0).getHeader("content-encoding")).isNull();
+        assertThat(frames.get(0).getBody()).isEqualTo("small");
+        assertThat(frames.get(1).getHeader("content-encoding")).isEqualTo("deflate");
+        assertThat(frames.get(1).hasBinaryBody()).isTrue();
+        assertThat(frames.get(2).getHeader("content-encoding")).isEqualTo("identity");
+        assertThat(frames.get(2).getBody()).isEqualTo(large);
+    }
+
+    private static byte[] lz4(String hex) throws IOException {
+        byte[] block = HexFormat.of().parseHex(hex);
+        return StompCompression.LZ4.decompress(block, 0, block.length, MAX_LENGTH);
+    }
+
+    private static byte[] json(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"symbol\":\"ACME\",\"price\":").append(100 + i % 17)
+                    .append(",\"exchange\":\"NASDAQ\",\"sequence\":").append(i).append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,193 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompDispatchQueueTest {
+    
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void shouldDeliverMessagesInOrder() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(500);
+        StompDispatchQueue queue = new StompDispatchQueue(executor, message -> {
+            received.add(message.getBody());
+            done.countDown();
+        }, error -> { });
+        
+        for (int i = 0; i < 500; i++) {
+            queue.enqueue(message(String.valueOf(i)));
+        }
+        
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 500; i++) {
+            assertThat(received.get(i)).isEqualTo(String.valueOf(i));
+        }
+    }
+    
+    @Test
+    void shouldNotBlockOtherQueuesWhileHandlerIsSlow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+        StompDispatchQueue slow = new StompDispatchQueue(executor, message -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, error -> { });
+        StompDispatchQueue fast = new StompDispatchQueue(executor, message -> fastDone.countDown(), error -> { });
+        
+        slow.enqueue(message("slow"));
+        fast.enqueue(message("fast"));
+        
+        assertThat(fastDone.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+    
+    @Test
+    void shouldReportHandlerErrorsAndContinue() throws Exception {
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        StompDispatchQueue queue = new StompDispatchQueue(executor, message -> {
+            if (message.getBody().equals("bad")) {
+                throw new IllegalStateException("boom");
+            }
+            done.countDown();
+        }, errors::add);
+        
+        queue.enqueue(message("bad"));
+        queue.enqueue(message("good"));
+        
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(errors).singleElement().isInstanceOf(IllegalStateException.class);
+    }
+    
+    @Test
+    void shouldDropMessagesAfterClose() {
+        List<StompMessage> received = new CopyOnWriteArrayList<>();
+        StompDispatchQueue queue = new StompDispatchQueue(Runnable::run, received::add, error -> { });
+        
+        queue.enqueue(message("before"));
+        queue.close();
+        queue.enqueue(message("after"));
+        
+        assertThat(received).extracting(StompMessage::getBody).containsExactly("before");
+    }
+    
+    @Test
+    void shouldDropOldestMessageWhenFull() {
+        List<Runnable> tasks = new ArrayList<>();
+        List<StompMessage> received = new ArrayList<>();
+        StompDispatchQueue queue = new StompDispatchQueue(tasks::add, received::add, error -> { },
+                options(2, StompOverflowPolicy.DROP_OLDEST));
+        
+        queue.enqueue(message("1"));
+        queue.enqueue(message("2"));
+        queue.enqueue(message("3"));
+        tasks.get(0).run();
+        
+        assertThat(received).extracting(StompMessage::getBody).containsExactly("2", "3");
+        assertThat(queue.getQueuedCount()).isEqualTo(3);
+        assertThat(queue.getDroppedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void shouldDropNewestMessageWhenFull() {
+        List<Runnable> tasks = new ArrayList<>();
+        List<StompMessage> received = new ArrayList<>();
+        StompDispatchQueue queue = new StompDispatchQueue(tasks::add, received::add, error -> { },
+                options(2, StompOverflowPolicy.DROP_NEWEST));
+        
+        queue.enqueue(message("1"));
+        queue.enqueue(message("2"));
+        queue.enqueue(message("3"));
+        
+        assertThat(queue.size()).isEqualTo(2);
+        tasks.get(0).run();
+        
+        assertThat(received).extracting(StompMessage::getBody).containsExactly("1", "2");
+        assertThat(queue.getQueuedCount()).isEqualTo(2);
+        assertThat(queue.getDroppedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void shouldCloseWhenFullUnderFailPolicy() {
+        List<Runnable> tasks = new ArrayList<>();
+        List<StompMessage> received = new ArrayList<>();
+        StompDispatchQueue queue = new StompDispatchQueue(tasks::add, received::add, error -> { },
+                options(1, StompOverflowPolicy.FAIL_SUBSCRIPTION));
+        
+        assertThat(queue.enqueue(message("1"))).isTrue();
+        assertThat(queue.enqueue(message("2"))).isFalse();
+        tasks.get(0).run();
+        
+        assertThat(received).isEmpty();
+        assertThat(queue.getDroppedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void shouldBlockReaderUntilHandlerMakesRoom() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> received = new CopyOnWriteArrayList<>();
+        StompDispatchQueue queue = new StompDispatchQueue(executor, message -> {
+            firstStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(message.getBody());
+        }, error -> { }, options(1, StompOverflowPolicy.BLOCK_READER));
+        
+        queue.enqueue(message("1"));
+        assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        queue.enqueue(message("2"));
+        
+        Thread reader = new Thread(() -> queue.enqueue(message("3")));
+        reader.start();
+        reader.join(200);
+        assertThat(reader.isAlive()).isTrue();
+        
+        release.countDown();
+        reader.join(5000);
+        assertThat(reader.isAlive()).isFalse();
+        assertThat(queue.getDroppedCount()).isZero();
+    }
+    
+    @Test
+    void shouldRejectInvalidCapacity() {
+        assertThatThrownBy(() -> StompSubscriptionOptions.builder().queueCapacity(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    private static StompSubscriptionOptions options(int capacity, StompOverflowPolicy policy) {
+        return StompSubscriptionOptions.builder()
+                .queueCapacity(capacity)
+                .overflowPolicy(policy)
+                .build();
+    }
+    
+    private static StompMessage message(String body) {
+        return new StompMessage("/queue/test", body, Map.of());
+    }
+}
@@ -0,0 +1,293 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompFrameDecoderTest {
+    
+    @Test
+    void shouldDecodeMessageFrame() {
+        StompFrame frame = StompFrameDecoder.decode("MESSAGE\n" +
+                "subscription:sub-1\n" +
+                "destination:/topic/test\n" +
+                "\n" +
+                "Hello\0");
+        
+        assertThat(frame.getCommand()).isEqualTo(StompCommand.MESSAGE);
+        assertThat(frame.getHeader("subscription")).isEqualTo("sub-1");
+        assertThat(frame.getHeader("destination")).isEqualTo("/topic/test");
+        assertThat(frame.getBody()).isEqualTo("Hello");
+    }
+    
+    @Test
+    void shouldKeepLineFeedsInBody() {
+        StompFrame frame = StompFrameDecoder.decode("SEND\ndestination:/queue/a\n\nline1\n\nline3\n\0");
+        
+        assertThat(frame.getBody()).isEqualTo("line1\n\nline3\n");
+    }
+    
+    @Test
+    void shouldUnescapeHeaders() {
+        StompFrame frame = StompFrameDecoder.decode("MESSAGE\n" +
+                "message-id:ID\\cbroker\\c1\n" +
+                "multi\\nline:a\\\\b\\rc\n" +
+                "\n\0");
+        
+        assertThat(frame.getHeader("message-id")).isEqualTo("ID:broker:1");
+        assertThat(frame.getHeader("multi\nline")).isEqualTo("a\\b\rc");
+    }
+    
+    @Test
+    void shouldNotTreatEscapedBackslashAsEscapeSequence() {
+        StompFrame frame = StompFrameDecoder.decode("MESSAGE\npath:C\\\\new\n\n\0");
+        
+        assertThat(frame.getHeader("path")).isEqualTo("C\\new");
+    }
+    
+    @Test
+    void shouldAcceptCarriageReturnLineEndings() {
+        StompFrame frame = StompFrameDecoder.decode("CONNECTED\r\nversion:1.2\r\n\r\nbody\0");
+        
+        assertThat(frame.getCommand()).isEqualTo(StompCommand.CONNECTED);
+        assertThat(frame.getHeader("version")).isEqualTo("1.2");
+        assertThat(frame.getBody()).isEqualTo("body");
+    }
+    
+    @Test
+    void shouldSkipLeadingHeartbeats() {
+        StompFrame frame = StompFrameDecoder.decode("\n\r\nRECEIPT\nreceipt-id:77\n\n\0");
+        
+        assertThat(frame.getCommand()).isEqualTo(StompCommand.RECEIPT);
+        assertThat(frame.getHeader("receipt-id")).isEqualTo("77");
+    }
+    
+    @Test
+    void shouldDecodeFrameWithoutHeaderTerminator() {
+        StompFrame frame = StompFrameDecoder.decode("CONNECTED\nversion:1.2\0");
+        
+        assertThat(frame.getHeader("version")).isEqualTo("1.2");
+        assertThat(frame.getBody()).isEmpty();
+    }
+    
+    @Test
+    void shouldIgnoreHeaderLinesWithoutName() {
+        StompFrame frame = StompFrameDecoder.decode("MESSAGE\n:orphan\nnocolon\nkey:value:with:colons\n\n\0");
+        
+        assertThat(frame.getHeaders()).containsOnlyKeys("key");
+        assertThat(frame.getHeader("key")).isEqualTo("value:with:colons");
+    }
+    
+    @Test
+    void shouldRejectUnknownCommand() {
+        assertThatThrownBy(() -> StompFrameDecoder.decode("BOGUS\n\n\0"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unknown STOMP command: BOGUS");
+    }
+    
+    @Test
+    void shouldDecodeBinaryFrame() {
+        byte[] input = ("MESSAGE\r\n" +
+                "subscription:sub-1\r\n" +
+                "destination:/topic/caf\u00e9\r\n" +
+                "message-id:ID\\c1\r\n" +
+                "\r\n" +
+                "payload\0").getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame frame = StompFrameDecoder.decode(input, 0, input.length);
+        
+        assertThat(frame.getCommand()).isEqualTo(StompCommand.MESSAGE);
+        assertThat(frame.getHeader("destination")).isEqualTo("/topic/caf\u00e9");
+        assertThat(frame.getHeader("message-id")).isEqualTo("ID:1");
+        assertThat(frame.hasBinaryBody()).isTrue();
+        assertThat(frame.getBody()).isEqualTo("payload");
+    }
+    
+    @Test
+    void shouldDecodeBinaryFrameFromOffset() {
+        byte[] input = "xxSEND\ndestination:/a\n\nbody\0yy".getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame frame = StompFrameDecoder.decode(input, 2, input.length - 4);
+        
+        assertThat(frame.getCommand()).isEqualTo(StompCommand.SEND);
+        assertThat(frame.getBodyBytes()).containsExactly("body".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    void shouldRejectUnknownBinaryCommand() {
+        byte[] input = "BOGUS\n\n\0".getBytes(StandardCharsets.UTF_8);
+        
+        assertThatThrownBy(() -> StompFrameDecoder.decode(input, 0, input.length))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unknown STOMP command: BOGUS");
+    }
+    
+    @Test
+    void shouldUseContentLengthForBodyWithNul() {
+        byte[] input = "MESSAGE\ncontent-length:5\n\nab\0cd\0".getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame frame = StompFrameDecoder.decode(input, 0, input.length);
+        
+        assertThat(frame.getBodyBytes()).containsExactly('a', 'b', 0, 'c', 'd');
+    }
+    
+    @Test
+    void shouldCountContentLengthInUtf8Octets() {
+        StompFrame frame = StompFrameDecoder.decode("MESSAGE\ncontent-length:8\n\nh\u00e9\0\ud83d\ude00\0");
+        
+        assertThat(frame.getBody()).isEqualTo("h\u00e9\0\ud83d\ude00");
+    }
+    
+    @Test
+    void shouldRejectContentLengthShorterThanBody() {
+        byte[] input = "MESSAGE\ncontent-length:3\n\nhello\0".getBytes(StandardCharsets.UTF_8);
+        
+        assertThatThrownBy(() -> StompFrameDecoder.decode(input, 0, input.length))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("content-length");
+    }
+    
+    @Test
+    void shouldRejectContentLengthLongerThanBody() {
+        assertThatThrownBy(() -> StompFrameDecoder.decode("MESSAGE\ncontent-length:9\n\nhello\0"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("content-length");
+    }
+    
+    @Test
+    void shouldRejectInvalidContentLength() {
+        assertThatThrownBy(() -> StompFrameDecoder.decode("MESSAGE\ncontent-length:abc\n\nhello\0"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid content-length: abc");
+    }
+    
+    @Test
+    void shouldDecodeMultipleFrames() {
+        List<StompFrame> frames = StompFrameDecoder.decodeAll("MESSAGE\nsubscription:sub-1\n\nfirst\0" +
+                "\n" +
+                "RECEIPT\nreceipt-id:rcpt-1\n\n\0" +
+                "MESSAGE\ncontent-length:6\n\nsec\0nd\0\n");
+        
+        assertThat(frames).extracting(StompFrame::getCommand)
+                .containsExactly(StompCommand.MESSAGE, StompCommand.RECEIPT, StompCommand.MESSAGE);
+        assertThat(frames.get(0).getBody()).isEqualTo("first");
+        assertThat(frames.get(1).getHeader("receipt-id")).isEqualTo("rcpt-1");
+        assertThat(frames.get(2).getBody()).isEqualTo("sec\0nd");
+    }
+    
+    @Test
+    void shouldDecodeMultipleBinaryFrames() {
+        byte[] input = ("SEND\ndestination:/a\n\none\0" +
+                "SEND\ndestination:/b\ncontent-length:3\n\n\0\0\0\0").getBytes(StandardCharsets.UTF_8);
+        
+        List<StompFrame> frames = StompFrameDecoder.decodeAll(input, 0, input.length);
+        
+        assertThat(frames).hasSize(2);
+        assertThat(frames.get(0).getBody()).isEqualTo("one");
+        assertThat(frames.get(1).getHeader("destination")).isEqualTo("/b");
+        assertThat(frames.get(1).getBodyBytes()).containsExactly(0, 0, 0);
+    }
+    
+    @Test
+    void shouldDecodeNoFramesFromHeartbeats() {
+        assertThat(StompFrameDecoder.decodeAll("\n\r\n")).isEmpty();
+    }
+    
+    @Test
+    void shouldShareKnownHeaderNames() {
+        byte[] input = "MESSAGE\ndestination:/a\nx-custom:1\n\n\0".getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame first = StompFrameDecoder.decode(input, 0, input.length);
+        StompFrame second = StompFrameDecoder.decode("MESSAGE\ndestination:/a\n\n\0");
+        
+        String firstName = first.getHeaders().keySet().stream().filter("destination"::equals).findFirst().orElseThrow();
+        String secondName = second.getHeaders().keySet().stream().filter("destination"::equals).findFirst().orElseThrow();
+        assertThat(firstName).isSameAs(secondName);
+        assertThat(first.getHeader("x-custom")).isEqualTo("1");
+    }
+    
+    @Test
+    void shouldReuseCachedHeaderValues() {
+        StompHeaderValueCache cache = new StompHeaderValueCache(16);
+        byte[] input = "MESSAGE\ndestination:/queue/a\nmessage-id:m-1\n\n\0".getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame first = StompFrameDecoder.decode(input, 0, input.length, false, cache);
+        StompFrame second = StompFrameDecoder.decode(input, 0, input.length, false, cache);
+        
+        assertThat(second.getHeader("destination")).isEqualTo("/queue/a").isSameAs(first.getHeader("destination"));
+        assertThat(second.getHeader("message-id")).isEqualTo("m-1").isNotSameAs(first.getHeader("message-id"));
+    }
+    
+    @Test
+    void shouldNotCacheEscapedHeaderValues() {
+        StompHeaderValueCache cache = new StompHeaderValueCache(16);
+        byte[] input = "MESSAGE\ndestination:/queue/a\\cb\n\n\0".getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame frame = StompFrameDecoder.decode(input, 0, input.length, false, cache);
+        
+        assertThat(frame.getHeader("destination")).isEqualTo("/queue/a:b");
+    }
+    
+    @Test
+    void shouldDecodeMessageLazily() {
+        byte[] input = ("MESSAGE\r\nsubscription:sub-1\r\ndestination:/queue/a\\cb\r\nx:1\r\nx:2\r\n\r\nHello\0")
+                .getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame eager = StompFrameDecoder.decode(input, 0, input.length, true);
+        StompFrame lazy = StompFrameDecoder.decodeLazy(input, 0, input.length, true, null);
+        
+        assertThat(lazy.getHeader("subscription")).isEqualTo("sub-1");
+        assertThat(lazy.getHeader("destination")).isEqualTo("/queue/a:b");
+        assertThat(lazy.getHeader("x")).isEqualTo("1");
+        assertThat(lazy.getHeader("missing")).isNull();
+        assertThat(lazy.getHeaders()).isEqualTo(eager.getHeaders());
+        assertThat(lazy.getBody()).isEqualTo("Hello");
+        assertThat(lazy.hasBinaryBody()).isFalse();
+    }
+    
+    @Test
+    void shouldUseFirstOccurrenceOfRepeatedHeader() {
+        String text = "MESSAGE\nsubscription:sub-1\nsubscription:sub-2\ndestination:/queue/a\ndestination:/queue/b\n\nHello\0";
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame fromText = StompFrameDecoder.decode(text);
+        StompFrame eager = StompFrameDecoder.decode(input, 0, input.length, true);
+        StompFrame lazy = StompFrameDecoder.decodeLazy(input, 0, input.length, true, null);
+        StompFrame lazyIterated = StompFrameDecoder.decodeLazy(input, 0, input.length, true, null);
+        
+        assertThat(fromText.getHeader("destination")).isEqualTo("/queue/a");
+        assertThat(fromText.getHeader("subscription")).isEqualTo("sub-1");
+        assertThat(eager.getHeader("destination")).isEqualTo("/queue/a");
+        assertThat(eager.getHeader("subscription")).isEqualTo("sub-1");
+        assertThat(lazy.getHeader("destination")).isEqualTo("/queue/a");
+        assertThat(lazy.getHeader("subscription")).isEqualTo("sub-1");
+        assertThat(lazyIterated.getHeaders())
+                .containsEntry("destination", "/queue/a")
+                .containsEntry("subscription", "sub-1")
+                .hasSize(2);
+    }
+    
+    @Test
+    void shouldDecodeLazyMessageWithContentLength() {
+        byte[] input = "MESSAGE\nsubscription:sub-1\ncontent-length:3\n\na\0b\0".getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame frame = StompFrameDecoder.decodeLazy(input, 0, input.length, false, null);
+        
+        assertThat(frame.hasBinaryBody()).isTrue();
+        assertThat(frame.getBodyBytes()).containsExactly('a', 0, 'b');
+    }
+    
+    @Test
+    void shouldDecodeOtherFramesEagerlyInLazyMode() {
+        byte[] input = "RECEIPT\nreceipt-id:rcpt-1\n\n\0".getBytes(StandardCharsets.UTF_8);
+        
+        StompFrame frame = StompFrameDecoder.decodeLazy(input, 0, input.length, true, null);
+        
+        assertThat(frame.getCommand()).isEqualTo(StompCommand.RECEIPT);
+        assertThat(frame.getHeader("receipt-id")).isEqualTo("rcpt-1");
+    }
+}
@@ -1,7 +1,11 @@
 package dev.pixelib.jstomp;
 
+import okio.Buffer;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -99,5 +103,85 @@ class StompFrameTest {
                 .hasMessageContaining("Frame string cannot be null or empty");
     }
     
-
+    @Test
+    void shouldRoundTripBinaryBody() {
+        byte[] body = {(byte) 0xCA, (byte) 0xFE, 0x0A, (byte) 0xBA, (byte) 0xBE};
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/queue/binary");
+        frame.setBody(body);
+        
+        StompFrame parsed = StompFrame.parse(frame.toBytes());
+        
+        assertThat(parsed.hasBinaryBody()).isTrue();
+        assertThat(parsed.getHeader("destination")).isEqualTo("/queue/binary");
+        assertThat(parsed.getBodyBytes()).containsExactly(body);
+    }
+    
+    @Test
+    void shouldExposeBinaryBodyAsReadOnlyBuffer() {
+        StompFrame frame = StompFrame.parse("MESSAGE\ndestination:/topic/a\n\nabc\0".getBytes(StandardCharsets.UTF_8));
+        
+        ByteBuffer buffer = frame.getBodyBuffer();
+        
+        assertThat(buffer.isReadOnly()).isTrue();
+        assertThat(buffer.remaining()).isEqualTo(3);
+        assertThat(buffer.get(0)).isEqualTo((byte) 'a');
+        assertThat(frame.getBody()).isEqualTo("abc");
+    }
+    
+    @Test
+    void shouldEncodeTextBodyAsUtf8() {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.setBody("h\u00e9llo");
+        
+        assertThat(frame.hasBinaryBody()).isFalse();
+        assertThat(frame.getBodyBytes()).containsExactly("h\u00e9llo".getBytes(StandardCharsets.UTF_8));
+        assertThat(new String(frame.toBytes(), StandardCharsets.UTF_8)).isEqualTo(frame.toString());
+    }
+    
+    @Test
+    void shouldWriteContentLengthWhenRequested() {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("content-length", "999");
+        frame.setBody("h\u00e9llo");
+        
+        String frameString = frame.encode(true);
+        
+        assertThat(frameString).contains("content-length:6\n");
+        assertThat(frameString).doesNotContain("999");
+        assertThat(frame.toString()).doesNotContain("content-length:6");
+    }
+    
+    @Test
+    void shouldAlwaysWriteContentLengthForBinaryBody() {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.setBody(new byte[] {1, 0, 2});
+        
+        StompFrame parsed = StompFrame.parse(frame.toBytes());
+        
+        assertThat(parsed.getHeader("content-length")).isEqualTo("3");
+        assertThat(parsed.getBodyBytes()).containsExactly(1, 0, 2);
+    }
+    
+    @Test
+    void shouldEscapeEverySpecialCharacter() {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("a:b", "one\\two\nthree\rfour:five");
+        
+        assertThat(frame.toString()).contains("a\\cb:one\\\\two\\nthree\\rfour\\cfive\n");
+        assertThat(StompFrame.parse(frame.toString()).getHeader("a:b")).isEqualTo("one\\two\nthree\rfour:five");
+    }
+    
+    @Test
+    void shouldEncodeSameBytesAsText() {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/queue/caf\u00e9");
+        frame.addHeader("selector", "a:b");
+        frame.setBody("Gr\u00fc\u00dfe \u20ac");
+        
+        Buffer buffer = new Buffer();
+        frame.writeTo(buffer, true);
+        
+        assertThat(buffer.readUtf8()).isEqualTo(frame.encode(true));
+    }
 }
@@ -0,0 +1,48 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompHeaderValueCacheTest {
+    
+    @Test
+    void shouldReturnSameStringForRepeatedValue() {
+        StompHeaderValueCache cache = new StompHeaderValueCache(8);
+        byte[] first = "x/topic/prices".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "/topic/prices!".getBytes(StandardCharsets.UTF_8);
+        
+        String value = cache.get(first, 1, first.length);
+        
+        assertThat(value).isEqualTo("/topic/prices");
+        assertThat(cache.get(second, 0, second.length - 1)).isSameAs(value);
+    }
+    
+    @Test
+    void shouldDecodeUtf8Values() {
+        StompHeaderValueCache cache = new StompHeaderValueCache(8);
+        byte[] input = "/topic/café".getBytes(StandardCharsets.UTF_8);
+        
+        assertThat(cache.get(input, 0, input.length)).isEqualTo("/topic/café");
+    }
+    
+    @Test
+    void shouldStayCorrectWhenValuesCollide() {
+        StompHeaderValueCache cache = new StompHeaderValueCache(1);
+        byte[] a = "sub-1".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "sub-2".getBytes(StandardCharsets.UTF_8);
+        
+        assertThat(cache.get(a, 0, a.length)).isEqualTo("sub-1");
+        assertThat(cache.get(b, 0, b.length)).isEqualTo("sub-2");
+        assertThat(cache.get(a, 0, a.length)).isEqualTo("sub-1");
+    }
+    
+    @Test
+    void shouldRejectCapacityThatIsNotPowerOfTwo() {
+        assertThatThrownBy(() -> new StompHeaderValueCache(12))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
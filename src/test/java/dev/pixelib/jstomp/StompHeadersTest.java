@@ -0,0 +1,101 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompHeadersTest {
+    
+    @Test
+    void shouldKeepInsertionOrderAndReplaceValues() {
+        StompHeaders headers = new StompHeaders(1);
+        headers.set("destination", "/queue/a");
+        headers.set("content-type", "text/plain");
+        headers.set("priority", "1");
+        headers.set("destination", "/queue/b");
+        
+        assertThat(headers).hasSize(3);
+        assertThat(headers.get("destination")).isEqualTo("/queue/b");
+        assertThat(headers.keySet()).containsExactly("destination", "content-type", "priority");
+        assertThat(headers.get("missing")).isNull();
+    }
+    
+    @Test
+    void shouldRemoveHeadersKeepingOrder() {
+        StompHeaders headers = new StompHeaders(3);
+        headers.set("destination", "/queue/a");
+        headers.set("content-encoding", "lz4");
+        headers.set("priority", "1");
+        
+        headers.unset("content-encoding");
+        headers.unset("missing");
+        headers.set("content-type", "text/plain");
+        
+        assertThat(headers.keySet()).containsExactly("destination", "priority", "content-type");
+        assertThat(headers.get("content-encoding")).isNull();
+    }
+    
+    @Test
+    void shouldEqualEquivalentMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("id", "sub-1");
+        map.put("ack", "client");
+        
+        StompHeaders headers = StompHeaders.of(map);
+        
+        assertThat(headers).isEqualTo(map);
+        assertThat(headers.hashCode()).isEqualTo(map.hashCode());
+        assertThat(StompHeaders.of(headers)).isSameAs(headers);
+    }
+    
+    @Test
+    void shouldRejectModification() {
+        StompHeaders headers = StompHeaders.of(Map.of("id", "sub-1"));
+        
+        assertThatThrownBy(() -> headers.put("id", "sub-2"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> headers.remove("id"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThat(headers.get("id")).isEqualTo("sub-1");
+    }
+    
+    @Test
+    void shouldHandHeadersFromFrameToMessage() {
+        StompFrame frame = StompFrame.parse("MESSAGE\ndestination:/queue/a\nmessage-id:m-1\n\nHello\0");
+        
+        StompMessage message = StompMessage.fromFrame(frame);
+        
+        assertThat(message.getHeaders()).isInstanceOf(StompHeaders.class)
+                .containsEntry("destination", "/queue/a")
+                .containsEntry("message-id", "m-1");
+    }
+    
+    @Test
+    void shouldReturnSnapshotFromFrame() {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/queue/a");
+        
+        Map<String, String> snapshot = frame.getHeaders();
+        frame.addHeader("priority", "1");
+        
+        assertThat(snapshot).containsOnlyKeys("destination");
+        assertThat(frame.getHeaders()).containsOnlyKeys("destination", "priority");
+    }
+    
+    @Test
+    void shouldDecodeDeferredHeadersOnLookup() {
+        byte[] lines = "destination:/queue/a\nmessage-id:m-1\n".getBytes(StandardCharsets.UTF_8);
+        StompHeaders headers = new StompHeaders(2);
+        headers.defer(lines, 0, lines.length);
+        
+        assertThat(headers.get("message-id")).isEqualTo("m-1");
+        assertThat(headers.get("missing")).isNull();
+        assertThat(headers).containsExactly(
+                Map.entry("destination", "/queue/a"), Map.entry("message-id", "m-1"));
+    }
+}
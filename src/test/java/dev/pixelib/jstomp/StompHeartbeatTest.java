@@ -0,0 +1,71 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompHeartbeatTest {
+    
+    @Test
+    void shouldNegotiateLargestIntervals() {
+        long[] intervals = StompHeartbeat.negotiate(1000, 2000, "3000,500");
+        
+        assertThat(intervals).containsExactly(1000, 3000);
+    }
+    
+    @Test
+    void shouldDisableDirectionsEitherSideDoesNotSupport() {
+        assertThat(StompHeartbeat.negotiate(0, 1000, "1000,1000")).containsExactly(0, 1000);
+        assertThat(StompHeartbeat.negotiate(1000, 1000, "0,0")).containsExactly(0, 0);
+        assertThat(StompHeartbeat.negotiate(1000, 1000, null)).containsExactly(0, 0);
+    }
+    
+    @Test
+    void shouldRejectInvalidServerHeader() {
+        assertThatThrownBy(() -> StompHeartbeat.negotiate(1000, 1000, "abc,def"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid heart-beat header");
+    }
+    
+    @Test
+    void shouldBeInactiveWithoutIntervals() {
+        StompHeartbeat heartbeat = new StompHeartbeat(0, 0, () -> { }, () -> { });
+        
+        assertThat(heartbeat.isActive()).isFalse();
+    }
+    
+    @Test
+    void shouldSendBeatOnlyWhenIdle() throws Exception {
+        AtomicInteger beats = new AtomicInteger();
+        StompHeartbeat heartbeat = new StompHeartbeat(20, 0, beats::incrementAndGet, () -> { });
+        
+        heartbeat.run();
+        assertThat(beats).hasValue(0);
+        
+        Thread.sleep(30);
+        heartbeat.run();
+        assertThat(beats).hasValue(1);
+        
+        heartbeat.onWrite();
+        heartbeat.run();
+        assertThat(beats).hasValue(1);
+    }
+    
+    @Test
+    void shouldReportMissedServerBeats() throws Exception {
+        AtomicInteger missed = new AtomicInteger();
+        StompHeartbeat heartbeat = new StompHeartbeat(0, 10, () -> { }, missed::incrementAndGet);
+        
+        Thread.sleep(30);
+        heartbeat.onRead();
+        heartbeat.run();
+        assertThat(missed).hasValue(0);
+        
+        Thread.sleep(30);
+        heartbeat.run();
+        assertThat(missed).hasValue(1);
+    }
+}
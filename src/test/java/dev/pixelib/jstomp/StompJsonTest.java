@@ -2,6 +2,8 @@ package dev.pixelib.jstomp;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
 import okhttp3.OkHttpClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +11,9 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.*;
@@ -120,6 +125,62 @@ class StompJsonTest {
         assertThat(handler).isNotNull();
     }
     
+    @Test
+    void shouldDecodeJsonFromBinaryBody() throws Exception {
+        StompJsonDecoder<TestMessage> decoder = new StompJsonDecoder<>(new Gson(), TestMessage.class);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            name.append('é');
+        }
+        byte[] body = ("{\"name\":\"" + name + "\",\"value\":7}").getBytes(StandardCharsets.UTF_8);
+        StompMessage message = new StompMessage("/queue/test", body, Map.of());
+        
+        TestMessage decoded = decoder.decode(message);
+        
+        assertThat(decoded.getName()).isEqualTo(name.toString());
+        assertThat(decoded.getValue()).isEqualTo(7);
+    }
+    
+    @Test
+    void shouldDecodeJsonLikeGson() throws Exception {
+        StompJsonDecoder<List<Integer>> decoder = new StompJsonDecoder<>(new Gson(),
+                new TypeToken<List<Integer>>() { }.getType());
+        
+        assertThat(decoder.decode(new StompMessage("/queue/test", "[1, 2, 3]", Map.of()))).containsExactly(1, 2, 3);
+        assertThat(decoder.decode(new StompMessage("/queue/test", "", Map.of()))).isNull();
+        assertThatThrownBy(() -> decoder.decode(new StompMessage("/queue/test", "[1] [2]", Map.of())))
+                .isInstanceOf(JsonSyntaxException.class);
+    }
+    
+    @Test
+    void shouldEncodeJsonLikeGson() throws Exception {
+        Gson gson = new GsonBuilder().serializeNulls().create();
+        StompJsonEncoder encoder = new StompJsonEncoder(gson);
+        TestMessage message = new TestMessage("héllo \"<world>\"", 42);
+        
+        assertThat(new String(encoder.encode(message), StandardCharsets.UTF_8)).isEqualTo(gson.toJson(message));
+        assertThat(new String(encoder.encode(new TestMessage(null, 1)), StandardCharsets.UTF_8))
+                .isEqualTo(gson.toJson(new TestMessage(null, 1)));
+        assertThat(new String(encoder.encode(null), StandardCharsets.UTF_8)).isEqualTo("null");
+    }
+    
+    @Test
+    void shouldSendJsonAsTextWithContentType() throws Exception {
+        StompSendBuffer buffer = new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT);
+        stompClient.setSendBuffer(buffer);
+        
+        stompClient.sendJson("/queue/test", new TestMessage("Hello", 42));
+        stompClient.sendJson("/queue/test", new TestMessage("Hello", 42), Map.of("content-type", "application/vnd.test+json"));
+        
+        List<StompFrame> frames = new ArrayList<>();
+        buffer.flush(frames::add);
+        assertThat(frames).hasSize(2);
+        assertThat(frames.get(0).hasBinaryBody()).isFalse();
+        assertThat(frames.get(0).getHeader("content-type")).isEqualTo("application/json");
+        assertThat(frames.get(0).getBody()).isEqualTo("{\"name\":\"Hello\",\"value\":42}");
+        assertThat(frames.get(1).getHeader("content-type")).isEqualTo("application/vnd.test+json");
+    }
+    
     // Test helper class
     static class TestMessage {
         private String name;
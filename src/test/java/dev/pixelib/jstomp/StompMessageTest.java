@@ -2,6 +2,7 @@ package dev.pixelib.jstomp;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -41,4 +42,23 @@ class StompMessageTest {
         assertThat(toString).contains("body='Hello'");
         assertThat(toString).contains("headers={id=123}");
     }
+    
+    @Test
+    void shouldExposeBinaryBody() {
+        byte[] body = "Hello".getBytes(StandardCharsets.UTF_8);
+        StompMessage message = new StompMessage("/queue/test", body, Map.of());
+        
+        assertThat(message.hasBinaryBody()).isTrue();
+        assertThat(message.getBodyBytes()).containsExactly(body);
+        assertThat(message.getBodyBuffer().remaining()).isEqualTo(body.length);
+        assertThat(message.getBody()).isEqualTo("Hello");
+    }
+    
+    @Test
+    void shouldExposeTextBodyAsBytes() {
+        StompMessage message = new StompMessage("/queue/test", "Hello", Map.of());
+        
+        assertThat(message.hasBinaryBody()).isFalse();
+        assertThat(message.getBodyBytes()).containsExactly("Hello".getBytes(StandardCharsets.UTF_8));
+    }
 }
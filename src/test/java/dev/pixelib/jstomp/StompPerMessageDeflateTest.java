@@ -0,0 +1,84 @@
+package dev.pixelib.jstomp;
+
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class StompPerMessageDeflateTest {
+
+    @Test
+    void shouldMatchOkHttpDefaults() {
+        StompPerMessageDeflate defaults = StompPerMessageDeflate.defaults();
+
+        assertThat(defaults.isEnabled()).isTrue();
+        assertThat(defaults.isClientContextTakeover()).isTrue();
+        assertThat(defaults.isServerContextTakeover()).isTrue();
+        assertThat(defaults.getMinMessageSize()).isEqualTo(1024L);
+        assertThat(defaults.extensionOffer()).isEqualTo("permessage-deflate");
+    }
+
+    @Test
+    void shouldBuildExtensionOffer() {
+        assertThat(StompPerMessageDeflate.disabled().extensionOffer()).isNull();
+        assertThat(StompPerMessageDeflate.builder().clientContextTakeover(false).build().extensionOffer())
+                .isEqualTo("permessage-deflate; client_no_context_takeover");
+        assertThat(StompPerMessageDeflate.builder().serverContextTakeover(false).build().extensionOffer())
+                .isEqualTo("permessage-deflate; server_no_context_takeover");
+    }
+
+    @Test
+    void shouldRejectInvalidOptions() {
+        assertThatThrownBy(() -> StompPerMessageDeflate.builder().minMessageSize(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new StompClient(URI.create("ws://localhost:8080/ws")).setPerMessageDeflate(null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldOfferConfiguredExtensionInHandshake() throws Exception {
+        StompPerMessageDeflate options = StompPerMessageDeflate.builder()
+                .clientContextTakeover(false)
+                .serverContextTakeover(false)
+                .build();
+
+        RecordedRequest request = connect(options);
+
+        assertThat(request.getHeader("Sec-WebSocket-Extensions"))
+                .isEqualTo("permessage-deflate; client_no_context_takeover; server_no_context_takeover");
+    }
+
+    @Test
+    void shouldNotOfferExtensionWhenDisabled() throws Exception {
+        RecordedRequest request = connect(StompPerMessageDeflate.disabled());
+
+        assertThat(request.getHeader("Sec-WebSocket-Extensions")).isNull();
+    }
+
+    private static RecordedRequest connect(StompPerMessageDeflate options) throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() { }));
+            server.start();
+
+            StompClient client = new StompClient(URI.create("ws://" + server.getHostName() + ":" + server.getPort() + "/ws"));
+            client.setPerMessageDeflate(options);
+            client.connect();
+
+            RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertThat(request).isNotNull();
+            // Bytes are counted once the write returns, which can be after the server read them
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (client.getWireStats().getWireBytesSent() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(client.getWireStats().getWireBytesSent()).isGreaterThan(0L);
+            return request;
+        }
+    }
+}
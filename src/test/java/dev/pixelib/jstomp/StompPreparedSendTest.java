@@ -0,0 +1,93 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompPreparedSendTest {
+    
+    @Test
+    void shouldEncodeTemplateHeadersAfterFrameHeaders() {
+        StompFrameTemplate template = new StompFrameTemplate(StompCommand.SEND,
+                Map.of("destination", "/queue/a:b"));
+        StompFrame frame = new StompFrame(template);
+        frame.addHeader("correlation-id", "42");
+        frame.setBody("Hello");
+        
+        assertThat(frame.toString()).isEqualTo("SEND\ncorrelation-id:42\ndestination:/queue/a\\cb\n\nHello\0");
+    }
+    
+    @Test
+    void shouldExposeTemplateHeaders() {
+        StompFrameTemplate template = new StompFrameTemplate(StompCommand.SEND,
+                Map.of("destination", "/queue/test", "priority", "1"));
+        StompFrame frame = new StompFrame(template);
+        frame.addHeader("priority", "9");
+        
+        assertThat(frame.getCommand()).isEqualTo(StompCommand.SEND);
+        assertThat(frame.getHeader("destination")).isEqualTo("/queue/test");
+        assertThat(frame.getHeader("priority")).isEqualTo("9");
+        assertThat(frame.getHeaders()).containsEntry("destination", "/queue/test").containsEntry("priority", "9");
+    }
+    
+    @Test
+    void shouldNotRepeatOverriddenTemplateHeaders() {
+        StompFrameTemplate template = new StompFrameTemplate(StompCommand.SEND,
+                Map.of("destination", "/queue/test", "priority", "1"));
+        StompFrame frame = new StompFrame(template);
+        frame.addHeader("priority", "9");
+        frame.setBody("Hello");
+        
+        assertThat(frame.toString()).isEqualTo("SEND\npriority:9\ndestination:/queue/test\n\nHello\0");
+        assertThat(StompFrame.parse(frame.toBytes()).getHeader("priority")).isEqualTo("9");
+        assertThat(StompFrame.parse(frame.encode(true)).getHeader("priority")).isEqualTo("9");
+    }
+    
+    @Test
+    void shouldRoundTripPreparedFrame() {
+        StompFrameTemplate template = new StompFrameTemplate(StompCommand.SEND,
+                Map.of("destination", "/queue/test", "content-type", "text/plain"));
+        StompFrame frame = new StompFrame(template);
+        frame.setBody(new byte[] {0, 1, 2});
+        
+        StompFrame parsed = StompFrame.parse(frame.toBytes());
+        
+        assertThat(parsed.getHeader("destination")).isEqualTo("/queue/test");
+        assertThat(parsed.getHeader("content-type")).isEqualTo("text/plain");
+        assertThat(parsed.getBodyBytes()).containsExactly(0, 1, 2);
+    }
+    
+    @Test
+    void shouldRejectContentLengthInTemplate() {
+        assertThatThrownBy(() -> new StompFrameTemplate(StompCommand.SEND, Map.of("content-length", "5")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void shouldSendThroughClientBuffer() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        StompSendBuffer buffer = new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT);
+        client.setSendBuffer(buffer);
+        StompPreparedSend prepared = client.prepareSend("/topic/prices", Map.of("content-type", "application/json"));
+        
+        prepared.send("{}");
+        prepared.send("{}", Map.of("correlation-id", "1"));
+        prepared.send(new byte[] {1, 2, 3});
+        
+        assertThat(prepared.getDestination()).isEqualTo("/topic/prices");
+        assertThat(buffer.getBufferedCount()).isEqualTo(3);
+    }
+    
+    @Test
+    void shouldRejectSendWhenNotConnected() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        StompPreparedSend prepared = client.prepareSend("/topic/prices", Map.of());
+        
+        assertThatThrownBy(() -> prepared.send("{}"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
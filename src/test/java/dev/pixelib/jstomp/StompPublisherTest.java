@@ -0,0 +1,69 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompPublisherTest {
+    
+    @Test
+    void shouldRejectInvalidWindow() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        
+        assertThatThrownBy(() -> client.createPublisher(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void shouldReleaseWindowWhenSendFails() throws Exception {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        StompPublisher publisher = client.createPublisher(1);
+        
+        CompletableFuture<Void> first = publisher.publish("/queue/test", "one");
+        CompletableFuture<Void> second = publisher.publish("/queue/test", "two");
+        
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+        assertThat(publisher.getInFlight()).isZero();
+        assertThat(publisher.getFailedCount()).isEqualTo(2);
+        assertThat(publisher.getConfirmedCount()).isZero();
+        assertThat(publisher.getAverageConfirmLatency()).isEqualTo(Duration.ZERO);
+    }
+    
+    @Test
+    void shouldBlockWhileWindowIsFull() throws Exception {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        client.setSendBuffer(new StompSendBuffer(100, 1024, StompSendOverflowPolicy.REJECT));
+        StompPublisher publisher = client.createPublisher(2);
+        
+        CompletableFuture<Void> first = publisher.publish("/queue/test", "one");
+        CompletableFuture<Void> second = publisher.publish("/queue/test", "two");
+        assertThat(publisher.getInFlight()).isEqualTo(2);
+        assertThat(publisher.awaitConfirms(Duration.ofMillis(10))).isFalse();
+        
+        CompletableFuture<CompletableFuture<Void>> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return publisher.publish("/queue/test", "three");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertThat(third).isNotDone();
+        
+        // Buffered messages keep their receipts when disconnecting, cancelling one frees the window
+        client.disconnect();
+        assertThat(second).isNotDone();
+        first.cancel(false);
+        
+        assertThat(third.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(publisher.getFailedCount()).isEqualTo(1);
+        assertThat(client.getSendBuffer().getBufferedCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,121 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompReceiptTrackerTest {
+    
+    @Test
+    void shouldGenerateUniqueReceiptIds() {
+        StompReceiptTracker tracker = new StompReceiptTracker();
+        
+        assertThat(tracker.nextReceiptId()).isNotEqualTo(tracker.nextReceiptId());
+    }
+    
+    @Test
+    void shouldCompletePendingReceipt() {
+        StompReceiptTracker tracker = new StompReceiptTracker();
+        CompletableFuture<Void> future = tracker.register("rcpt-1", 0);
+        
+        assertThat(tracker.size()).isEqualTo(1);
+        assertThat(tracker.complete("rcpt-1")).isTrue();
+        assertThat(future).isCompleted();
+        assertThat(tracker.size()).isZero();
+    }
+    
+    @Test
+    void shouldIgnoreUnknownReceipt() {
+        StompReceiptTracker tracker = new StompReceiptTracker();
+        CompletableFuture<Void> future = tracker.register("rcpt-1", 0);
+        
+        assertThat(tracker.complete("rcpt-2")).isFalse();
+        assertThat(tracker.complete(null)).isFalse();
+        assertThat(future).isNotDone();
+    }
+    
+    @Test
+    void shouldFailPendingReceipt() {
+        StompReceiptTracker tracker = new StompReceiptTracker();
+        CompletableFuture<Void> future = tracker.register("rcpt-1", 0);
+        
+        assertThat(tracker.fail("rcpt-1", new StompException("Server error"))).isTrue();
+        assertThatThrownBy(future::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(StompException.class);
+    }
+    
+    @Test
+    void shouldFailAllPendingReceipts() {
+        StompReceiptTracker tracker = new StompReceiptTracker();
+        CompletableFuture<Void> first = tracker.register("rcpt-1", 0);
+        CompletableFuture<Void> second = tracker.register("rcpt-2", 0);
+        
+        tracker.failAll(new StompException("Connection lost"));
+        
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+        assertThat(tracker.size()).isZero();
+    }
+    
+    @Test
+    void shouldTimeOutAndForgetReceipt() {
+        StompReceiptTracker tracker = new StompReceiptTracker();
+        CompletableFuture<Void> future = tracker.register("rcpt-1", 10);
+        
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(tracker.size()).isZero();
+    }
+    
+    @Test
+    void shouldFailAsyncSendWhenNotConnected() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        
+        CompletableFuture<Void> future = client.sendAsync("/queue/test", "hello");
+        
+        assertThat(future).isCompletedExceptionally();
+    }
+    
+    @Test
+    void shouldNotTrackReceiptWhileBuffered() throws Exception {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        StompSendBuffer buffer = new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT);
+        client.setSendBuffer(buffer);
+        client.setReceiptTimeout(Duration.ofMillis(10));
+        
+        CompletableFuture<Void> future = client.sendAsync("/queue/test", "hello");
+        Thread.sleep(100);
+        
+        assertThat(future).isNotDone();
+        assertThat(buffer.getBufferedCount()).isEqualTo(1);
+        
+        future.cancel(false);
+        
+        assertThat(buffer.getBufferedCount()).isZero();
+        assertThat(buffer.getBufferedBytes()).isZero();
+    }
+    
+    @Test
+    void shouldFailReceiptOfFrameDroppedFromBuffer() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        client.setSendBuffer(new StompSendBuffer(1, 1024, StompSendOverflowPolicy.DROP_OLDEST));
+        
+        CompletableFuture<Void> first = client.sendAsync("/queue/test", "first");
+        CompletableFuture<Void> second = client.sendAsync("/queue/test", "second");
+        
+        assertThatThrownBy(first::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(StompException.class);
+        assertThat(second).isNotDone();
+    }
+}
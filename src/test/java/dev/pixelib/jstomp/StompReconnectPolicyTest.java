@@ -0,0 +1,70 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompReconnectPolicyTest {
+    
+    @Test
+    void shouldGrowDelayExponentiallyUpToMaximum() {
+        StompReconnectPolicy policy = StompReconnectPolicy.builder()
+                .initialDelay(Duration.ofMillis(100))
+                .maxDelay(Duration.ofMillis(1000))
+                .multiplier(2)
+                .jitter(0)
+                .build();
+        
+        assertThat(policy.delayMillis(1)).isEqualTo(100);
+        assertThat(policy.delayMillis(2)).isEqualTo(200);
+        assertThat(policy.delayMillis(4)).isEqualTo(800);
+        assertThat(policy.delayMillis(5)).isEqualTo(1000);
+        assertThat(policy.delayMillis(50)).isEqualTo(1000);
+    }
+    
+    @Test
+    void shouldKeepJitteredDelayWithinBounds() {
+        StompReconnectPolicy policy = StompReconnectPolicy.builder()
+                .initialDelay(Duration.ofMillis(1000))
+                .jitter(0.5)
+                .build();
+        
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.delayMillis(1)).isBetween(500L, 1000L);
+        }
+    }
+    
+    @Test
+    void shouldLimitAttempts() {
+        StompReconnectPolicy limited = StompReconnectPolicy.builder().maxAttempts(3).build();
+        StompReconnectPolicy unlimited = StompReconnectPolicy.builder().build();
+        
+        assertThat(limited.allowsAttempt(3)).isTrue();
+        assertThat(limited.allowsAttempt(4)).isFalse();
+        assertThat(unlimited.allowsAttempt(Integer.MAX_VALUE)).isTrue();
+    }
+    
+    @Test
+    void shouldRejectInvalidSettings() {
+        assertThatThrownBy(() -> StompReconnectPolicy.builder().jitter(1.5))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StompReconnectPolicy.builder().multiplier(0.5))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StompReconnectPolicy.builder().maxAttempts(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void shouldAcceptReconnectPolicyOnClient() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        
+        client.setReconnectPolicy(StompReconnectPolicy.builder().build());
+        client.disconnect();
+        
+        assertThat(client.isConnected()).isFalse();
+    }
+}
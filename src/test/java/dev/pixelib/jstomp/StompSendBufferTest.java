@@ -0,0 +1,97 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompSendBufferTest {
+    
+    @Test
+    void shouldFlushFramesInOrder() {
+        StompSendBuffer buffer = new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT);
+        buffer.add(frame("1"));
+        buffer.add(frame("2"));
+        
+        List<String> sent = new ArrayList<>();
+        buffer.flush(frame -> sent.add(frame.getBody()));
+        
+        assertThat(sent).containsExactly("1", "2");
+        assertThat(buffer.getBufferedCount()).isZero();
+        assertThat(buffer.getBufferedBytes()).isZero();
+        assertThat(buffer.getFlushedCount()).isEqualTo(2);
+    }
+    
+    @Test
+    void shouldDropOldestWhenMessageLimitReached() {
+        StompSendBuffer buffer = new StompSendBuffer(2, 1024, StompSendOverflowPolicy.DROP_OLDEST);
+        buffer.add(frame("1"));
+        buffer.add(frame("2"));
+        buffer.add(frame("3"));
+        
+        List<String> sent = new ArrayList<>();
+        buffer.flush(frame -> sent.add(frame.getBody()));
+        
+        assertThat(sent).containsExactly("2", "3");
+        assertThat(buffer.getDroppedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void shouldDropNewestWhenByteLimitReached() {
+        StompSendBuffer buffer = new StompSendBuffer(10, 6, StompSendOverflowPolicy.DROP_NEWEST);
+        buffer.add(frame("abc"));
+        buffer.add(frame("def"));
+        buffer.add(frame("g"));
+        
+        assertThat(buffer.getBufferedCount()).isEqualTo(2);
+        assertThat(buffer.getBufferedBytes()).isEqualTo(6);
+        assertThat(buffer.getDroppedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void shouldRejectWhenFull() {
+        StompSendBuffer buffer = new StompSendBuffer(1, 1024, StompSendOverflowPolicy.REJECT);
+        buffer.add(frame("1"));
+        
+        assertThatThrownBy(() -> buffer.add(frame("2")))
+                .isInstanceOf(StompException.class)
+                .hasMessageContaining("Send buffer is full");
+        assertThat(buffer.getDroppedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void shouldDropMessageLargerThanBuffer() {
+        StompSendBuffer buffer = new StompSendBuffer(10, 4, StompSendOverflowPolicy.DROP_OLDEST);
+        buffer.add(frame("ab"));
+        buffer.add(frame("too large"));
+        
+        assertThat(buffer.getBufferedCount()).isEqualTo(1);
+        assertThat(buffer.getDroppedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void shouldBufferSendsWhileDisconnected() throws Exception {
+        StompSendBuffer buffer = new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT);
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        client.setSendBuffer(buffer);
+        
+        client.send("/queue/test", "Hello");
+        client.send("/queue/test", new byte[] {1, 2, 3});
+        client.sendJson("/queue/test", List.of(1, 2));
+        
+        assertThat(client.getSendBuffer()).isSameAs(buffer);
+        assertThat(buffer.getBufferedCount()).isEqualTo(3);
+        assertThat(buffer.getBufferedBytes()).isEqualTo(5 + 3 + 5);
+    }
+    
+    private static StompFrame frame(String body) {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/queue/test");
+        frame.setBody(body);
+        return frame;
+    }
+}
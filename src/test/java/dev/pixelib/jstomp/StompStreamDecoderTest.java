@@ -0,0 +1,204 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompStreamDecoderTest {
+    
+    private static final String FRAME = "MESSAGE\nsubscription:sub-1\ndestination:/queue/test\n\nHello\0";
+    
+    @Test
+    void shouldDecodeCompleteFrame() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        List<StompFrame> frames = decoder.decode(FRAME);
+        
+        assertThat(frames).hasSize(1);
+        assertThat(frames.get(0).getBody()).isEqualTo("Hello");
+        assertThat(frames.get(0).hasBinaryBody()).isFalse();
+        assertThat(decoder.hasPartialFrame()).isFalse();
+    }
+    
+    @Test
+    void shouldDecodePreEncodedTextAsText() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        List<StompFrame> frames = decoder.decodeText(FRAME.getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(frames).hasSize(1);
+        assertThat(frames.get(0).getBody()).isEqualTo("Hello");
+        assertThat(frames.get(0).hasBinaryBody()).isFalse();
+    }
+    
+    @Test
+    void shouldReassembleFrameSplitAcrossMessages() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        assertThat(decoder.decode("MESSAGE\nsubscr")).isEmpty();
+        assertThat(decoder.hasPartialFrame()).isTrue();
+        assertThat(decoder.decode("iption:sub-1\n\nHel")).isEmpty();
+        List<StompFrame> frames = decoder.decode("lo\0");
+        
+        assertThat(frames).hasSize(1);
+        assertThat(frames.get(0).getHeader("subscription")).isEqualTo("sub-1");
+        assertThat(frames.get(0).getBody()).isEqualTo("Hello");
+        assertThat(decoder.hasPartialFrame()).isFalse();
+    }
+    
+    @Test
+    void shouldDecodeEveryByteSplit() {
+        byte[] input = (FRAME + "\n" + FRAME).getBytes(StandardCharsets.UTF_8);
+        
+        for (int split = 1; split < input.length; split++) {
+            StompStreamDecoder decoder = new StompStreamDecoder(1024);
+            List<StompFrame> frames = new ArrayList<>();
+            frames.addAll(decoder.decode(Arrays.copyOfRange(input, 0, split)));
+            frames.addAll(decoder.decode(Arrays.copyOfRange(input, split, input.length)));
+            
+            assertThat(frames).hasSize(2);
+            assertThat(frames).extracting(StompFrame::getBody).containsExactly("Hello", "Hello");
+        }
+    }
+    
+    @Test
+    void shouldDecodeEveryTextSplit() {
+        String input = "MESSAGE\nsubscription:sub-1\ncontent-length:7\n\nh\u00e9\0\u20ac\0\n" + FRAME;
+        
+        for (int split = 1; split < input.length(); split++) {
+            StompStreamDecoder decoder = new StompStreamDecoder(1024);
+            List<StompFrame> frames = new ArrayList<>();
+            frames.addAll(decoder.decode(input.substring(0, split)));
+            frames.addAll(decoder.decode(input.substring(split)));
+            
+            assertThat(frames).extracting(StompFrame::getBody).containsExactly("h\u00e9\0\u20ac", "Hello");
+            assertThat(decoder.hasPartialFrame()).isFalse();
+        }
+    }
+    
+    @Test
+    void shouldDecodeFramesFollowingBufferedFrameInLargeMessage() {
+        StompStreamDecoder decoder = new StompStreamDecoder(64);
+        
+        assertThat(decoder.decode("MESSAGE\n\nab")).isEmpty();
+        List<StompFrame> frames = decoder.decode("c\0" + FRAME + FRAME + "MESSAGE\n");
+        
+        assertThat(frames).extracting(StompFrame::getBody).containsExactly("abc", "Hello", "Hello");
+        assertThat(decoder.hasPartialFrame()).isTrue();
+    }
+    
+    @Test
+    void shouldRejectLargeMessageContinuingBufferedFrame() {
+        StompStreamDecoder decoder = new StompStreamDecoder(32);
+        
+        assertThat(decoder.decode("MESSAGE\n\n")).isEmpty();
+        
+        assertThatThrownBy(() -> decoder.decode("x".repeat(100_000).getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(StompFrameTooLargeException.class);
+        assertThat(decoder.hasPartialFrame()).isFalse();
+    }
+    
+    @Test
+    void shouldEmitCompleteFramesAndKeepRemainder() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        List<StompFrame> frames = decoder.decode(FRAME + FRAME + "MESSAGE\n");
+        
+        assertThat(frames).hasSize(2);
+        assertThat(decoder.hasPartialFrame()).isTrue();
+        assertThat(decoder.decode("\nBye\0")).extracting(StompFrame::getBody).containsExactly("Bye");
+    }
+    
+    @Test
+    void shouldWaitForContentLengthBody() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        assertThat(decoder.decode("MESSAGE\ncontent-length:5\n\na\0")).isEmpty();
+        List<StompFrame> frames = decoder.decode("b\0c\0".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(frames).hasSize(1);
+        assertThat(frames.get(0).getBodyBytes()).containsExactly('a', 0, 'b', 0, 'c');
+    }
+    
+    @Test
+    void shouldUseFirstOfRepeatedContentLengthsWhenReassembling() {
+        String frame = "MESSAGE\ncontent-length:3\ncontent-length:1\n\na\0b\0";
+        
+        StompStreamDecoder textDecoder = new StompStreamDecoder(1024);
+        assertThat(textDecoder.decode(frame.substring(0, 20))).isEmpty();
+        List<StompFrame> fromText = textDecoder.decode(frame.substring(20) + FRAME);
+        
+        StompStreamDecoder byteDecoder = new StompStreamDecoder(1024);
+        assertThat(byteDecoder.decode(frame.substring(0, 20).getBytes(StandardCharsets.UTF_8))).isEmpty();
+        List<StompFrame> fromBytes = byteDecoder.decode((frame.substring(20) + FRAME).getBytes(StandardCharsets.UTF_8));
+        
+        for (List<StompFrame> frames : List.of(fromText, fromBytes)) {
+            assertThat(frames).hasSize(2);
+            assertThat(frames.get(0).getBodyBytes()).containsExactly('a', 0, 'b');
+            assertThat(frames.get(1).getBody()).isEqualTo("Hello");
+        }
+        assertThat(textDecoder.hasPartialFrame()).isFalse();
+        assertThat(byteDecoder.hasPartialFrame()).isFalse();
+    }
+    
+    @Test
+    void shouldNotShareBufferWithBinaryBodies() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        decoder.decode("SEND\ncontent-length:3\n\nab".getBytes(StandardCharsets.UTF_8));
+        StompFrame first = decoder.decode("c\0SEND\n".getBytes(StandardCharsets.UTF_8)).get(0);
+        decoder.decode("content-length:3\n\nxyz\0".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(first.getBody()).isEqualTo("abc");
+    }
+    
+    @Test
+    void shouldRejectFrameLargerThanLimit() {
+        StompStreamDecoder decoder = new StompStreamDecoder(32);
+        
+        assertThatThrownBy(() -> decoder.decode("MESSAGE\n\n" + "x".repeat(64)))
+                .isInstanceOf(StompFrameTooLargeException.class)
+                .hasMessageContaining("32");
+        assertThat(decoder.hasPartialFrame()).isFalse();
+    }
+    
+    @Test
+    void shouldRejectDeclaredContentLengthLargerThanLimit() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        assertThatThrownBy(() -> decoder.decode("MESSAGE\ncontent-length:999999\n"))
+                .isInstanceOf(StompFrameTooLargeException.class);
+    }
+    
+    @Test
+    void shouldSkipHeartbeatsBetweenFrames() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024);
+        
+        assertThat(decoder.decode("\n")).isEmpty();
+        assertThat(decoder.hasPartialFrame()).isFalse();
+        assertThat(decoder.decode("\r\n" + FRAME + "\n\n")).hasSize(1);
+        assertThat(decoder.hasPartialFrame()).isFalse();
+    }
+    
+    @Test
+    void shouldDecodeMessagesLazilyFromReassemblyBuffer() {
+        StompStreamDecoder decoder = new StompStreamDecoder(1024, true);
+        
+        assertThat(decoder.decode("MESSAGE\nsubscr")).isEmpty();
+        List<StompFrame> frames = decoder.decode("iption:sub-1\ndestination:/queue/test\n\nHello\0" + FRAME);
+        
+        assertThat(frames).hasSize(2);
+        StompMessage message = StompMessage.fromFrame(frames.get(0));
+        decoder.decode("MESSAGE\nsubscription:overwrite");
+        assertThat(message.getDestination()).isEqualTo("/queue/test");
+        assertThat(message.getBody()).isEqualTo("Hello");
+        assertThat(message.hasBinaryBody()).isFalse();
+        assertThat(frames.get(1).getHeader("subscription")).isEqualTo("sub-1");
+    }
+}
@@ -2,7 +2,13 @@ package dev.pixelib.jstomp;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class StompSubscriptionTest {
     
@@ -25,4 +31,238 @@ class StompSubscriptionTest {
         assertThat(toString).contains("id='sub-1'");
         assertThat(toString).contains("destination='/queue/test'");
     }
+    
+    @Test
+    void shouldExposeQueueStatistics() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .queueCapacity(10)
+                .overflowPolicy(StompOverflowPolicy.DROP_NEWEST)
+                .build();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", message -> { },
+                options, Runnable::run, error -> { }, frame -> { });
+        
+        subscription.dispatch(new StompMessage("/queue/test", "Hello", Map.of()));
+        
+        assertThat(subscription.getOptions()).isSameAs(options);
+        assertThat(subscription.getQueuedCount()).isEqualTo(1);
+        assertThat(subscription.getDroppedCount()).isZero();
+        assertThat(subscription.getQueueSize()).isZero();
+    }
+    
+    @Test
+    void shouldLimitQueueCapacityToPrefetch() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(StompAckMode.CLIENT)
+                .prefetch(20)
+                .build();
+        
+        assertThat(options.getPrefetch()).isEqualTo(20);
+        assertThat(options.getQueueCapacity()).isEqualTo(20);
+        assertThat(StompSubscriptionOptions.builder().queueCapacity(5).prefetch(20).build().getQueueCapacity())
+                .isEqualTo(5);
+    }
+    
+    @Test
+    void shouldNotLimitQueueCapacityToPrefetchInAutoAckMode() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .prefetch(20)
+                .build();
+        
+        assertThat(options.getPrefetch()).isEqualTo(20);
+        assertThat(options.getQueueCapacity()).isEqualTo(Integer.MAX_VALUE);
+    }
+    
+    @Test
+    void shouldRejectAckBatchLargerThanPrefetch() {
+        assertThatThrownBy(() -> StompSubscriptionOptions.builder().prefetch(10).ackBatchSize(11).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void shouldTrackUnackedMessages() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(StompAckMode.CLIENT)
+                .prefetch(10)
+                .build();
+        List<StompMessage> received = new ArrayList<>();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", received::add,
+                options, Runnable::run, error -> { }, frame -> { });
+        
+        for (int i = 1; i <= 3; i++) {
+            StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+            frame.addHeader("ack", "a-" + i);
+            subscription.dispatch(StompMessage.fromFrame(frame, subscription.acknowledger()));
+        }
+        assertThat(subscription.getUnackedCount()).isEqualTo(3);
+        
+        // Cumulative: settles the first two messages
+        received.get(1).ack();
+        assertThat(subscription.getUnackedCount()).isEqualTo(1);
+        
+        received.get(2).nack();
+        assertThat(subscription.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldForgetDeliveriesOfLostConnection() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(StompAckMode.CLIENT_INDIVIDUAL)
+                .build();
+        List<Runnable> drains = new ArrayList<>();
+        List<StompFrame> sent = new ArrayList<>();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", message -> { },
+                options, drains::add, error -> { }, sent::add);
+        List<StompMessage> delivered = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+            frame.addHeader("ack", "a-" + i);
+            StompMessage message = StompMessage.fromFrame(frame, subscription.acknowledger());
+            subscription.dispatch(message);
+            delivered.add(message);
+        }
+        assertThat(subscription.getQueueSize()).isEqualTo(2);
+        
+        subscription.connectionLost();
+        delivered.get(0).ack();
+        delivered.get(1).nack();
+        
+        assertThat(subscription.getQueueSize()).isZero();
+        assertThat(subscription.getUnackedCount()).isZero();
+        assertThat(sent).isEmpty();
+    }
+    
+    @Test
+    void shouldDecompressOnDispatchExecutorAndNackFailures() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(StompAckMode.CLIENT_INDIVIDUAL)
+                .build();
+        List<Runnable> drains = new ArrayList<>();
+        List<StompFrame> sent = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        List<StompMessage> received = new ArrayList<>();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", received::add,
+                options, drains::add, errors::add, sent::add, message -> message.decompress(1024));
+        byte[] body = "Hello, Hello, Hello, Hello".getBytes(StandardCharsets.UTF_8);
+        StompFrame compressed = new StompFrame(StompCommand.MESSAGE);
+        compressed.addHeader("ack", "a-1");
+        compressed.setBody(body);
+        compressed.compressBody(StompCompression.DEFLATE, 0);
+        StompFrame malformed = new StompFrame(StompCommand.MESSAGE);
+        malformed.addHeader("ack", "a-2");
+        malformed.addHeader("content-encoding", "deflate");
+        malformed.setBody("not deflated");
+        
+        subscription.dispatch(StompMessage.fromFrame(compressed, subscription.acknowledger()));
+        subscription.dispatch(StompMessage.fromFrame(malformed, subscription.acknowledger()));
+        assertThat(received).isEmpty();
+        drains.forEach(Runnable::run);
+        
+        assertThat(received).hasSize(1);
+        assertThat(received.get(0).getBodyBytes()).isEqualTo(body);
+        assertThat(received.get(0).getHeader("content-encoding")).isNull();
+        assertThat(errors).singleElement().isInstanceOf(StompException.class);
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.NACK);
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("a-2");
+        
+        received.get(0).ack();
+        assertThat(subscription.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldHoldBackNackOfUndecompressableMessageInClientMode() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(StompAckMode.CLIENT)
+                .ackBatchSize(1)
+                .build();
+        List<Runnable> drains = new ArrayList<>();
+        List<StompFrame> sent = new ArrayList<>();
+        List<StompMessage> received = new ArrayList<>();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", received::add,
+                options, drains::add, error -> { }, sent::add, message -> message.decompress(1024));
+        StompFrame plain = new StompFrame(StompCommand.MESSAGE);
+        plain.addHeader("ack", "a-1");
+        plain.setBody("Hello");
+        StompFrame malformed = new StompFrame(StompCommand.MESSAGE);
+        malformed.addHeader("ack", "a-2");
+        malformed.addHeader("content-encoding", "deflate");
+        malformed.setBody("not deflated");
+        
+        subscription.dispatch(StompMessage.fromFrame(plain, subscription.acknowledger()));
+        subscription.dispatch(StompMessage.fromFrame(malformed, subscription.acknowledger()));
+        drains.forEach(Runnable::run);
+        
+        // The handler still holds a-1, which a cumulative NACK of a-2 would reject
+        assertThat(sent).isEmpty();
+        
+        received.get(0).ack();
+        
+        assertThat(sent).extracting(StompFrame::getCommand).containsExactly(StompCommand.ACK, StompCommand.NACK);
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("a-1", "a-2");
+        assertThat(subscription.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldNackMessagesDroppedFromFullQueue() {
+        assertThat(overflow(StompAckMode.CLIENT_INDIVIDUAL, StompOverflowPolicy.DROP_NEWEST)).containsExactly("a-3", "a-4");
+        assertThat(overflow(StompAckMode.CLIENT_INDIVIDUAL, StompOverflowPolicy.DROP_OLDEST)).containsExactly("a-1", "a-2");
+        assertThat(overflow(StompAckMode.CLIENT_INDIVIDUAL, StompOverflowPolicy.FAIL_SUBSCRIPTION)).containsExactly("a-3");
+        // Cumulative NACKs must not reject the queued messages delivered before the dropped ones
+        assertThat(overflow(StompAckMode.CLIENT, StompOverflowPolicy.DROP_NEWEST)).isEmpty();
+        assertThat(overflow(StompAckMode.CLIENT, StompOverflowPolicy.DROP_OLDEST)).containsExactly("a-1", "a-2");
+        assertThat(overflow(StompAckMode.CLIENT, StompOverflowPolicy.FAIL_SUBSCRIPTION)).isEmpty();
+    }
+    
+    @Test
+    void shouldNackDroppedMessagesOnceEarlierMessagesAreAckedInClientMode() {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(StompAckMode.CLIENT)
+                .ackBatchSize(1)
+                .queueCapacity(2)
+                .overflowPolicy(StompOverflowPolicy.DROP_NEWEST)
+                .build();
+        List<Runnable> drains = new ArrayList<>();
+        List<StompFrame> sent = new ArrayList<>();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", StompMessage::ack,
+                options, drains::add, error -> { }, sent::add);
+        
+        for (int i = 1; i <= 4; i++) {
+            StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+            frame.addHeader("ack", "a-" + i);
+            subscription.dispatch(StompMessage.fromFrame(frame, subscription.acknowledger()));
+        }
+        assertThat(sent).isEmpty();
+        drains.forEach(Runnable::run);
+        
+        assertThat(sent).extracting(StompFrame::getCommand)
+                .containsExactly(StompCommand.ACK, StompCommand.ACK, StompCommand.NACK, StompCommand.NACK);
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("a-1", "a-2", "a-3", "a-4");
+        assertThat(subscription.getUnackedCount()).isZero();
+    }
+    
+    /**
+     * Delivers four messages to a subscription whose queue holds two and is never drained,
+     * returning the ack ids of the NACK frames sent.
+     */
+    private static List<String> overflow(StompAckMode ackMode, StompOverflowPolicy overflowPolicy) {
+        StompSubscriptionOptions options = StompSubscriptionOptions.builder()
+                .ackMode(ackMode)
+                .queueCapacity(2)
+                .overflowPolicy(overflowPolicy)
+                .build();
+        List<StompFrame> sent = new ArrayList<>();
+        StompSubscription subscription = new StompSubscription("sub-1", "/queue/test", message -> { },
+                options, task -> { }, error -> { }, sent::add);
+        
+        boolean open = true;
+        int dispatched = 0;
+        for (int i = 1; i <= 4 && open; i++, dispatched++) {
+            StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+            frame.addHeader("ack", "a-" + i);
+            open = subscription.dispatch(StompMessage.fromFrame(frame, subscription.acknowledger()));
+        }
+        
+        assertThat(sent).allMatch(frame -> frame.getCommand() == StompCommand.NACK);
+        assertThat(subscription.getUnackedCount()).isEqualTo(dispatched - sent.size());
+        return sent.stream().map(frame -> frame.getHeader("id")).toList();
+    }
 }
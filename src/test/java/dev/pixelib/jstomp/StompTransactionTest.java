@@ -0,0 +1,130 @@
+package dev.pixelib.jstomp;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompTransactionTest {
+    
+    @Test
+    void shouldRequireConnectionToBegin() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        
+        assertThatThrownBy(client::begin)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Not connected to server");
+    }
+    
+    @Test
+    void shouldNotBufferTransactionalSends() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        client.setSendBuffer(new StompSendBuffer(10, 1024, StompSendOverflowPolicy.REJECT));
+        StompTransaction transaction = new StompTransaction(client, "tx-1");
+        
+        assertThatThrownBy(() -> transaction.send("/queue/test", "Hello"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(client.getSendBuffer().getBufferedCount()).isZero();
+    }
+    
+    @Test
+    void shouldRejectUseAfterCompletion() {
+        StompClient client = new StompClient(URI.create("ws://localhost:8080/ws"));
+        StompTransaction transaction = new StompTransaction(client, "tx-1");
+        
+        CompletableFuture<Void> commit = transaction.commit();
+        
+        // Not connected, so the commit itself fails
+        assertThat(commit).isCompletedExceptionally();
+        assertThat(transaction.isCompleted()).isTrue();
+        assertThatThrownBy(() -> transaction.send("/queue/test", "Hello"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("tx-1");
+        assertThatThrownBy(transaction::abort).isInstanceOf(IllegalStateException.class);
+    }
+    
+    @Test
+    void shouldAckWithinTransaction() {
+        List<StompFrame> sent = new ArrayList<>();
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+        frame.addHeader("ack", "a-1");
+        StompMessage message = StompMessage.fromFrame(frame, acknowledger);
+        message.setAckGeneration(acknowledger.track(message.getAckId()));
+        StompTransaction transaction = new StompTransaction(
+                new StompClient(URI.create("ws://localhost:8080/ws")), "tx-1");
+        
+        transaction.ack(message);
+        
+        assertThat(sent).hasSize(1);
+        assertThat(sent.get(0).getCommand()).isEqualTo(StompCommand.ACK);
+        assertThat(sent.get(0).getHeader("id")).isEqualTo("a-1");
+        assertThat(sent.get(0).getHeader("transaction")).isEqualTo("tx-1");
+    }
+    
+    @Test
+    void shouldTrackAcksAgainWhenServerRejectsCommit() {
+        List<StompFrame> sent = new ArrayList<>();
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT_INDIVIDUAL, 1, 0, sent::add);
+        StompMessage message = trackedMessage(acknowledger, "a-1");
+        StompTransaction transaction = new StompTransaction(
+                new StompClient(URI.create("ws://localhost:8080/ws")), "tx-1");
+        
+        transaction.ack(message);
+        transaction.commitCompleted(new StompServerErrorException("commit failed"));
+        message.ack();
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("transaction")).containsExactly("tx-1", null);
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldKeepAcksSettledWhenCommitOutcomeIsUnknown() {
+        List<StompFrame> sent = new ArrayList<>();
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT_INDIVIDUAL, 1, 0, sent::add);
+        StompMessage message = trackedMessage(acknowledger, "a-1");
+        StompTransaction transaction = new StompTransaction(
+                new StompClient(URI.create("ws://localhost:8080/ws")), "tx-1");
+        
+        transaction.ack(message);
+        transaction.commitCompleted(new TimeoutException());
+        message.ack();
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("transaction")).containsExactly("tx-1");
+        assertThat(acknowledger.getUnackedCount()).isZero();
+    }
+    
+    @Test
+    void shouldNotSettleTransactionalAckThroughPendingCumulativeAck() {
+        List<StompFrame> sent = new ArrayList<>();
+        StompAcknowledger acknowledger = new StompAcknowledger(StompAckMode.CLIENT, 10, 0, sent::add);
+        StompMessage first = trackedMessage(acknowledger, "a-1");
+        StompMessage second = trackedMessage(acknowledger, "a-2");
+        StompTransaction transaction = new StompTransaction(
+                new StompClient(URI.create("ws://localhost:8080/ws")), "tx-1");
+        
+        second.ack();
+        transaction.ack(first);
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("a-1");
+        assertThat(sent).extracting(frame -> frame.getHeader("transaction")).containsExactly("tx-1");
+        
+        acknowledger.flush();
+        
+        assertThat(sent).extracting(frame -> frame.getHeader("id")).containsExactly("a-1", "a-2");
+    }
+    
+    private static StompMessage trackedMessage(StompAcknowledger acknowledger, String ackId) {
+        StompFrame frame = new StompFrame(StompCommand.MESSAGE);
+        frame.addHeader("ack", ackId);
+        StompMessage message = StompMessage.fromFrame(frame, acknowledger);
+        message.setAckGeneration(acknowledger.track(message.getAckId()));
+        return message;
+    }
+}
@@ -0,0 +1,98 @@
+package dev.pixelib.jstomp;
+
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okio.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class StompWireStatsTest {
+
+    @Test
+    void shouldCountSentMessagesInUtf8Bytes() {
+        StompWireStats stats = new StompWireStats();
+        List<Object> sent = new ArrayList<>();
+        WebSocket webSocket = stats.count(new RecordingWebSocket(sent));
+
+        webSocket.send("héllo");
+        webSocket.send(ByteString.of((byte) 1, (byte) 2, (byte) 3));
+        stats.messageReceived(10);
+
+        assertThat(sent).containsExactly("héllo", ByteString.of((byte) 1, (byte) 2, (byte) 3));
+        assertThat(stats.getMessageBytesSent()).isEqualTo(9L);
+        assertThat(stats.getMessageBytesReceived()).isEqualTo(10L);
+        assertThat(stats.getWireBytesSent()).isZero();
+
+        stats.reset();
+
+        assertThat(stats.getMessageBytesSent()).isZero();
+        assertThat(stats.getMessageBytesReceived()).isZero();
+    }
+
+    @Test
+    void shouldCountBytesThroughSockets() throws Exception {
+        StompWireStats stats = new StompWireStats();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = stats.socketFactory().createSocket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            OutputStream clientOut = client.getOutputStream();
+            clientOut.write(new byte[100]);
+            clientOut.write(7);
+            clientOut.flush();
+            accepted.getInputStream().readNBytes(101);
+
+            accepted.getOutputStream().write(new byte[40]);
+            accepted.getOutputStream().flush();
+            InputStream clientIn = client.getInputStream();
+            assertThat(clientIn.readNBytes(40)).hasSize(40);
+        }
+
+        assertThat(stats.getWireBytesSent()).isEqualTo(101L);
+        assertThat(stats.getWireBytesReceived()).isEqualTo(40L);
+    }
+
+    /**
+     * A WebSocket that records what is sent through it.
+     */
+    private record RecordingWebSocket(List<Object> sent) implements WebSocket {
+
+        @Override
+        public boolean send(String text) {
+            return sent.add(text);
+        }
+
+        @Override
+        public boolean send(ByteString bytes) {
+            return sent.add(bytes);
+        }
+
+        @Override
+        public boolean close(int code, String reason) {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public long queueSize() {
+            return 0;
+        }
+
+        @Override
+        public Request request() {
+            return null;
+        }
+    }
+}
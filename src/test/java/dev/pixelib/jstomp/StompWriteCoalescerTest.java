@@ -0,0 +1,88 @@
+package dev.pixelib.jstomp;
+
+import okio.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StompWriteCoalescerTest {
+    
+    private final List<Object> messages = new CopyOnWriteArrayList<>();
+    
+    @Test
+    void shouldConcatenateFramesIntoOneMessage() {
+        StompWriteCoalescer coalescer = new StompWriteCoalescer(60_000, 1024, messages::add, messages::add);
+        
+        coalescer.write(frame("one"), false, false);
+        coalescer.write(frame("two"), false, false);
+        assertThat(messages).isEmpty();
+        
+        coalescer.flush();
+        
+        assertThat(messages).hasSize(1);
+        List<StompFrame> frames = StompFrame.parseAll((String) messages.get(0));
+        assertThat(frames).extracting(StompFrame::getBody).containsExactly("one", "two");
+    }
+    
+    @Test
+    void shouldFlushWhenByteLimitIsReached() {
+        StompWriteCoalescer coalescer = new StompWriteCoalescer(60_000, 64, messages::add, messages::add);
+        
+        for (int i = 0; i < 3; i++) {
+            coalescer.write(frame("0123456789"), false, false);
+        }
+        
+        assertThat(messages).hasSize(1);
+        assertThat(StompFrame.parseAll((String) messages.get(0))).hasSize(2);
+    }
+    
+    @Test
+    void shouldFlushAfterWindow() throws Exception {
+        StompWriteCoalescer coalescer = new StompWriteCoalescer(10, 1024, messages::add, messages::add);
+        
+        coalescer.write(frame("one"), false, false);
+        
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messages.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(messages).hasSize(1);
+    }
+    
+    @Test
+    void shouldNotMixTextAndBinaryFrames() {
+        StompWriteCoalescer coalescer = new StompWriteCoalescer(60_000, 1024, messages::add, messages::add);
+        
+        coalescer.write(frame("one"), false, false);
+        coalescer.write(frame("two"), true, false);
+        coalescer.write(frame("three"), true, false);
+        coalescer.flush();
+        
+        assertThat(messages).hasSize(2);
+        assertThat(messages.get(0)).isInstanceOf(String.class);
+        assertThat(messages.get(1)).isInstanceOf(ByteString.class);
+        assertThat(StompFrame.parseAll(((ByteString) messages.get(1)).toByteArray()))
+                .extracting(StompFrame::getBody).containsExactly("two", "three");
+    }
+    
+    @Test
+    void shouldDiscardPendingFrames() {
+        StompWriteCoalescer coalescer = new StompWriteCoalescer(60_000, 1024, messages::add, messages::add);
+        
+        coalescer.write(frame("one"), false, false);
+        coalescer.discard();
+        coalescer.flush();
+        
+        assertThat(messages).isEmpty();
+    }
+    
+    private static StompFrame frame(String body) {
+        StompFrame frame = new StompFrame(StompCommand.SEND);
+        frame.addHeader("destination", "/queue/test");
+        frame.setBody(body);
+        return frame;
+    }
+}